@@ -0,0 +1,196 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.semanticcms.file.servlet.benchmark;
+
+import com.semanticcms.core.model.Book;
+import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.servlet.SemanticCMS;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+import javax.servlet.ServletContext;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+
+/**
+ * A web application with a single book in a temporary directory, run in an embedded Apache Tomcat without any
+ * connector.  The container provides the book configuration and page capture, while requests are made directly
+ * through {@link Stubs}.
+ *
+ * <p>Resource files are sparse, so large books are generated quickly and take little disk space.</p>
+ */
+final class BenchmarkWebapp implements AutoCloseable {
+
+  /**
+   * The name of the generated book.
+   */
+  static final String BOOK_NAME = "/benchmark";
+
+  private static final String PAGE_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+      + "<jsp:root\n"
+      + "  xmlns:core=\"https://semanticcms.com/core/taglib/\"\n"
+      + "  xmlns:file=\"https://semanticcms.com/file/taglib/\"\n"
+      + "  xmlns:jsp=\"http://java.sun.com/JSP/Page\"\n"
+      + "  version=\"2.1\"\n"
+      + ">\n"
+      + "  <jsp:directive.page language=\"java\" pageEncoding=\"UTF-8\" session=\"false\" />\n";
+
+  private static final String PAGE_END = "</jsp:root>\n";
+
+  private final File workDir;
+  private final File webappDir;
+  private final File bookDir;
+  private Tomcat tomcat;
+  private ServletContext servletContext;
+
+  BenchmarkWebapp() throws IOException {
+    workDir = Files.createTempDirectory("semanticcms-file-servlet-benchmark-").toFile();
+    webappDir = new File(workDir, "webapp");
+    bookDir = new File(webappDir, BOOK_NAME.substring(1));
+    File webInf = new File(webappDir, "WEB-INF");
+    Files.createDirectories(webInf.toPath());
+    Files.createDirectories(bookDir.toPath());
+    write(
+        new File(webInf, "books.properties"),
+        "root.book=" + BOOK_NAME + "\n"
+            + "books.1.name=" + BOOK_NAME + "\n"
+            // Resource files are resolved relative to the book source, which is the book directory itself
+            + "books.1.cvsworkDirectory=" + bookDir.getAbsolutePath().replace("\\", "\\\\") + "\n"
+            + "books.1.allowRobots=false\n"
+    );
+    write(
+        new File(bookDir, "book.properties"),
+        "content.root=/index.jspx\n"
+            + "copyright.rightsHolder=AO Industries, Inc.\n"
+            + "copyright.rights=All rights reserved\n"
+            + "copyright.dateCopyrighted=2026\n"
+            + "title=Benchmark\n"
+    );
+  }
+
+  /**
+   * Gets a new, empty directory within the working directory, such as for the export tree.
+   */
+  File newDirectory(String name) throws IOException {
+    return Files.createDirectories(new File(workDir, name).toPath()).toFile();
+  }
+
+  /**
+   * Adds a resource file of the given length.
+   *
+   * @param path  the book-relative path
+   */
+  void addFile(String path, long length) throws IOException {
+    File file = new File(bookDir, path.substring(1));
+    Files.createDirectories(file.getParentFile().toPath());
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(length);
+    }
+  }
+
+  /**
+   * Adds a resource file with the given content.
+   *
+   * @param path  the book-relative path
+   */
+  void addFile(String path, byte[] content) throws IOException {
+    File file = new File(bookDir, path.substring(1));
+    Files.createDirectories(file.getParentFile().toPath());
+    Files.write(file.toPath(), content);
+  }
+
+  /**
+   * Adds a page with the given JSPX content, which must include the {@code core:page} element.
+   *
+   * @param path  the book-relative path
+   */
+  void addPage(String path, CharSequence content) throws IOException {
+    File file = new File(bookDir, path.substring(1));
+    Files.createDirectories(file.getParentFile().toPath());
+    write(file, PAGE_START + content + PAGE_END);
+  }
+
+  /**
+   * Starts the container.  Pages and files may still be added after it is started.
+   */
+  void start(Map<String, String> initParameters) throws LifecycleException {
+    tomcat = new Tomcat();
+    tomcat.setBaseDir(new File(workDir, "tomcat").getAbsolutePath());
+    Context context = tomcat.addWebapp("", webappDir.getAbsolutePath());
+    for (Map.Entry<String, String> entry : initParameters.entrySet()) {
+      context.addParameter(entry.getKey(), entry.getValue());
+    }
+    tomcat.start();
+    servletContext = context.getServletContext();
+  }
+
+  ServletContext getServletContext() {
+    return servletContext;
+  }
+
+  /**
+   * Gets a reference within the book.
+   *
+   * @param path  the book-relative path
+   */
+  PageRef getPageRef(String path) {
+    Book book = SemanticCMS.getInstance(servletContext).getBooks().get(BOOK_NAME);
+    if (book == null) {
+      throw new IllegalStateException("Book not found: " + BOOK_NAME);
+    }
+    return new PageRef(book, path);
+  }
+
+  /**
+   * Stops the container and deletes the working directory.
+   */
+  @Override
+  public void close() throws IOException, LifecycleException {
+    try {
+      if (tomcat != null) {
+        tomcat.stop();
+        tomcat.destroy();
+      }
+    } finally {
+      try (Stream<Path> paths = Files.walk(workDir.toPath())) {
+        paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+      }
+    }
+  }
+
+  private static void write(File file, CharSequence content) throws IOException {
+    try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+      out.append(content);
+    }
+  }
+}
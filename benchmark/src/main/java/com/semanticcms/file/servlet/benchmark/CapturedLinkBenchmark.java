@@ -0,0 +1,194 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.benchmark;
+
+import com.aoapps.lang.Strings;
+import com.aoapps.net.URIEncoder;
+import com.semanticcms.file.servlet.impl.CapturedLink;
+import com.semanticcms.file.servlet.impl.FileDigestCache;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the captured file elements of a synthetic large site, comparing a separate HTML fragment per element to
+ * {@link CapturedLink}.  Each file is linked from many pages, as is typical of shared downloads.
+ *
+ * <p>The heap retained by the captured elements is printed during setup, and the benchmark itself measures writing
+ * every element, as done when the cached pages are served.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class CapturedLinkBenchmark {
+
+  @Param({"fragment", "compact"})
+  public String representation;
+
+  @Param({"10000"})
+  public int files;
+
+  @Param({"200000"})
+  public int elements;
+
+  private Object[] captured;
+
+  /**
+   * Discards output while still converting everything to characters.
+   */
+  private static final class NullWriter extends Writer {
+    private long count;
+
+    @Override
+    public void write(int c) {
+      count++;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      count += len;
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+      count += len;
+    }
+
+    @Override
+    public void flush() {
+      // Nothing to flush
+    }
+
+    @Override
+    public void close() {
+      // Nothing to close
+    }
+  }
+
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 4; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  @Setup(Level.Trial)
+  @SuppressWarnings("UseOfSystemOutOrSystemErr")
+  public void setup() throws IOException {
+    // Shared per file, as held by HrefPrefixCache and FileDigestCache
+    String[] prefixes = new String[files];
+    String[] names = new String[files];
+    String[] digests = new String[files];
+    for (int i = 0; i < files; i++) {
+      names[i] = "report-" + i + ".pdf";
+      prefixes[i] = URIEncoder.encodeURI("/context/docs/section-" + (i % 100) + "/files/" + names[i]);
+      digests[i] = String.format("%064x", (long) i * 0x9E3779B97F4A7C15L);
+    }
+    long lastModified = 1700000000000L;
+    long before = usedMemory();
+    captured = new Object[elements];
+    for (int i = 0; i < elements; i++) {
+      int file = i % files;
+      // A new name per element, as returned by java.io.File.getName()
+      String name = new String(names[file].toCharArray());
+      long length = 1024L * (file + 1);
+      CapturedLink link = new CapturedLink(
+          null,
+          "semanticcms-file-link",
+          prefixes[file],
+          name,
+          false,
+          true,
+          digests[file],
+          lastModified,
+          length
+      );
+      if ("compact".equals(representation)) {
+        captured[i] = link;
+      } else {
+        StringWriter out = new StringWriter();
+        link.writeTo(out);
+        captured[i] = out.toString();
+      }
+    }
+    long retained = usedMemory() - before;
+    System.out.println();
+    System.out.println(
+        representation + ": " + elements + " elements of " + files + " files retain "
+            + Strings.getApproximateSize(retained) + " (" + (retained / elements) + " bytes per element)"
+    );
+    // Make sure both representations write the same HTML
+    StringWriter expected = new StringWriter();
+    new CapturedLink(null, "semanticcms-file-link", prefixes[0], names[0], false, true, digests[0], lastModified, 1024)
+        .writeTo(expected);
+    StringWriter actual = new StringWriter();
+    writeTo(captured[0], actual);
+    if (!expected.toString().equals(actual.toString())) {
+      throw new AssertionError("Mismatch: " + expected + " != " + actual);
+    }
+    if (!actual.toString().contains(FileDigestCache.DIGEST_PARAMETER_NAME + '=')) {
+      throw new AssertionError("Digest missing: " + actual);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    captured = null;
+  }
+
+  private static void writeTo(Object element, Writer out) throws IOException {
+    if (element instanceof CapturedLink) {
+      ((CapturedLink) element).writeTo(out);
+    } else {
+      out.write((String) element);
+    }
+  }
+
+  @Benchmark
+  public long writeAll() throws IOException {
+    NullWriter out = new NullWriter();
+    for (Object element : captured) {
+      writeTo(element, out);
+    }
+    return out.count;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.benchmark;
+
+import com.semanticcms.file.servlet.impl.FileMetadata;
+import com.semanticcms.file.servlet.impl.FileMetadataCache;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the filesystem portion of rendering a file element, which dominates
+ * {@link com.semanticcms.file.servlet.impl.FileImpl#writeFileImpl(com.semanticcms.core.servlet.PageIndex, com.aoapps.html.any.AnyUnion_Palpable_Phrasing, com.semanticcms.core.model.ElementContext, com.semanticcms.file.model.File)}
+ * once the page has been captured.  A temporary directory stands in for the book.
+ *
+ * <ul>
+ *   <li>{@link #legacy(Blackhole)} - The separate {@link File#isDirectory()}, {@link File#lastModified()}, and
+ *       {@link File#length()} calls made before the metadata cache.</li>
+ *   <li>{@link #readAttributes(Blackhole)} - A single bulk attribute read.</li>
+ *   <li>{@link #cached(Blackhole)} - A lookup through {@link FileMetadataCache}.</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileMetadataBenchmark {
+
+  @Param({"file", "directory", "missing"})
+  public String kind;
+
+  private Path book;
+  private File file;
+  private FileMetadataCache cache;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    book = Files.createTempDirectory("semanticcms-file-servlet-benchmark-");
+    Path path = book.resolve(kind);
+    switch (kind) {
+      case "file":
+        Files.write(path, new byte[4096]);
+        break;
+      case "directory":
+        Files.createDirectory(path);
+        break;
+      case "missing":
+        break;
+      default:
+        throw new AssertionError("Unexpected kind: " + kind);
+    }
+    file = path.toFile();
+    cache = FileMetadataCache.getInstance(Stubs.newServletContext(Collections.emptyMap()));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    cache.clear();
+    try (Stream<Path> paths = Files.walk(book)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public void legacy(Blackhole bh) {
+    boolean exists = file.exists();
+    bh.consume(exists);
+    if (exists) {
+      boolean isDirectory = file.isDirectory();
+      bh.consume(isDirectory);
+      bh.consume(file.lastModified());
+      if (!isDirectory) {
+        bh.consume(file.length());
+      }
+    }
+  }
+
+  @Benchmark
+  public void readAttributes(Blackhole bh) throws IOException {
+    bh.consume(FileMetadata.readFileMetadata(file));
+  }
+
+  @Benchmark
+  public void cached(Blackhole bh) throws IOException {
+    bh.consume(cache.getFileMetadata(file));
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.benchmark;
+
+import com.aoapps.net.URIEncoder;
+import com.aoapps.servlet.lastmodified.LastModifiedServlet;
+import com.semanticcms.file.servlet.impl.HrefPrefixCache;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks building the href of a file link, comparing concatenating and encoding the full URL to appending the
+ * query string to the prefix cached by {@link HrefPrefixCache}.  Run with the GC profiler, as done by {@link Main},
+ * to compare the allocation per operation.
+ *
+ * <p>Constructing a {@link com.semanticcms.core.model.PageRef} requires a book configuration, so the cached case uses
+ * a prefix encoded once during setup, which is equivalent to a cache hit.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HrefBenchmark {
+
+  @Param({"/docs/files/report.pdf", "/docs/files/r\u00e9sum\u00e9 2024.pdf"})
+  public String servletPath;
+
+  private final String contextPath = "/context";
+  private final long lastModified = 1700000000000L;
+  private String prefix;
+
+  @Setup
+  public void setup() {
+    prefix = URIEncoder.encodeURI(contextPath + servletPath);
+    String legacy = legacy();
+    String cached = cached();
+    if (!legacy.equals(cached)) {
+      throw new AssertionError("Mismatch: " + legacy + " != " + cached);
+    }
+  }
+
+  @Benchmark
+  public String legacy() {
+    return URIEncoder.encodeURI(
+        contextPath
+            + servletPath
+            + "?" + LastModifiedServlet.LAST_MODIFIED_PARAMETER_NAME
+            + "=" + LastModifiedServlet.encodeLastModified(lastModified)
+    );
+  }
+
+  @Benchmark
+  public String cached() {
+    return HrefPrefixCache.appendParameter(
+        prefix,
+        LastModifiedServlet.LAST_MODIFIED_PARAMETER_NAME,
+        LastModifiedServlet.encodeLastModified(lastModified)
+    );
+  }
+}
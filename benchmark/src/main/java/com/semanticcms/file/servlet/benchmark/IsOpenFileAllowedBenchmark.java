@@ -0,0 +1,123 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.benchmark;
+
+import com.semanticcms.file.servlet.FileUtils;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link FileUtils#isOpenFileAllowed(javax.servlet.ServletContext, javax.servlet.ServletRequest)} from
+ * 1 to 64 threads.  Throughput should scale with thread count, since no lock is held.
+ *
+ * <p>The "new request" benchmarks clear the request attributes before each call, measuring the method handle
+ * invocation.  The "same request" benchmarks measure the per-request cached result.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IsOpenFileAllowedBenchmark {
+
+  /**
+   * The servlet context shared by all threads.
+   */
+  @State(Scope.Benchmark)
+  public static class ContextState {
+    ServletContext servletContext;
+
+    @Setup
+    public void setup() {
+      servletContext = Stubs.newServletContext(Collections.emptyMap());
+    }
+  }
+
+  /**
+   * A request per thread.
+   */
+  @State(Scope.Thread)
+  public static class RequestState {
+    Stubs.Request request;
+
+    @Setup
+    public void setup() {
+      request = new Stubs.Request(Collections.emptyMap());
+    }
+  }
+
+  private static boolean newRequest(ContextState context, RequestState request) throws ServletException {
+    request.request.reset();
+    return FileUtils.isOpenFileAllowed(context.servletContext, request.request.request);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public boolean newRequest01(ContextState context, RequestState request) throws ServletException {
+    return newRequest(context, request);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public boolean newRequest04(ContextState context, RequestState request) throws ServletException {
+    return newRequest(context, request);
+  }
+
+  @Benchmark
+  @Threads(16)
+  public boolean newRequest16(ContextState context, RequestState request) throws ServletException {
+    return newRequest(context, request);
+  }
+
+  @Benchmark
+  @Threads(64)
+  public boolean newRequest64(ContextState context, RequestState request) throws ServletException {
+    return newRequest(context, request);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public boolean sameRequest01(ContextState context, RequestState request) throws ServletException {
+    return FileUtils.isOpenFileAllowed(context.servletContext, request.request.request);
+  }
+
+  @Benchmark
+  @Threads(64)
+  public boolean sameRequest64(ContextState context, RequestState request) throws ServletException {
+    return FileUtils.isOpenFileAllowed(context.servletContext, request.request.request);
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.semanticcms.file.servlet.benchmark;
+
+import com.semanticcms.core.model.Page;
+import com.semanticcms.core.servlet.CaptureLevel;
+import com.semanticcms.core.servlet.CapturePage;
+import com.semanticcms.file.servlet.FileUtils;
+import com.semanticcms.file.servlet.impl.HasFileCache;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.catalina.LifecycleException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks
+ * {@link FileUtils#hasFile(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page, boolean)}
+ * over synthetic page trees of increasing size and depth, generated as pages of a {@link BenchmarkWebapp}.  Only the
+ * deepest, last page contains a file, which is the worst case: every page is visited.
+ *
+ * <p>Each operation is a new request, so pages are captured again unless {@link HasFileCache} is enabled.  Every page
+ * is compiled and captured once during setup.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PageTreeBenchmark {
+
+  @Param({"2", "4"})
+  public int breadth;
+
+  @Param({"2", "3", "4"})
+  public int depth;
+
+  /**
+   * The number of hidden file elements on each page.
+   */
+  @Param({"4"})
+  public int elementsPerPage;
+
+  /**
+   * Whether {@link HasFileCache} is enabled.
+   */
+  @Param({"false", "true"})
+  public boolean cache;
+
+  private static final String FILE_PATH = "/files/file.dat";
+
+  private BenchmarkWebapp webapp;
+  private int pages;
+  private ServletContext servletContext;
+  private Stubs.Request request;
+  private HttpServletResponse response;
+  private Page root;
+
+  /**
+   * Adds a page and all its children.
+   *
+   * @return  the book-relative path of the page
+   */
+  private String build(String parentPath, int level, boolean last) throws IOException {
+    String path = (parentPath == null) ? "/index.jspx" : ("/pages/page-" + (pages++) + ".jspx");
+    List<String> childPaths = new ArrayList<>();
+    if (level < depth) {
+      for (int i = 0; i < breadth; i++) {
+        childPaths.add(build(path, level + 1, last && i == breadth - 1));
+      }
+    }
+    StringBuilder content = new StringBuilder();
+    content.append("  <core:page title=\"Page ").append(level).append("\">\n");
+    if (parentPath != null) {
+      content.append("    <core:parent page=\"").append(parentPath).append("\" />\n");
+    }
+    for (String childPath : childPaths) {
+      content.append("    <core:child page=\"").append(childPath).append("\" />\n");
+    }
+    for (int i = 0; i < elementsPerPage; i++) {
+      // Hidden files are skipped, just like other elements
+      content.append("    <file:file path=\"").append(FILE_PATH).append("\" hidden=\"true\" />\n");
+    }
+    if (last && level == depth) {
+      content.append("    <file:file path=\"").append(FILE_PATH).append("\" />\n");
+    }
+    content.append("  </core:page>\n");
+    webapp.addPage(path, content);
+    return path;
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException, LifecycleException, ServletException {
+    webapp = new BenchmarkWebapp();
+    webapp.addFile(FILE_PATH, 4096);
+    pages = 0;
+    String rootPath = build(null, 0, true);
+    webapp.start(Collections.singletonMap(HasFileCache.ENABLED_INIT_PARAM, Boolean.toString(cache)));
+    servletContext = webapp.getServletContext();
+    request = new Stubs.Request(Collections.emptyMap());
+    response = Stubs.newResponse();
+    root = CapturePage.capturePage(servletContext, request.request, response, webapp.getPageRef(rootPath),
+        CaptureLevel.META);
+    if (!hasFile()) {
+      throw new AssertionError("File not found in page tree");
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException, LifecycleException {
+    webapp.close();
+  }
+
+  @Benchmark
+  public boolean hasFile() throws ServletException, IOException {
+    request.reset();
+    return FileUtils.hasFile(servletContext, request.request, response, root, true);
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.benchmark;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Minimal stand-ins for the servlet container, sufficient to run the benchmarks offline.  Only attributes, init
+ * parameters, headers, and the basic properties of a GET request are implemented; all other methods return
+ * {@code null}, {@code false}, or zero.
+ *
+ * <p>Requests may also be dispatched through the real servlet context of a {@link BenchmarkWebapp}, which wraps them
+ * as it would any other request.</p>
+ */
+final class Stubs {
+
+  /** Make no instances. */
+  private Stubs() {
+    throw new AssertionError();
+  }
+
+  private static Object defaultValue(Class<?> returnType) {
+    if (returnType == boolean.class) {
+      return false;
+    }
+    if (returnType == int.class) {
+      return 0;
+    }
+    if (returnType == long.class) {
+      return 0L;
+    }
+    return null;
+  }
+
+  /**
+   * Creates a servlet context with the given init parameters.
+   */
+  static ServletContext newServletContext(Map<String, String> initParameters) {
+    Map<String, Object> attributes = new ConcurrentHashMap<>();
+    return (ServletContext) Proxy.newProxyInstance(
+        Stubs.class.getClassLoader(),
+        new Class<?>[]{ServletContext.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getAttribute":
+              return attributes.get((String) args[0]);
+            case "setAttribute":
+              if (args[1] == null) {
+                attributes.remove((String) args[0]);
+              } else {
+                attributes.put((String) args[0], args[1]);
+              }
+              return null;
+            case "removeAttribute":
+              attributes.remove((String) args[0]);
+              return null;
+            case "getInitParameter":
+              return initParameters.get((String) args[0]);
+            case "getAttributeNames":
+              return Collections.enumeration(attributes.keySet());
+            case "getInitParameterNames":
+              return Collections.enumeration(initParameters.keySet());
+            case "getContextPath":
+              return "";
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "equals":
+              return proxy == args[0];
+            case "toString":
+              return "ServletContext stub";
+            default:
+              return defaultValue(method.getReturnType());
+          }
+        }
+    );
+  }
+
+  /**
+   * A request whose attributes may be cleared between benchmark operations, to simulate a new request without the
+   * overhead of creating a new proxy.
+   */
+  static final class Request {
+
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private final Map<String, String> headers;
+
+    final HttpServletRequest request;
+
+    Request(Map<String, String> headers) {
+      this.headers = headers;
+      this.request = (HttpServletRequest) Proxy.newProxyInstance(
+          Stubs.class.getClassLoader(),
+          new Class<?>[]{HttpServletRequest.class},
+          (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "getAttribute":
+                return attributes.get((String) args[0]);
+              case "setAttribute":
+                if (args[1] == null) {
+                  attributes.remove((String) args[0]);
+                } else {
+                  attributes.put((String) args[0], args[1]);
+                }
+                return null;
+              case "removeAttribute":
+                attributes.remove((String) args[0]);
+                return null;
+              case "getAttributeNames":
+                return Collections.enumeration(attributes.keySet());
+              case "getHeader":
+                return this.headers.get((String) args[0]);
+              case "getHeaders": {
+                String header = this.headers.get((String) args[0]);
+                return Collections.enumeration(
+                    (header == null) ? Collections.emptyList() : Collections.singletonList(header)
+                );
+              }
+              case "getHeaderNames":
+                return Collections.enumeration(this.headers.keySet());
+              case "getParameterMap":
+                return Collections.emptyMap();
+              case "getParameterNames":
+                return Collections.emptyEnumeration();
+              case "getMethod":
+                return "GET";
+              case "getScheme":
+                return "http";
+              case "getProtocol":
+                return "HTTP/1.1";
+              case "getServerName":
+                return "localhost";
+              case "getServerPort":
+                return 80;
+              case "getContextPath":
+              case "getPathInfo":
+                return "";
+              case "getServletPath":
+              case "getRequestURI":
+                return "/";
+              case "getCharacterEncoding":
+                return StandardCharsets.UTF_8.name();
+              case "getLocale":
+                return Locale.ROOT;
+              case "getLocales":
+                return Collections.enumeration(Collections.singletonList(Locale.ROOT));
+              case "getDispatcherType":
+                return DispatcherType.REQUEST;
+              case "getRemoteAddr":
+                return "127.0.0.1";
+              case "hashCode":
+                return System.identityHashCode(proxy);
+              case "equals":
+                return proxy == args[0];
+              case "toString":
+                return "HttpServletRequest stub";
+              default:
+                return defaultValue(method.getReturnType());
+            }
+          }
+      );
+    }
+
+    /**
+     * Clears all attributes, as if a new request.
+     */
+    void reset() {
+      attributes.clear();
+    }
+  }
+
+  /**
+   * Creates a response that does not rewrite URLs and discards all output.
+   */
+  static HttpServletResponse newResponse() {
+    PrintWriter writer = new PrintWriter(Writer.nullWriter());
+    return (HttpServletResponse) Proxy.newProxyInstance(
+        Stubs.class.getClassLoader(),
+        new Class<?>[]{HttpServletResponse.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "encodeURL":
+            case "encodeRedirectURL":
+              return args[0];
+            case "getCharacterEncoding":
+              return StandardCharsets.UTF_8.name();
+            case "getContentType":
+              return "application/xhtml+xml;charset=UTF-8";
+            case "getLocale":
+              return Locale.ROOT;
+            case "getWriter":
+              return writer;
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "equals":
+              return proxy == args[0];
+            case "toString":
+              return "HttpServletResponse stub";
+            default:
+              return defaultValue(method.getReturnType());
+          }
+        }
+    );
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.semanticcms.file.servlet.benchmark;
+
+import com.aoapps.html.servlet.DocumentEE;
+import com.aoapps.io.buffer.BufferWriter;
+import com.aoapps.io.buffer.SegmentedWriter;
+import com.semanticcms.core.servlet.Headers;
+import com.semanticcms.file.model.File;
+import com.semanticcms.file.servlet.impl.FileExporter;
+import com.semanticcms.file.servlet.impl.FileImpl;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.catalina.LifecycleException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link FileImpl#writeFileImpl(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.aoapps.html.any.AnyUnion_Palpable_Phrasing, com.semanticcms.file.model.File)}
+ * for a file and a directory, with and without a body, and while exporting or not.  The book is a
+ * {@link BenchmarkWebapp}, and each operation writes one element to the same document, as when rendering the many
+ * file elements of a single page.
+ *
+ * <p>While exporting, files are also copied into a temporary export tree, which happens once per file.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WriteFileImplBenchmark {
+
+  @Param({"file", "directory"})
+  public String kind;
+
+  @Param({"false", "true"})
+  public boolean body;
+
+  @Param({"false", "true"})
+  public boolean exporting;
+
+  private BenchmarkWebapp webapp;
+  private ServletContext servletContext;
+  private Stubs.Request request;
+  private HttpServletResponse response;
+  private DocumentEE document;
+  private File element;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException, LifecycleException {
+    webapp = new BenchmarkWebapp();
+    webapp.addFile("/files/file.dat", 4096);
+    webapp.addPage("/index.jspx", "  <core:page title=\"Benchmark\" />\n");
+    Map<String, String> initParameters = new HashMap<>();
+    if (exporting) {
+      initParameters.put(FileExporter.DIRECTORY_INIT_PARAM, webapp.newDirectory("export").getAbsolutePath());
+    }
+    webapp.start(initParameters);
+    servletContext = webapp.getServletContext();
+    request = new Stubs.Request(
+        exporting ? Collections.singletonMap(Headers.EXPORTING_HEADER, "true") : Collections.emptyMap()
+    );
+    response = Stubs.newResponse();
+    document = new DocumentEE(servletContext, request.request, response, Writer.nullWriter());
+    element = new File();
+    element.setPageRef(webapp.getPageRef("file".equals(kind) ? "/files/file.dat" : "/files/"));
+    if (body) {
+      BufferWriter out = new SegmentedWriter();
+      try {
+        out.write("Download");
+      } finally {
+        out.close();
+      }
+      element.setBody(out.getResult());
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException, LifecycleException {
+    webapp.close();
+  }
+
+  @Benchmark
+  public void writeFileImpl() throws ServletException, IOException {
+    FileImpl.writeFileImpl(servletContext, request.request, response, document, element);
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.semanticcms.file.servlet.benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.aoapps.encoding.Serialization;
+import com.aoapps.html.servlet.DocumentEE;
+import com.aoapps.html.servlet.SerializationEE;
+import com.semanticcms.core.model.PageRef;
+import com.semanticcms.file.model.File;
+import com.semanticcms.file.servlet.impl.CapturedLink;
+import com.semanticcms.file.servlet.impl.DeferredLink;
+import com.semanticcms.file.servlet.impl.DirectoryArchive;
+import com.semanticcms.file.servlet.impl.FileDigestCache;
+import com.semanticcms.file.servlet.impl.FileImpl;
+import com.semanticcms.file.servlet.impl.FileMetadata;
+import com.semanticcms.file.servlet.impl.FileMetadataCache;
+import com.semanticcms.file.servlet.impl.ThumbnailCache;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that the HTML written by {@link CapturedLink} and {@link DeferredLink}, held in the page cache, is the same, byte
+ * for byte, as the HTML written by
+ * {@link FileImpl#writeFileImpl(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.aoapps.html.any.AnyUnion_Palpable_Phrasing, com.semanticcms.file.model.File)}
+ * through ao-fluent-html.  Each kind of link is compared both while still provisional and once final, with both XML
+ * and HTML serialization.
+ */
+public class CapturedLinkTest {
+
+  private static final String FILE_PATH = "/files/file.dat";
+
+  private static final String DIRECTORY_PATH = "/files/directory/";
+
+  private static final String IMAGE_PATH = "/files/image.png";
+
+  /**
+   * The maximum time to wait for the background caches.
+   */
+  private static final long TIMEOUT_MILLIS = 30000;
+
+  private static BenchmarkWebapp webapp;
+
+  @BeforeClass
+  public static void setUpClass() throws Exception {
+    webapp = new BenchmarkWebapp();
+    webapp.addFile(FILE_PATH, 4096);
+    webapp.addFile(DIRECTORY_PATH + "nested.dat", 1024);
+    BufferedImage image = new BufferedImage(256, 128, BufferedImage.TYPE_INT_RGB);
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", png);
+    webapp.addFile(IMAGE_PATH, png.toByteArray());
+    webapp.addPage("/index.jspx", "  <core:page title=\"Captured Link\" />\n");
+    Map<String, String> initParameters = new HashMap<>();
+    initParameters.put(ThumbnailCache.ENABLED_INIT_PARAM, "true");
+    initParameters.put(DirectoryArchive.ENABLED_INIT_PARAM, "true");
+    webapp.start(initParameters);
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws Exception {
+    if (webapp != null) {
+      webapp.close();
+      webapp = null;
+    }
+  }
+
+  private static Stubs.Request newRequest(Serialization serialization) {
+    return new Stubs.Request(Collections.singletonMap(
+        "Accept",
+        (serialization == Serialization.XML) ? "application/xhtml+xml" : "text/html"
+    ));
+  }
+
+  /**
+   * Writes the element HTML directly.
+   */
+  private static String write(Serialization serialization, File element) throws Exception {
+    ServletContext servletContext = webapp.getServletContext();
+    Stubs.Request request = newRequest(serialization);
+    HttpServletResponse response = Stubs.newResponse();
+    assertEquals(serialization, SerializationEE.get(servletContext, request.request));
+    StringWriter out = new StringWriter();
+    FileImpl.writeFileImpl(servletContext, request.request, response,
+        new DocumentEE(servletContext, request.request, response, out), element);
+    return out.toString();
+  }
+
+  /**
+   * Captures the element, as when held in the page cache.
+   */
+  private static FileImpl.CapturedFile capture(Serialization serialization, File element) throws Exception {
+    ServletContext servletContext = webapp.getServletContext();
+    Stubs.Request request = newRequest(serialization);
+    HttpServletResponse response = Stubs.newResponse();
+    StringWriter out = new StringWriter();
+    FileImpl.CapturedFile link = FileImpl.captureFileImpl(servletContext, request.request, response,
+        new DocumentEE(servletContext, request.request, response, out), element);
+    assertNotNull("Not captured", link);
+    assertEquals("Nothing written when captured", "", out.toString());
+    return link;
+  }
+
+  /**
+   * Compares the captured HTML to the HTML written directly.  The background caches may finish between the two, so
+   * the comparison is repeated until the HTML written directly is the same before and after.
+   *
+   * @return  the captured link
+   */
+  private static FileImpl.CapturedFile assertSameHtml(Serialization serialization, File element) throws Exception {
+    while (true) {
+      String before = write(serialization, element);
+      FileImpl.CapturedFile link = capture(serialization, element);
+      StringWriter captured = new StringWriter();
+      link.writeTo(captured);
+      String after = write(serialization, element);
+      if (before.equals(after)) {
+        assertEquals(before, captured.toString());
+        return link;
+      }
+    }
+  }
+
+  /**
+   * Waits for the digest and any thumbnail or directory tree to be generated in the background.
+   */
+  private static void awaitFinal(PageRef pageRef) throws Exception {
+    ServletContext servletContext = webapp.getServletContext();
+    FileMetadata metadata = FileMetadataCache.getInstance(servletContext).getFileMetadata(pageRef);
+    assertNotNull(metadata);
+    FileDigestCache digests = FileDigestCache.getInstance(servletContext);
+    ThumbnailCache thumbnails = ThumbnailCache.getInstance(servletContext);
+    DirectoryArchive archives = DirectoryArchive.getInstance(servletContext);
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+    while (true) {
+      boolean ready;
+      if (metadata.isDirectory()) {
+        ready = archives.getTreeInBackground(metadata.getFile()) != null;
+      } else {
+        ready = (!digests.isEnabled() || digests.getDigest(metadata) != null)
+            && (!thumbnails.isThumbnailable(metadata) || thumbnails.getThumbnail(metadata) != null);
+      }
+      if (ready) {
+        return;
+      }
+      assertTrue("Timeout waiting for background caches: " + pageRef, System.nanoTime() - deadline < 0);
+      Thread.sleep(10);
+    }
+  }
+
+  private static void assertSameHtml(String path, boolean expectFinal) throws Exception {
+    File element = new File();
+    element.setPageRef(webapp.getPageRef(path));
+    for (Serialization serialization : Serialization.values()) {
+      // While provisional, or already final
+      assertSameHtml(serialization, element);
+    }
+    awaitFinal(element.getPageRef());
+    for (Serialization serialization : Serialization.values()) {
+      FileImpl.CapturedFile link = assertSameHtml(serialization, element);
+      assertEquals(expectFinal ? CapturedLink.class : DeferredLink.class, link.getClass());
+    }
+  }
+
+  @Test
+  public void testFile() throws Exception {
+    assertSameHtml(FILE_PATH, true);
+  }
+
+  @Test
+  public void testDirectory() throws Exception {
+    assertSameHtml(DIRECTORY_PATH, false);
+  }
+
+  @Test
+  public void testThumbnail() throws Exception {
+    assertSameHtml(IMAGE_PATH, true);
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.semanticcms.file.servlet.benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.semanticcms.core.model.Page;
+import com.semanticcms.core.servlet.CaptureLevel;
+import com.semanticcms.core.servlet.CapturePage;
+import com.semanticcms.file.servlet.FileUtils;
+import com.semanticcms.file.servlet.impl.HasFileCache;
+import com.semanticcms.file.servlet.impl.HasFileSearch;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that the parallel search of {@link HasFileSearch} gives the same answers as the sequential traversal of
+ * {@link FileUtils#hasFile(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page, boolean)},
+ * for every page of the same page tree, with {@link HasFileCache} disabled.
+ */
+public class HasFileSearchTest {
+
+  private static final int BREADTH = 3;
+
+  private static final int DEPTH = 3;
+
+  private static final String FILE_PATH = "/files/file.dat";
+
+  /**
+   * The pages with a file that is not hidden: a page in the middle of the tree and a leaf of another branch.
+   */
+  private static final int[] FILE_PAGES = {6, 31};
+
+  private static BenchmarkWebapp webapp;
+  private static int pages;
+  private static final List<String> paths = new ArrayList<>();
+
+  /**
+   * Adds a page and all its children.
+   *
+   * @return  the book-relative path of the page
+   */
+  private static String build(String parentPath, int level) throws IOException {
+    int number = pages++;
+    String path = (parentPath == null) ? "/index.jspx" : ("/pages/page-" + number + ".jspx");
+    paths.add(path);
+    List<String> childPaths = new ArrayList<>();
+    if (level < DEPTH) {
+      for (int i = 0; i < BREADTH; i++) {
+        childPaths.add(build(path, level + 1));
+      }
+    }
+    StringBuilder content = new StringBuilder();
+    content.append("  <core:page title=\"Page ").append(number).append("\">\n");
+    if (parentPath != null) {
+      content.append("    <core:parent page=\"").append(parentPath).append("\" />\n");
+    }
+    for (String childPath : childPaths) {
+      content.append("    <core:child page=\"").append(childPath).append("\" />\n");
+    }
+    // Hidden files are never found
+    content.append("    <file:file path=\"").append(FILE_PATH).append("\" hidden=\"true\" />\n");
+    for (int filePage : FILE_PAGES) {
+      if (number == filePage) {
+        content.append("    <file:file path=\"").append(FILE_PATH).append("\" />\n");
+      }
+    }
+    content.append("  </core:page>\n");
+    webapp.addPage(path, content);
+    return path;
+  }
+
+  @BeforeClass
+  public static void setUpClass() throws Exception {
+    webapp = new BenchmarkWebapp();
+    webapp.addFile(FILE_PATH, 4096);
+    pages = 0;
+    build(null, 0);
+    Map<String, String> initParameters = new HashMap<>();
+    initParameters.put(HasFileCache.ENABLED_INIT_PARAM, "false");
+    initParameters.put(HasFileCache.PARALLEL_INIT_PARAM, "false");
+    webapp.start(initParameters);
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws Exception {
+    if (webapp != null) {
+      webapp.close();
+      webapp = null;
+    }
+  }
+
+  private static void assertAgree(boolean recursive) throws Exception {
+    ServletContext servletContext = webapp.getServletContext();
+    Stubs.Request request = new Stubs.Request(Collections.emptyMap());
+    HttpServletResponse response = Stubs.newResponse();
+    int found = 0;
+    for (String path : paths) {
+      request.reset();
+      Page page = CapturePage.capturePage(servletContext, request.request, response, webapp.getPageRef(path),
+          CaptureLevel.META);
+      request.reset();
+      boolean sequential = FileUtils.hasFile(servletContext, request.request, response, page, recursive);
+      request.reset();
+      boolean parallel = HasFileSearch.hasFile(servletContext, request.request, response, page, recursive);
+      assertEquals(path, sequential, parallel);
+      if (sequential) {
+        found++;
+      }
+    }
+    // The tree has pages both with and without files
+    assertTrue(found > 0);
+    assertTrue(found < paths.size());
+  }
+
+  @Test
+  public void testDirectAgrees() throws Exception {
+    assertAgree(false);
+  }
+
+  @Test
+  public void testRecursiveAgrees() throws Exception {
+    assertAgree(true);
+  }
+
+  @Test
+  public void testRootFindsFile() throws Exception {
+    ServletContext servletContext = webapp.getServletContext();
+    Stubs.Request request = new Stubs.Request(Collections.emptyMap());
+    HttpServletResponse response = Stubs.newResponse();
+    Page root = CapturePage.capturePage(servletContext, request.request, response, webapp.getPageRef(paths.get(0)),
+        CaptureLevel.META);
+    request.reset();
+    assertTrue(HasFileSearch.hasFile(servletContext, request.request, response, root, true));
+    request.reset();
+    assertFalse(HasFileSearch.hasFile(servletContext, request.request, response, root, false));
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Records every latency of one client, so percentiles are exact instead of estimated from buckets.  Not thread-safe,
+ * each client has its own.
+ */
+final class LatencyRecorder {
+
+  private long[] latencies = new long[1024];
+  private int count;
+
+  void record(long nanos) {
+    if (count == latencies.length) {
+      latencies = Arrays.copyOf(latencies, count * 2);
+    }
+    latencies[count++] = nanos;
+  }
+
+  int getCount() {
+    return count;
+  }
+
+  /**
+   * Combines and sorts the latencies of all clients.
+   */
+  static long[] merge(LatencyRecorder... recorders) {
+    int total = 0;
+    for (LatencyRecorder recorder : recorders) {
+      total += recorder.count;
+    }
+    long[] merged = new long[total];
+    int pos = 0;
+    for (LatencyRecorder recorder : recorders) {
+      System.arraycopy(recorder.latencies, 0, merged, pos, recorder.count);
+      pos += recorder.count;
+    }
+    Arrays.sort(merged);
+    return merged;
+  }
+
+  /**
+   * Gets the given percentile of sorted latencies, by the nearest-rank method.
+   *
+   * @param  percentile  the percentile, from {@code 0} (exclusive) to {@code 100} (inclusive)
+   */
+  static long getPercentile(long[] sorted, double percentile) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+    return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Generates a web application with a single book of pages linking to resource files and directories.  The same
+ * parameters and seed always generate the same book, so runs are comparable across commits.
+ *
+ * <p>Resource files are sparse, so large books are generated quickly and take little disk space.</p>
+ */
+final class LoadTestBook {
+
+  /**
+   * The name of the generated book.
+   */
+  static final String BOOK_NAME = "/loadtest";
+
+  /**
+   * The extension of generated resource files, mapped to the file servlet.
+   */
+  static final String FILE_EXTENSION = ".dat";
+
+  /**
+   * The number of resource files in each generated directory.
+   */
+  private static final int FILES_PER_DIRECTORY = 100;
+
+  private final int pages;
+  private final int filesPerPage;
+  private final int directoriesPerPage;
+  private final long fileLength;
+  private final long seed;
+  private final SessionTracking sessionTracking;
+
+  LoadTestBook(
+      int pages,
+      int filesPerPage,
+      int directoriesPerPage,
+      long fileLength,
+      long seed,
+      SessionTracking sessionTracking
+  ) {
+    this.pages = pages;
+    this.filesPerPage = filesPerPage;
+    this.directoriesPerPage = directoriesPerPage;
+    this.fileLength = fileLength;
+    this.seed = seed;
+    this.sessionTracking = sessionTracking;
+  }
+
+  int getPages() {
+    return pages;
+  }
+
+  /**
+   * Gets the context-relative path of the given page.
+   */
+  static String getPagePath(int page) {
+    return BOOK_NAME + "/pages/page-" + page + ".jspx";
+  }
+
+  /**
+   * Gets the total number of distinct resource files, shared between pages.
+   */
+  private int getFileCount() {
+    return Math.max(1, pages * filesPerPage / 2);
+  }
+
+  private int getDirectoryCount() {
+    return (getFileCount() + FILES_PER_DIRECTORY - 1) / FILES_PER_DIRECTORY;
+  }
+
+  private static String getFilePath(int file) {
+    return "/files/dir-" + (file / FILES_PER_DIRECTORY) + "/file-" + file + FILE_EXTENSION;
+  }
+
+  private static String getDirectoryPath(int directory) {
+    return "/files/dir-" + directory + "/";
+  }
+
+  /**
+   * Generates the web application into the given empty directory.
+   */
+  void generate(File webappDir) throws IOException {
+    File bookDir = new File(webappDir, BOOK_NAME.substring(1));
+    File webInf = new File(webappDir, "WEB-INF");
+    Files.createDirectories(webInf.toPath());
+    Files.createDirectories(new File(bookDir, "pages").toPath());
+    write(new File(webInf, "web.xml"), getWebXml());
+    write(
+        new File(webInf, "books.properties"),
+        "root.book=" + BOOK_NAME + "\n"
+            + "books.1.name=" + BOOK_NAME + "\n"
+            // Resource files are resolved relative to the book source, which is the book directory itself
+            + "books.1.cvsworkDirectory=" + bookDir.getAbsolutePath().replace("\\", "\\\\") + "\n"
+            + "books.1.allowRobots=false\n"
+    );
+    write(
+        new File(bookDir, "book.properties"),
+        "content.root=/index.jspx\n"
+            + "copyright.rightsHolder=AO Industries, Inc.\n"
+            + "copyright.rights=All rights reserved\n"
+            + "copyright.dateCopyrighted=2026\n"
+            + "title=Load Test\n"
+    );
+    // Resource files
+    int fileCount = getFileCount();
+    for (int i = 0; i < fileCount; i++) {
+      File file = new File(bookDir, getFilePath(i).substring(1));
+      if (i % FILES_PER_DIRECTORY == 0) {
+        Files.createDirectories(file.getParentFile().toPath());
+      }
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.setLength(fileLength);
+      }
+    }
+    // Index page with all pages as children
+    StringBuilder index = new StringBuilder();
+    index.append(getPageStart()).append("  <core:page title=\"Load Test\">\n");
+    for (int i = 0; i < pages; i++) {
+      index.append("    <core:child page=\"pages/page-").append(i).append(".jspx\" />\n");
+    }
+    index.append("  </core:page>\n").append(PAGE_END);
+    write(new File(bookDir, "index.jspx"), index);
+    // Pages
+    Random random = new Random(seed);
+    int directoryCount = getDirectoryCount();
+    for (int i = 0; i < pages; i++) {
+      StringBuilder page = new StringBuilder();
+      page.append(getPageStart());
+      page.append("  <core:page title=\"Page ").append(i).append("\">\n");
+      page.append("    <core:parent page=\"../index.jspx\" />\n");
+      page.append("    <ul>\n");
+      for (int j = 0; j < filesPerPage; j++) {
+        page.append("      <li><file:file path=\"").append(getFilePath(random.nextInt(fileCount))).append("\" /></li>\n");
+      }
+      for (int j = 0; j < directoriesPerPage; j++) {
+        page.append("      <li><file:file path=\"").append(getDirectoryPath(random.nextInt(directoryCount))).append("\" /></li>\n");
+      }
+      page.append("    </ul>\n");
+      page.append("  </core:page>\n").append(PAGE_END);
+      write(new File(bookDir, getPagePath(i).substring(BOOK_NAME.length() + 1)), page);
+    }
+  }
+
+  private static final String PAGE_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+      + "<jsp:root\n"
+      + "  xmlns:core=\"https://semanticcms.com/core/taglib/\"\n"
+      + "  xmlns:file=\"https://semanticcms.com/file/taglib/\"\n"
+      + "  xmlns:jsp=\"http://java.sun.com/JSP/Page\"\n"
+      + "  version=\"2.1\"\n"
+      + ">\n"
+      + "  <jsp:directive.page language=\"java\" pageEncoding=\"UTF-8\" />\n";
+
+  private static final String PAGE_END = "</jsp:root>\n";
+
+  /**
+   * Gets the start of a page, which creates a session on every request when sessions are tracked.
+   */
+  private String getPageStart() {
+    return PAGE_START + "  <jsp:directive.page session=\"" + (sessionTracking != SessionTracking.NONE) + "\" />\n";
+  }
+
+  private String getWebXml() {
+    StringBuilder xml = new StringBuilder();
+    xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+        .append("<web-app xmlns=\"http://xmlns.jcp.org/xml/ns/javaee\"\n")
+        .append("  xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n")
+        .append("  xsi:schemaLocation=\"http://xmlns.jcp.org/xml/ns/javaee http://xmlns.jcp.org/xml/ns/javaee/web-app_3_1.xsd\"\n")
+        .append("  version=\"3.1\" metadata-complete=\"false\">\n")
+        .append("  <servlet>\n")
+        .append("    <servlet-name>FileServlet</servlet-name>\n")
+        .append("    <servlet-class>com.semanticcms.file.servlet.FileServlet</servlet-class>\n")
+        .append("    <async-supported>true</async-supported>\n")
+        .append("  </servlet>\n")
+        .append("  <servlet-mapping>\n")
+        .append("    <servlet-name>FileServlet</servlet-name>\n")
+        .append("    <url-pattern>*").append(FILE_EXTENSION).append("</url-pattern>\n")
+        .append("  </servlet-mapping>\n");
+    if (sessionTracking != SessionTracking.NONE) {
+      xml.append("  <session-config>\n")
+          .append("    <tracking-mode>").append(sessionTracking.name()).append("</tracking-mode>\n")
+          .append("  </session-config>\n");
+    }
+    xml.append("</web-app>\n");
+    return xml.toString();
+  }
+
+  private static void write(File file, CharSequence content) throws IOException {
+    try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+      out.append(content);
+    }
+  }
+}
@@ -0,0 +1,328 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.CookieManager;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+
+/**
+ * Starts an embedded Apache Tomcat on loopback with a generated book, drives it with concurrent clients, and reports
+ * throughput, latency percentiles, and the allocation rate of the container threads.
+ *
+ * <p>Options, each given as <code>--name=value</code>:</p>
+ * <ul>
+ *   <li><code>pages</code> - The number of pages (default {@value #DEFAULT_PAGES})</li>
+ *   <li><code>files</code> - The number of file elements per page (default {@value #DEFAULT_FILES})</li>
+ *   <li><code>directories</code> - The number of directory references per page (default {@value #DEFAULT_DIRECTORIES})</li>
+ *   <li><code>fileLength</code> - The length of each resource file (default {@value #DEFAULT_FILE_LENGTH})</li>
+ *   <li><code>sessions</code> - How sessions are tracked: <code>NONE</code>, <code>COOKIE</code>, or <code>URL</code>
+ *       (default <code>NONE</code>)</li>
+ *   <li><code>clients</code> - The number of concurrent clients (default {@value #DEFAULT_CLIENTS})</li>
+ *   <li><code>containerThreads</code> - The number of container request threads (default {@value #DEFAULT_CONTAINER_THREADS})</li>
+ *   <li><code>warmup</code> - The seconds of warm-up, not measured (default {@value #DEFAULT_WARMUP})</li>
+ *   <li><code>duration</code> - The seconds measured (default {@value #DEFAULT_DURATION})</li>
+ *   <li><code>seed</code> - The seed for the generated book and the page requests (default {@value #DEFAULT_SEED})</li>
+ *   <li><code>dir</code> - The working directory (default a new temporary directory)</li>
+ *   <li><code>out</code> - The file to store the results, to be used as a later baseline</li>
+ *   <li><code>baseline</code> - The results of a previous run to compare against</li>
+ *   <li><code>maxRegression</code> - The maximum allowed regression compared to the baseline, as a fraction
+ *       (default {@value #DEFAULT_MAX_REGRESSION})</li>
+ * </ul>
+ *
+ * <p>Exits with status {@code 1} when there were errors, and with status {@code 2} when any measure regressed beyond
+ * <code>maxRegression</code> compared to the baseline, so releases may be gated on the result.</p>
+ */
+public final class Main {
+
+  /** Make no instances. */
+  private Main() {
+    throw new AssertionError();
+  }
+
+  private static final int DEFAULT_PAGES = 100;
+  private static final int DEFAULT_FILES = 500;
+  private static final int DEFAULT_DIRECTORIES = 20;
+  private static final long DEFAULT_FILE_LENGTH = 1024 * 1024;
+  private static final int DEFAULT_CLIENTS = 16;
+  private static final int DEFAULT_CONTAINER_THREADS = 32;
+  private static final int DEFAULT_WARMUP = 30;
+  private static final int DEFAULT_DURATION = 60;
+  private static final long DEFAULT_SEED = 1;
+  private static final double DEFAULT_MAX_REGRESSION = 0.1;
+
+  /**
+   * The names of the options that affect the results, which must match for runs to be compared.
+   */
+  private static final String[] CONFIGURATION_OPTIONS = {
+      "pages",
+      "files",
+      "directories",
+      "fileLength",
+      "sessions",
+      "clients",
+      "containerThreads",
+      "warmup",
+      "duration",
+      "seed"
+  };
+
+  private static Map<String, String> parseOptions(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      if (arg.isEmpty()) {
+        continue;
+      }
+      int eq = arg.indexOf('=');
+      if (!arg.startsWith("--") || eq == -1) {
+        throw new IllegalArgumentException("Options must be given as --name=value: " + arg);
+      }
+      options.put(arg.substring(2, eq), arg.substring(eq + 1));
+    }
+    return options;
+  }
+
+  /**
+   * One client, requesting random pages one at a time until the deadline.
+   */
+  private static final class Client extends Thread {
+    private final HttpClient httpClient;
+    private final String baseUrl;
+    private final int pages;
+    private final Random random;
+    private final long deadlineNanos;
+    private final LatencyRecorder recorder = new LatencyRecorder();
+    private final AtomicLong errors;
+
+    private Client(int index, SessionTracking sessionTracking, String baseUrl, int pages, long seed, long deadlineNanos, AtomicLong errors) {
+      super(Main.class.getName() + ".client-" + index);
+      HttpClient.Builder builder = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1);
+      if (sessionTracking == SessionTracking.COOKIE) {
+        builder.cookieHandler(new CookieManager());
+      }
+      this.httpClient = builder.build();
+      this.baseUrl = baseUrl;
+      this.pages = pages;
+      this.random = new Random(seed + index);
+      this.deadlineNanos = deadlineNanos;
+      this.errors = errors;
+    }
+
+    @Override
+    public void run() {
+      while (System.nanoTime() - deadlineNanos < 0) {
+        HttpRequest request = HttpRequest.newBuilder(
+            URI.create(baseUrl + LoadTestBook.getPagePath(random.nextInt(pages)))
+        ).build();
+        long start = System.nanoTime();
+        try {
+          HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+          recorder.record(System.nanoTime() - start);
+          if (response.statusCode() != 200) {
+            errors.incrementAndGet();
+          }
+        } catch (IOException e) {
+          recorder.record(System.nanoTime() - start);
+          errors.incrementAndGet();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs all clients for the given time.
+   */
+  private static Client[] runPhase(
+      int clients,
+      SessionTracking sessionTracking,
+      String baseUrl,
+      int pages,
+      long seed,
+      long seconds,
+      AtomicLong errors
+  ) throws InterruptedException {
+    long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+    Client[] threads = new Client[clients];
+    for (int i = 0; i < clients; i++) {
+      threads[i] = new Client(i, sessionTracking, baseUrl, pages, seed, deadlineNanos, errors);
+      threads[i].start();
+    }
+    for (Client thread : threads) {
+      thread.join();
+    }
+    return threads;
+  }
+
+  /**
+   * Gets the total bytes allocated by each container request thread, by thread id.
+   */
+  private static Map<Long, Long> getContainerAllocations() {
+    com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    Map<Long, Long> allocations = new HashMap<>();
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().contains("-exec-")) {
+        long allocated = threadBean.getThreadAllocatedBytes(thread.getId());
+        if (allocated != -1) {
+          allocations.put(thread.getId(), allocated);
+        }
+      }
+    }
+    return allocations;
+  }
+
+  @SuppressWarnings("UseOfSystemOutOrSystemErr")
+  public static void main(String[] args) throws IOException, InterruptedException, LifecycleException {
+    Map<String, String> options = parseOptions(args);
+    int pages = Integer.parseInt(options.getOrDefault("pages", Integer.toString(DEFAULT_PAGES)));
+    int files = Integer.parseInt(options.getOrDefault("files", Integer.toString(DEFAULT_FILES)));
+    int directories = Integer.parseInt(options.getOrDefault("directories", Integer.toString(DEFAULT_DIRECTORIES)));
+    long fileLength = Long.parseLong(options.getOrDefault("fileLength", Long.toString(DEFAULT_FILE_LENGTH)));
+    SessionTracking sessionTracking = SessionTracking.valueOf(options.getOrDefault("sessions", SessionTracking.NONE.name()).toUpperCase(Locale.ROOT));
+    int clients = Integer.parseInt(options.getOrDefault("clients", Integer.toString(DEFAULT_CLIENTS)));
+    int containerThreads = Integer.parseInt(options.getOrDefault("containerThreads", Integer.toString(DEFAULT_CONTAINER_THREADS)));
+    int warmup = Integer.parseInt(options.getOrDefault("warmup", Integer.toString(DEFAULT_WARMUP)));
+    int duration = Integer.parseInt(options.getOrDefault("duration", Integer.toString(DEFAULT_DURATION)));
+    long seed = Long.parseLong(options.getOrDefault("seed", Long.toString(DEFAULT_SEED)));
+    double maxRegression = Double.parseDouble(options.getOrDefault("maxRegression", Double.toString(DEFAULT_MAX_REGRESSION)));
+    String dirOption = options.get("dir");
+    File workDir = (dirOption != null) ? new File(dirOption) : Files.createTempDirectory("semanticcms-file-loadtest-").toFile();
+
+    // Generate book
+    File webappDir = new File(workDir, "webapp");
+    if (webappDir.exists()) {
+      throw new IOException("Working directory already used: " + workDir);
+    }
+    System.out.println("Generating book in " + webappDir);
+    new LoadTestBook(pages, files, directories, fileLength, seed, sessionTracking).generate(webappDir);
+
+    // Start container
+    Tomcat tomcat = new Tomcat();
+    tomcat.setBaseDir(new File(workDir, "tomcat").getAbsolutePath());
+    Connector connector = new Connector("HTTP/1.1");
+    connector.setPort(0);
+    connector.setProperty("address", InetAddress.getLoopbackAddress().getHostAddress());
+    // Fixed pool, so allocation is measured on the same threads throughout
+    connector.setProperty("maxThreads", Integer.toString(containerThreads));
+    connector.setProperty("minSpareThreads", Integer.toString(containerThreads));
+    tomcat.setConnector(connector);
+    tomcat.addWebapp("", webappDir.getAbsolutePath());
+    tomcat.start();
+    int status;
+    try {
+      String baseUrl = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ':' + connector.getLocalPort();
+      // Fail early when the book does not render
+      HttpResponse<String> index = HttpClient.newHttpClient().send(
+          HttpRequest.newBuilder(URI.create(baseUrl + LoadTestBook.BOOK_NAME + "/index.jspx")).build(),
+          HttpResponse.BodyHandlers.ofString()
+      );
+      if (index.statusCode() != 200) {
+        System.err.println(index.body());
+        throw new IOException("Unable to render index: " + index.statusCode());
+      }
+
+      System.out.println("Warming up for " + warmup + " s with " + clients + " clients");
+      runPhase(clients, sessionTracking, baseUrl, pages, seed, warmup, new AtomicLong());
+
+      System.out.println("Measuring for " + duration + " s with " + clients + " clients");
+      AtomicLong errors = new AtomicLong();
+      Map<Long, Long> allocationsBefore = getContainerAllocations();
+      long start = System.nanoTime();
+      Client[] measured = runPhase(clients, sessionTracking, baseUrl, pages, seed, duration, errors);
+      long durationNanos = System.nanoTime() - start;
+      Map<Long, Long> allocationsAfter = getContainerAllocations();
+      long allocatedBytes = 0;
+      for (Map.Entry<Long, Long> entry : allocationsAfter.entrySet()) {
+        allocatedBytes += entry.getValue() - allocationsBefore.getOrDefault(entry.getKey(), 0L);
+      }
+
+      LatencyRecorder[] recorders = new LatencyRecorder[measured.length];
+      for (int i = 0; i < measured.length; i++) {
+        recorders[i] = measured[i].recorder;
+      }
+      long[] latencies = LatencyRecorder.merge(recorders);
+      Properties configuration = new Properties();
+      for (String name : CONFIGURATION_OPTIONS) {
+        configuration.setProperty(name, options.getOrDefault(name, ""));
+      }
+      configuration.setProperty("java.version", System.getProperty("java.version"));
+      configuration.setProperty("availableProcessors", Integer.toString(Runtime.getRuntime().availableProcessors()));
+      Results results = new Results(
+          configuration,
+          latencies.length,
+          errors.get(),
+          durationNanos,
+          LatencyRecorder.getPercentile(latencies, 50),
+          LatencyRecorder.getPercentile(latencies, 99),
+          LatencyRecorder.getPercentile(latencies, 99.9),
+          allocatedBytes
+      );
+      results.print(System.out);
+      String out = options.get("out");
+      if (out != null) {
+        results.store(new File(out));
+      }
+      status = (results.getErrors() == 0) ? 0 : 1;
+      String baseline = options.get("baseline");
+      if (baseline != null) {
+        List<String> regressions = results.compare(Results.load(new File(baseline)), maxRegression);
+        if (regressions.isEmpty()) {
+          System.out.println("No regressions compared to " + baseline);
+        } else {
+          System.out.println("Regressions compared to " + baseline + ':');
+          for (String regression : regressions) {
+            System.out.println("  " + regression);
+          }
+          status = 2;
+        }
+      }
+    } finally {
+      tomcat.stop();
+      tomcat.destroy();
+    }
+    if (status != 0) {
+      System.exit(status);
+    }
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The results of one measured run.  Results are stored as properties, along with the configuration of the run, so a
+ * later run can be compared against them.
+ */
+final class Results {
+
+  private static final String CONFIGURATION_PREFIX = "config.";
+
+  private final Properties configuration;
+  private final long requests;
+  private final long errors;
+  private final long durationNanos;
+  private final long p50Nanos;
+  private final long p99Nanos;
+  private final long p999Nanos;
+  private final long allocatedBytes;
+
+  Results(
+      Properties configuration,
+      long requests,
+      long errors,
+      long durationNanos,
+      long p50Nanos,
+      long p99Nanos,
+      long p999Nanos,
+      long allocatedBytes
+  ) {
+    this.configuration = configuration;
+    this.requests = requests;
+    this.errors = errors;
+    this.durationNanos = durationNanos;
+    this.p50Nanos = p50Nanos;
+    this.p99Nanos = p99Nanos;
+    this.p999Nanos = p999Nanos;
+    this.allocatedBytes = allocatedBytes;
+  }
+
+  /**
+   * Gets the requests per second.
+   */
+  double getThroughput() {
+    return requests * (double) TimeUnit.SECONDS.toNanos(1) / durationNanos;
+  }
+
+  /**
+   * Gets the bytes allocated by the container per second.
+   */
+  double getAllocationRate() {
+    return allocatedBytes * (double) TimeUnit.SECONDS.toNanos(1) / durationNanos;
+  }
+
+  /**
+   * Gets the bytes allocated by the container per request.
+   */
+  double getAllocatedPerRequest() {
+    return requests == 0 ? 0 : (double) allocatedBytes / requests;
+  }
+
+  long getErrors() {
+    return errors;
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / 1e6;
+  }
+
+  void print(PrintStream out) {
+    out.printf(Locale.ROOT, "Requests:     %d (%d errors) in %.1f s%n", requests, errors, durationNanos / 1e9);
+    out.printf(Locale.ROOT, "Throughput:   %.1f requests/s%n", getThroughput());
+    out.printf(Locale.ROOT, "Latency p50:  %.3f ms%n", toMillis(p50Nanos));
+    out.printf(Locale.ROOT, "Latency p99:  %.3f ms%n", toMillis(p99Nanos));
+    out.printf(Locale.ROOT, "Latency p999: %.3f ms%n", toMillis(p999Nanos));
+    out.printf(Locale.ROOT, "Allocation:   %.1f MB/s, %.0f bytes/request%n", getAllocationRate() / (1024 * 1024), getAllocatedPerRequest());
+  }
+
+  void store(File file) throws IOException {
+    Properties props = new Properties();
+    for (String name : configuration.stringPropertyNames()) {
+      props.setProperty(CONFIGURATION_PREFIX + name, configuration.getProperty(name));
+    }
+    props.setProperty("requests", Long.toString(requests));
+    props.setProperty("errors", Long.toString(errors));
+    props.setProperty("durationNanos", Long.toString(durationNanos));
+    props.setProperty("p50Nanos", Long.toString(p50Nanos));
+    props.setProperty("p99Nanos", Long.toString(p99Nanos));
+    props.setProperty("p999Nanos", Long.toString(p999Nanos));
+    props.setProperty("allocatedBytes", Long.toString(allocatedBytes));
+    try (OutputStream out = Files.newOutputStream(file.toPath())) {
+      props.store(out, "semanticcms-file-servlet load test results");
+    }
+  }
+
+  static Results load(File file) throws IOException {
+    Properties props = new Properties();
+    try (InputStream in = Files.newInputStream(file.toPath())) {
+      props.load(in);
+    }
+    Properties configuration = new Properties();
+    for (String name : props.stringPropertyNames()) {
+      if (name.startsWith(CONFIGURATION_PREFIX)) {
+        configuration.setProperty(name.substring(CONFIGURATION_PREFIX.length()), props.getProperty(name));
+      }
+    }
+    return new Results(
+        configuration,
+        Long.parseLong(props.getProperty("requests")),
+        Long.parseLong(props.getProperty("errors")),
+        Long.parseLong(props.getProperty("durationNanos")),
+        Long.parseLong(props.getProperty("p50Nanos")),
+        Long.parseLong(props.getProperty("p99Nanos")),
+        Long.parseLong(props.getProperty("p999Nanos")),
+        Long.parseLong(props.getProperty("allocatedBytes"))
+    );
+  }
+
+  /**
+   * Compares against a baseline run.
+   *
+   * @param  maxRegression  the maximum allowed regression of each measure, as a fraction such as {@code 0.1}
+   *
+   * @return  the description of each regression, empty when none
+   *
+   * @throws  IllegalArgumentException  when the runs were not configured the same, and so are not comparable
+   */
+  List<String> compare(Results baseline, double maxRegression) {
+    if (!configuration.equals(baseline.configuration)) {
+      throw new IllegalArgumentException(
+          "Baseline configuration does not match: " + baseline.configuration + " != " + configuration
+      );
+    }
+    List<String> regressions = new ArrayList<>();
+    checkLower(regressions, "Throughput", getThroughput(), baseline.getThroughput(), maxRegression);
+    checkHigher(regressions, "Latency p50", p50Nanos, baseline.p50Nanos, maxRegression);
+    checkHigher(regressions, "Latency p99", p99Nanos, baseline.p99Nanos, maxRegression);
+    checkHigher(regressions, "Latency p999", p999Nanos, baseline.p999Nanos, maxRegression);
+    checkHigher(regressions, "Allocation per request", getAllocatedPerRequest(), baseline.getAllocatedPerRequest(), maxRegression);
+    if (errors > baseline.errors) {
+      regressions.add("Errors: " + errors + " > " + baseline.errors);
+    }
+    return regressions;
+  }
+
+  private static void checkLower(List<String> regressions, String name, double value, double baseline, double maxRegression) {
+    if (value < baseline * (1 - maxRegression)) {
+      regressions.add(String.format(Locale.ROOT, "%s: %.1f < %.1f (%.1f%%)", name, value, baseline, (value / baseline - 1) * 100));
+    }
+  }
+
+  private static void checkHigher(List<String> regressions, String name, double value, double baseline, double maxRegression) {
+    if (value > baseline * (1 + maxRegression)) {
+      regressions.add(String.format(Locale.ROOT, "%s: %.1f > %.1f (+%.1f%%)", name, value, baseline, (value / baseline - 1) * 100));
+    }
+  }
+}
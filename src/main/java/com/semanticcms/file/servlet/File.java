@@ -1,6 +1,6 @@
 /*
  * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
- * Copyright (C) 2013, 2014, 2015, 2016, 2017, 2020, 2021, 2022, 2024  AO Industries, Inc.
+ * Copyright (C) 2013, 2014, 2015, 2016, 2017, 2020, 2021, 2022, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -30,10 +30,11 @@ import com.aoapps.io.buffer.BufferWriter;
 import com.aoapps.lang.Strings;
 import com.semanticcms.core.model.ElementContext;
 import com.semanticcms.core.servlet.CaptureLevel;
+import com.semanticcms.core.servlet.CurrentPage;
 import com.semanticcms.core.servlet.Element;
 import com.semanticcms.core.servlet.PageContext;
-import com.semanticcms.core.servlet.PageRefResolver;
 import com.semanticcms.file.servlet.impl.FileImpl;
+import com.semanticcms.file.servlet.impl.PageRefCache;
 import java.io.IOException;
 import java.io.Writer;
 import javax.servlet.ServletContext;
@@ -199,45 +200,87 @@ public class File extends Element<com.semanticcms.file.model.File> {
     return this;
   }
 
+  /**
+   * When not within a page, the element is written immediately in the same request, so is written directly to the
+   * output in {@link #writeTo(java.io.Writer, com.semanticcms.core.model.ElementContext)} instead of being captured.
+   */
+  private boolean writeDirect;
+
+  /**
+   * The captured HTML, when it could not be captured as a {@link #link}.
+   */
   private BufferResult writeMe;
 
+  /**
+   * The captured representation of the HTML, used in place of {@link #writeMe} when available.  When provisional,
+   * such as while a thumbnail is generated, the HTML is written again from the current state on every write.
+   */
+  private FileImpl.CapturedFile link;
+
   @Override
   protected void doBody(CaptureLevel captureLevel, Body<? super com.semanticcms.file.model.File> body) throws ServletException, IOException, SkipPageException {
     // Resolve file now to catch problems earlier even in meta mode
     element.setPageRef(
-        PageRefResolver.getPageRef(
-            servletContext,
+        PageRefCache.getInstance(servletContext).getPageRef(
             request,
             book,
             path
         )
     );
     super.doBody(captureLevel, body);
-    BufferWriter capturedOut;
     if (captureLevel == CaptureLevel.BODY) {
-      capturedOut = EncodingBufferedTag.newBufferWriter(request);
+      writeMe = null;
+      link = null;
+      writeDirect = CurrentPage.getCurrentPage(request) == null;
+      if (!writeDirect) {
+        // Within a page, the element is written later, possibly in another request
+        BufferWriter capturedOut = EncodingBufferedTag.newBufferWriter(request);
+        try {
+          link = FileImpl.captureFileImpl(
+              servletContext,
+              request,
+              response,
+              new DocumentEE(servletContext, request, response, capturedOut),
+              element
+          );
+        } finally {
+          capturedOut.close();
+        }
+        if (link == null) {
+          writeMe = capturedOut.getResult();
+        }
+      }
     } else {
-      capturedOut = null;
-    }
-    try {
       FileImpl.writeFileImpl(
           servletContext,
           request,
           response,
-          (capturedOut == null) ? null : new DocumentEE(servletContext, request, response, capturedOut),
+          null,
           element
       );
-    } finally {
-      if (capturedOut != null) {
-        capturedOut.close();
-      }
+      writeDirect = false;
+      writeMe = null;
+      link = null;
     }
-    writeMe = capturedOut == null ? null : capturedOut.getResult();
   }
 
   @Override
   public void writeTo(Writer out, ElementContext context) throws IOException {
-    if (writeMe != null) {
+    if (writeDirect) {
+      try {
+        FileImpl.writeFileImpl(
+            servletContext,
+            request,
+            response,
+            new DocumentEE(servletContext, request, response, out),
+            element
+        );
+      } catch (ServletException e) {
+        throw new IOException(e);
+      }
+    } else if (link != null) {
+      link.writeTo(out);
+    } else if (writeMe != null) {
       writeMe.writeTo(out);
     }
   }
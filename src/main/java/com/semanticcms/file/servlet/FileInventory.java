@@ -0,0 +1,160 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet;
+
+import com.semanticcms.core.model.Page;
+import com.semanticcms.core.model.PageRef;
+import java.io.IOException;
+import javax.servlet.ServletException;
+
+/**
+ * The aggregate totals of a file inventory.
+ *
+ * @see  FileUtils#inventoryFiles(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page, boolean, com.semanticcms.file.servlet.FileInventory.Visitor)
+ */
+public final class FileInventory {
+
+  /**
+   * A single non-hidden file found during inventory.
+   */
+  public static final class Item {
+
+    private final com.semanticcms.file.model.File element;
+    private final boolean directory;
+    private final long length;
+    private final long lastModified;
+
+    Item(com.semanticcms.file.model.File element, boolean directory, long length, long lastModified) {
+      this.element = element;
+      this.directory = directory;
+      this.length = length;
+      this.lastModified = lastModified;
+    }
+
+    @Override
+    public String toString() {
+      return element.getPageRef().toString();
+    }
+
+    /**
+     * Gets the file element.
+     */
+    public com.semanticcms.file.model.File getElement() {
+      return element;
+    }
+
+    /**
+     * Gets the reference to the file.
+     */
+    public PageRef getPageRef() {
+      return element.getPageRef();
+    }
+
+    /**
+     * Gets the page containing the file element.
+     */
+    public Page getPage() {
+      return element.getPage();
+    }
+
+    /**
+     * Is the file a directory.  When the book is not available locally, assumes directory when the path ends in slash.
+     */
+    public boolean isDirectory() {
+      return directory;
+    }
+
+    /**
+     * Gets the length of the file.
+     *
+     * @return  the length or {@code -1} when a directory or not available locally
+     */
+    public long getLength() {
+      return length;
+    }
+
+    /**
+     * Gets the last modified time of the file.
+     *
+     * @return  the last modified time or {@code -1} when not available locally
+     */
+    public long getLastModified() {
+      return lastModified;
+    }
+  }
+
+  /**
+   * Receives each file as it is found.  Calls are never concurrent.
+   */
+  @FunctionalInterface
+  public static interface Visitor {
+    /**
+     * Visits one file.
+     */
+    void visit(Item item) throws ServletException, IOException;
+  }
+
+  private int count;
+  private long totalLength;
+  private long newestLastModified = -1;
+
+  FileInventory() {
+    // Created by FileUtils only
+  }
+
+  void add(Item item) {
+    count++;
+    long length = item.getLength();
+    if (length != -1) {
+      totalLength += length;
+    }
+    long lastModified = item.getLastModified();
+    if (lastModified > newestLastModified) {
+      newestLastModified = lastModified;
+    }
+  }
+
+  /**
+   * Gets the number of files.
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Gets the total length of all files available locally.
+   */
+  public long getTotalLength() {
+    return totalLength;
+  }
+
+  /**
+   * Gets the most recent last modified time of all files available locally.
+   *
+   * @return  the last modified time or {@code -1} when none available
+   */
+  public long getNewestLastModified() {
+    return newestLastModified;
+  }
+}
@@ -0,0 +1,877 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet;
+
+import static com.aoapps.encoding.TextInXhtmlEncoder.encodeTextInXhtml;
+
+import com.aoapps.lang.Strings;
+import com.aoapps.net.URIEncoder;
+import com.aoapps.servlet.lastmodified.LastModifiedServlet;
+import com.semanticcms.core.model.Book;
+import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.servlet.SemanticCMS;
+import com.semanticcms.file.servlet.impl.DirectoryArchive;
+import com.semanticcms.file.servlet.impl.DirectoryListingCache;
+import com.semanticcms.file.servlet.impl.FileAccessStats;
+import com.semanticcms.file.servlet.impl.FileDigestCache;
+import com.semanticcms.file.servlet.impl.FileMetadata;
+import com.semanticcms.file.servlet.impl.FileMetadataCache;
+import com.semanticcms.file.servlet.impl.PrecompressedCache;
+import com.semanticcms.file.servlet.impl.ThumbnailCache;
+import com.semanticcms.file.servlet.impl.TransferAdmission;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves the resource files of SemanticCMS books, as linked by {@link com.semanticcms.file.servlet.File}.
+ *
+ * <p>Supports single and multiple byte ranges, strong entity tags, and conditional requests by
+ * <code>If-None-Match</code>, <code>If-Modified-Since</code>, and <code>If-Range</code>.  When the request is
+ * versioned by {@link LastModifiedServlet#LAST_MODIFIED_PARAMETER_NAME} or {@link FileDigestCache#DIGEST_PARAMETER_NAME},
+ * with the value of the current version, the response may be cached indefinitely.</p>
+ *
+ * <p>When the container supports it, such as Apache Tomcat with <code>useSendfile</code>, content is sent with sendfile
+ * directly from the file to the socket.  Otherwise, content is transferred with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.</p>
+ *
+ * <p>When enabled, large transfers are limited by {@link TransferAdmission}, queued fairly between clients, and
+ * rejected with <code>503 Service Unavailable</code> when too many are waiting.  Map this servlet with
+ * <code>async-supported</code> so waiting transfers do not hold container threads.</p>
+ *
+ * <p>When enabled, compressible files are served from {@link PrecompressedCache} with a <code>Content-Encoding</code>
+ * accepted by the client.  Range requests are always served from the uncompressed file.</p>
+ *
+ * <p>When enabled, requests with {@link ThumbnailCache#THUMBNAIL_PARAMETER_NAME} are served the thumbnail of an image
+ * file from {@link ThumbnailCache}.  Map this servlet to the image types to be shown with thumbnails.</p>
+ *
+ * <p>When enabled, requests for directories with {@link DirectoryArchive#ARCHIVE_PARAMETER_NAME} are served a ZIP
+ * archive of the directory tree from {@link DirectoryArchive}.</p>
+ *
+ * <p>When the servlet init parameter {@link #LISTINGS_INIT_PARAM} is {@code true}, directories are listed from
+ * {@link DirectoryListingCache}, one page at a time, with request parameters {@link #OFFSET_PARAM},
+ * {@link #LIMIT_PARAM}, {@link #SORT_PARAM} (<code>name</code>, <code>length</code>, or <code>lastModified</code>), and
+ * {@link #ORDER_PARAM} (<code>asc</code> or <code>desc</code>).</p>
+ *
+ * <p>This servlet is not registered automatically, since it must not intercept requests for the pages of the books.
+ * Map it by extension to the types of files to be downloaded, such as <code>*.iso</code> or <code>*.pdf</code>, and
+ * additionally by path to any directories to be listed or archived.</p>
+ */
+public class FileServlet extends HttpServlet {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The servlet init parameter to enable directory listings.
+   */
+  public static final String LISTINGS_INIT_PARAM = "listings";
+
+  /**
+   * The request parameter for the index of the first directory entry listed.
+   */
+  public static final String OFFSET_PARAM = "offset";
+
+  /**
+   * The request parameter for the maximum number of directory entries listed.
+   */
+  public static final String LIMIT_PARAM = "limit";
+
+  /**
+   * The request parameter for the directory listing sort.
+   */
+  public static final String SORT_PARAM = "sort";
+
+  /**
+   * The request parameter for the directory listing sort order.
+   */
+  public static final String ORDER_PARAM = "order";
+
+  /**
+   * The default number of directory entries listed.
+   */
+  private static final int DEFAULT_LIMIT = 1000;
+
+  /**
+   * The maximum number of directory entries listed.
+   */
+  private static final int MAX_LIMIT = 10000;
+
+  /**
+   * The cache control used for versioned requests.
+   */
+  private static final String CACHE_CONTROL_VERSIONED = "public, max-age=31536000, immutable";
+
+  /**
+   * The cache control used for unversioned requests.
+   */
+  private static final String CACHE_CONTROL_UNVERSIONED = "no-cache";
+
+  /**
+   * The maximum number of ranges honored in a single request.  Requests for more ranges are served in full.
+   */
+  private static final int MAX_RANGES = 16;
+
+  private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+  private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+  private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+  private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+  /**
+   * An inclusive byte range.
+   */
+  private static class Range {
+    private final long first;
+    private final long last;
+
+    private Range(long first, long last) {
+      this.first = first;
+      this.last = last;
+    }
+
+    private long getLength() {
+      return last - first + 1;
+    }
+  }
+
+  /**
+   * Resolves the reference to the resource file for the given request.
+   *
+   * @return  the reference or {@code null} when not in any book
+   */
+  private PageRef getPageRef(HttpServletRequest request) throws ServletException {
+    String pathInfo = request.getPathInfo();
+    String servletPath = (pathInfo == null) ? request.getServletPath() : (request.getServletPath() + pathInfo);
+    String upper = servletPath.toUpperCase(Locale.ROOT);
+    if (
+        upper.contains("/WEB-INF/")
+            || upper.contains("/META-INF/")
+            || servletPath.contains("/../")
+            || servletPath.endsWith("/..")
+    ) {
+      return null;
+    }
+    ServletContext servletContext = getServletContext();
+    Book book = SemanticCMS.getInstance(servletContext).getBook(servletPath);
+    if (book == null) {
+      return null;
+    }
+    String path = servletPath.substring(book.getPathPrefix().length());
+    if (path.isEmpty()) {
+      return null;
+    }
+    return new PageRef(book, path);
+  }
+
+  /**
+   * Resolves the resource file for the given request.
+   *
+   * @return  the metadata or {@code null} when not found
+   */
+  protected FileMetadata getFileMetadata(HttpServletRequest request) throws ServletException, IOException {
+    PageRef pageRef = getPageRef(request);
+    if (pageRef == null) {
+      return null;
+    }
+    return FileMetadataCache.getInstance(getServletContext()).getFileMetadata(pageRef);
+  }
+
+  /**
+   * Gets the strong entity tag for the given file, preferring the content digest when available.
+   */
+  protected String getETag(FileMetadata metadata) {
+    String digest = FileDigestCache.getInstance(getServletContext()).getDigest(metadata);
+    if (digest != null) {
+      return '"' + digest + '"';
+    }
+    return "\"" + Long.toHexString(metadata.getLength()) + '-' + Long.toHexString(metadata.getLastModified()) + '"';
+  }
+
+  private boolean listings;
+
+  @Override
+  public void init() throws ServletException {
+    listings = "true".equalsIgnoreCase(getInitParameter(LISTINGS_INIT_PARAM));
+  }
+
+  @Override
+  protected void doHead(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+    serve(request, response, false);
+  }
+
+  @Override
+  protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+    serve(request, response, true);
+  }
+
+  private void serve(HttpServletRequest request, HttpServletResponse response, boolean sendContent) throws ServletException, IOException {
+    // Permit granted while waiting, when dispatched again after admission
+    TransferAdmission.Permit permit = (TransferAdmission.Permit) request.getAttribute(TransferAdmission.PERMIT_REQUEST_ATTRIBUTE);
+    if (permit != null) {
+      request.removeAttribute(TransferAdmission.PERMIT_REQUEST_ATTRIBUTE);
+    }
+    try {
+      serve(request, response, sendContent, permit);
+    } finally {
+      if (permit != null) {
+        permit.release();
+      }
+    }
+  }
+
+  private void serve(
+      HttpServletRequest request,
+      HttpServletResponse response,
+      boolean sendContent,
+      TransferAdmission.Permit permit
+  ) throws ServletException, IOException {
+    FileMetadata metadata = getFileMetadata(request);
+    if (metadata == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    if (metadata.isDirectory()) {
+      String archiveParam = request.getParameter(DirectoryArchive.ARCHIVE_PARAMETER_NAME);
+      DirectoryArchive archives = DirectoryArchive.getInstance(getServletContext());
+      if (archiveParam != null && archives.isEnabled()) {
+        serveArchive(request, response, archives, metadata.getFile(), archiveParam, sendContent, permit);
+      } else if (listings) {
+        serveListing(request, response, metadata.getFile(), sendContent);
+      } else {
+        response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      }
+      return;
+    }
+    String thumbnailParam = request.getParameter(ThumbnailCache.THUMBNAIL_PARAMETER_NAME);
+    if (thumbnailParam != null) {
+      serveThumbnail(request, response, metadata, thumbnailParam, sendContent);
+      return;
+    }
+    // Counted once, not again when dispatched after admission
+    FileAccessStats stats = FileAccessStats.getInstance(getServletContext());
+    PageRef pageRef = stats.isEnabled() ? getPageRef(request) : null;
+    if (pageRef != null && permit == null) {
+      stats.recordAccess(pageRef);
+    }
+    File file = metadata.getFile();
+    long length = metadata.getLength();
+    long lastModified = metadata.getLastModified();
+    String etag = getETag(metadata);
+
+    // Precompressed variants, not used for range requests
+    PrecompressedCache.Encoding encoding = null;
+    File variant = null;
+    PrecompressedCache precompressed = PrecompressedCache.getInstance(getServletContext());
+    if (precompressed.isCompressible(metadata)) {
+      // Already added when dispatched again after admission
+      if (permit == null) {
+        response.addHeader("Vary", "Accept-Encoding");
+      }
+      String acceptEncoding = request.getHeader("Accept-Encoding");
+      if (acceptEncoding != null && request.getHeader("Range") == null) {
+        for (PrecompressedCache.Encoding e : PrecompressedCache.Encoding.values()) {
+          if (isEncodingAccepted(acceptEncoding, e.getContentEncoding())) {
+            variant = precompressed.getVariant(metadata, e);
+            if (variant != null) {
+              encoding = e;
+              // Each representation has its own strong entity tag
+              etag = etag.substring(0, etag.length() - 1) + '-' + e.getContentEncoding() + '"';
+              break;
+            }
+          }
+        }
+      }
+    }
+
+    // Only cached indefinitely when requested by the current version, so an old version is not cached as the new
+    boolean versioned;
+    String digestParam = request.getParameter(FileDigestCache.DIGEST_PARAMETER_NAME);
+    if (digestParam != null) {
+      versioned = digestParam.equals(FileDigestCache.getInstance(getServletContext()).getDigest(metadata));
+    } else {
+      String lastModifiedParam = request.getParameter(LastModifiedServlet.LAST_MODIFIED_PARAMETER_NAME);
+      versioned = lastModifiedParam != null
+          && lastModifiedParam.equals(LastModifiedServlet.encodeLastModified(lastModified));
+    }
+    response.setHeader("Cache-Control", versioned ? CACHE_CONTROL_VERSIONED : CACHE_CONTROL_UNVERSIONED);
+    response.setHeader("ETag", etag);
+    response.setDateHeader("Last-Modified", lastModified);
+    response.setHeader("Accept-Ranges", "bytes");
+
+    // Conditional requests
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      if (matchesETag(ifNoneMatch, etag)) {
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return;
+      }
+    } else {
+      long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+      if (ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000) {
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return;
+      }
+    }
+
+    String contentType = getServletContext().getMimeType(file.getName());
+    if (contentType == null) {
+      contentType = "application/octet-stream";
+    }
+
+    // Range requests
+    List<Range> ranges = null;
+    String rangeHeader = request.getHeader("Range");
+    if (rangeHeader != null && isIfRangeSatisfied(request, etag, lastModified)) {
+      ranges = parseRanges(rangeHeader, length);
+      if (ranges != null && ranges.size() > MAX_RANGES) {
+        ranges = null;
+      }
+      if (ranges != null && ranges.isEmpty()) {
+        response.setHeader("Content-Range", "bytes */" + length);
+        response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        return;
+      }
+    }
+
+    // Admission control for large transfers, not needed when the container sends the file without holding a thread.
+    // Multiple ranges are always streamed on this thread.
+    boolean sendfile = isSendfileSupported(request) && (ranges == null || ranges.size() == 1);
+    if (sendContent && permit == null && !sendfile) {
+      long transferLength;
+      if (variant != null) {
+        transferLength = variant.length();
+      } else if (ranges == null) {
+        transferLength = length;
+      } else {
+        transferLength = 0;
+        for (Range range : ranges) {
+          transferLength += range.getLength();
+        }
+      }
+      TransferAdmission admission = TransferAdmission.getInstance(getServletContext());
+      if (admission.requiresPermit(transferLength)) {
+        permit = admission.admit(request, response);
+        if (permit == null) {
+          // Waiting asynchronously or rejected
+          return;
+        }
+      }
+    }
+    try {
+      if (sendContent && pageRef != null) {
+        stats.recordDownload(pageRef);
+      }
+      if (variant != null) {
+        long variantLength = variant.length();
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(contentType);
+        response.setHeader("Content-Encoding", encoding.getContentEncoding());
+        response.setContentLengthLong(variantLength);
+        if (sendContent) {
+          send(request, response, variant, 0, variantLength);
+        }
+      } else if (ranges == null) {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(contentType);
+        response.setContentLengthLong(length);
+        if (sendContent) {
+          send(request, response, file, 0, length);
+        }
+      } else if (ranges.size() == 1) {
+        Range range = ranges.get(0);
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType(contentType);
+        response.setHeader("Content-Range", "bytes " + range.first + '-' + range.last + '/' + length);
+        response.setContentLengthLong(range.getLength());
+        if (sendContent) {
+          send(request, response, file, range.first, range.getLength());
+        }
+      } else {
+        String boundary = UUID.randomUUID().toString();
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+        for (Range range : ranges) {
+          byte[] partHeader = (
+              "\r\n--" + boundary
+                  + "\r\nContent-Type: " + contentType
+                  + "\r\nContent-Range: bytes " + range.first + '-' + range.last + '/' + length
+                  + "\r\n\r\n"
+          ).getBytes(StandardCharsets.ISO_8859_1);
+          partHeaders.add(partHeader);
+          contentLength += partHeader.length + range.getLength();
+        }
+        byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        contentLength += end.length;
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if (sendContent) {
+          ServletOutputStream out = response.getOutputStream();
+          try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel outChannel = Channels.newChannel(out);
+            for (int i = 0, size = ranges.size(); i < size; i++) {
+              out.write(partHeaders.get(i));
+              Range range = ranges.get(i);
+              transfer(in, range.first, range.getLength(), outChannel);
+            }
+          }
+          out.write(end);
+        }
+      }
+    } finally {
+      if (permit != null) {
+        permit.release();
+      }
+    }
+  }
+
+  /**
+   * Serves the thumbnail of an image file.  The thumbnail is cached indefinitely when requested by the current version
+   * of the file.
+   */
+  private void serveThumbnail(
+      HttpServletRequest request,
+      HttpServletResponse response,
+      FileMetadata metadata,
+      String version,
+      boolean sendContent
+  ) throws IOException {
+    File thumbnail = ThumbnailCache.getInstance(getServletContext()).getThumbnail(metadata);
+    if (thumbnail == null) {
+      // Not an image, not yet generated, or not able to be decoded
+      response.setHeader("Cache-Control", CACHE_CONTROL_UNVERSIONED);
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    String currentVersion = ThumbnailCache.getVersion(metadata);
+    String etag = "\"" + currentVersion + "-thumbnail\"";
+    response.setHeader("Cache-Control", version.equals(currentVersion) ? CACHE_CONTROL_VERSIONED : CACHE_CONTROL_UNVERSIONED);
+    response.setHeader("ETag", etag);
+    response.setDateHeader("Last-Modified", metadata.getLastModified());
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null && matchesETag(ifNoneMatch, etag)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+    long thumbnailLength = thumbnail.length();
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType(ThumbnailCache.CONTENT_TYPE);
+    response.setContentLengthLong(thumbnailLength);
+    if (sendContent) {
+      send(request, response, thumbnail, 0, thumbnailLength);
+    }
+  }
+
+  /**
+   * Streams the archive of a directory tree, or sends the cached archive when available.  The archive is cached
+   * indefinitely when requested by the current fingerprint of the tree.
+   */
+  private void serveArchive(
+      HttpServletRequest request,
+      HttpServletResponse response,
+      DirectoryArchive archives,
+      File directory,
+      String fingerprint,
+      boolean sendContent,
+      TransferAdmission.Permit permit
+  ) throws ServletException, IOException {
+    DirectoryArchive.Tree tree = archives.getTree(directory);
+    if (tree == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    // Counted once, not again when dispatched after admission
+    FileAccessStats stats = FileAccessStats.getInstance(getServletContext());
+    PageRef pageRef = stats.isEnabled() ? getPageRef(request) : null;
+    if (pageRef != null && permit == null) {
+      stats.recordAccess(pageRef);
+    }
+    if (tree.isTooLarge()) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN, "Directory too large to archive");
+      return;
+    }
+    String etag = "\"" + tree.getFingerprint() + "-zip\"";
+    response.setHeader("Cache-Control", fingerprint.equals(tree.getFingerprint()) ? CACHE_CONTROL_VERSIONED : CACHE_CONTROL_UNVERSIONED);
+    response.setHeader("ETag", etag);
+    response.setDateHeader("Last-Modified", tree.getLastModified());
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null && matchesETag(ifNoneMatch, etag)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+    File cached = archives.getCachedArchive(tree);
+    // Admission control, as for regular files, not needed when the container sends the cached archive.  The length of
+    // an archive not yet cached is taken as the total length of its files.
+    if (
+        sendContent
+            && permit == null
+            && !(cached != null && isSendfileSupported(request))
+    ) {
+      TransferAdmission admission = TransferAdmission.getInstance(getServletContext());
+      if (admission.requiresPermit((cached != null) ? cached.length() : tree.getTotalLength())) {
+        permit = admission.admit(request, response);
+        if (permit == null) {
+          // Waiting asynchronously or rejected
+          return;
+        }
+      }
+    }
+    try {
+      response.setStatus(HttpServletResponse.SC_OK);
+      response.setContentType(DirectoryArchive.CONTENT_TYPE);
+      response.setHeader(
+          "Content-Disposition",
+          "attachment; filename*=UTF-8''" + URIEncoder.encodeURIComponent(directory.getName() + ".zip")
+      );
+      if (sendContent && pageRef != null) {
+        stats.recordDownload(pageRef);
+      }
+      if (cached != null) {
+        long cachedLength = cached.length();
+        response.setContentLengthLong(cachedLength);
+        if (sendContent) {
+          send(request, response, cached, 0, cachedLength);
+        }
+      } else if (sendContent) {
+        // Length not known until written
+        archives.write(tree, response.getOutputStream());
+      }
+    } finally {
+      if (permit != null) {
+        permit.release();
+      }
+    }
+  }
+
+  private static int getIntParameter(HttpServletRequest request, String name, int defaultValue) {
+    String value = request.getParameter(name);
+    if (value != null) {
+      try {
+        return Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+        // Use default
+      }
+    }
+    return defaultValue;
+  }
+
+  /**
+   * Writes one page of a directory listing.  Entries are written incrementally from the cached listing.
+   */
+  private void serveListing(HttpServletRequest request, HttpServletResponse response, File directory, boolean sendContent) throws IOException {
+    String requestUri = request.getRequestURI();
+    if (!requestUri.endsWith("/")) {
+      // Directories must end in slash
+      String query = request.getQueryString();
+      response.sendRedirect(response.encodeRedirectURL(requestUri + '/' + (query == null ? "" : ('?' + query))));
+      return;
+    }
+    DirectoryListingCache.Listing listing = DirectoryListingCache.getInstance(getServletContext()).getListing(directory);
+    if (listing == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    int size = listing.size();
+    int limit = Math.max(1, Math.min(MAX_LIMIT, getIntParameter(request, LIMIT_PARAM, DEFAULT_LIMIT)));
+    int offset = Math.max(0, Math.min(size, getIntParameter(request, OFFSET_PARAM, 0)));
+    String sortParam = request.getParameter(SORT_PARAM);
+    DirectoryListingCache.Sort sort;
+    if ("length".equals(sortParam)) {
+      sort = DirectoryListingCache.Sort.LENGTH;
+    } else if ("lastModified".equals(sortParam)) {
+      sort = DirectoryListingCache.Sort.LAST_MODIFIED;
+    } else {
+      sortParam = "name";
+      sort = DirectoryListingCache.Sort.NAME;
+    }
+    boolean descending = "desc".equals(request.getParameter(ORDER_PARAM));
+    response.setHeader("Cache-Control", CACHE_CONTROL_UNVERSIONED);
+    response.setContentType("text/html");
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+    if (!sendContent) {
+      return;
+    }
+    DirectoryListingCache.Entry[] entries = listing.getEntries(sort);
+    String order = descending ? "desc" : "asc";
+    PrintWriter out = response.getWriter();
+    out.write("<!DOCTYPE html>\n<html><head><meta charset=\"UTF-8\" /><title>");
+    encodeTextInXhtml(request.getRequestURI(), out);
+    out.write("</title></head><body><h1>");
+    encodeTextInXhtml(request.getRequestURI(), out);
+    out.write("</h1>\n<table>\n<thead><tr>");
+    for (String[] column : new String[][] {{"name", "Name"}, {"length", "Size"}, {"lastModified", "Last Modified"}}) {
+      out.write("<th><a href=\"");
+      encodeTextInXhtml(
+          response.encodeURL(
+              "?" + SORT_PARAM + '=' + column[0]
+                  + '&' + ORDER_PARAM + '=' + (column[0].equals(sortParam) && !descending ? "desc" : "asc")
+                  + '&' + LIMIT_PARAM + '=' + limit
+          ),
+          out
+      );
+      out.write("\">");
+      out.write(column[1]);
+      out.write("</a></th>");
+    }
+    out.write("</tr></thead>\n<tbody>\n");
+    int end = Math.min(size, offset + limit);
+    for (int i = offset; i < end; i++) {
+      DirectoryListingCache.Entry entry = entries[descending ? (size - 1 - i) : i];
+      String name = entry.getName();
+      out.write("<tr><td><a href=\"");
+      encodeTextInXhtml(response.encodeURL(URIEncoder.encodeURIComponent(name) + (entry.isDirectory() ? "/" : "")), out);
+      out.write("\">");
+      encodeTextInXhtml(name, out);
+      if (entry.isDirectory()) {
+        out.write('/');
+      }
+      out.write("</a></td><td>");
+      if (!entry.isDirectory()) {
+        encodeTextInXhtml(Strings.getApproximateSize(entry.getLength()), out);
+      }
+      out.write("</td><td>");
+      out.write(Instant.ofEpochMilli(entry.getLastModified()).toString());
+      out.write("</td></tr>\n");
+    }
+    out.write("</tbody>\n</table>\n<p>");
+    if (offset > 0) {
+      writeListingPageLink(response, out, sortParam, order, Math.max(0, offset - limit), limit, "Previous");
+      out.write(' ');
+    }
+    out.write(Integer.toString(size == 0 ? 0 : (offset + 1)));
+    out.write('-');
+    out.write(Integer.toString(end));
+    out.write(" of ");
+    out.write(Integer.toString(size));
+    if (end < size) {
+      out.write(' ');
+      writeListingPageLink(response, out, sortParam, order, end, limit, "Next");
+    }
+    out.write("</p>\n</body></html>\n");
+  }
+
+  private static void writeListingPageLink(
+      HttpServletResponse response,
+      PrintWriter out,
+      String sort,
+      String order,
+      int offset,
+      int limit,
+      String label
+  ) throws IOException {
+    out.write("<a href=\"");
+    encodeTextInXhtml(
+        response.encodeURL(
+            "?" + SORT_PARAM + '=' + sort
+                + '&' + ORDER_PARAM + '=' + order
+                + '&' + OFFSET_PARAM + '=' + offset
+                + '&' + LIMIT_PARAM + '=' + limit
+        ),
+        out
+    );
+    out.write("\">");
+    out.write(label);
+    out.write("</a>");
+  }
+
+  /**
+   * Does the container support sendfile for the given request.
+   */
+  private static boolean isSendfileSupported(HttpServletRequest request) {
+    return Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE));
+  }
+
+  /**
+   * Sends a region of the file, using sendfile when supported by the container.
+   */
+  private static void send(HttpServletRequest request, HttpServletResponse response, File file, long start, long count) throws IOException {
+    if (isSendfileSupported(request)) {
+      request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, file.getCanonicalPath());
+      request.setAttribute(SENDFILE_START_ATTRIBUTE, start);
+      request.setAttribute(SENDFILE_END_ATTRIBUTE, start + count);
+    } else {
+      OutputStream out = response.getOutputStream();
+      try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+        transfer(in, start, count, Channels.newChannel(out));
+      }
+    }
+  }
+
+  private static void transfer(FileChannel in, long position, long count, WritableByteChannel out) throws IOException {
+    while (count > 0) {
+      long transferred = in.transferTo(position, count, out);
+      if (transferred <= 0) {
+        // File truncated while sending
+        throw new IOException("Unexpected end of file");
+      }
+      position += transferred;
+      count -= transferred;
+    }
+  }
+
+  private static long getDateHeader(HttpServletRequest request, String name) {
+    try {
+      return request.getDateHeader(name);
+    } catch (IllegalArgumentException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Checks if the given content coding is accepted by the <code>Accept-Encoding</code> header, with a non-zero quality.
+   */
+  private static boolean isEncodingAccepted(String acceptEncoding, String coding) {
+    Boolean wildcard = null;
+    for (String token : acceptEncoding.split(",")) {
+      String name = token;
+      double quality = 1;
+      int semicolon = token.indexOf(';');
+      if (semicolon != -1) {
+        name = token.substring(0, semicolon);
+        String param = token.substring(semicolon + 1).trim();
+        if (param.startsWith("q=")) {
+          try {
+            quality = Double.parseDouble(param.substring(2).trim());
+          } catch (NumberFormatException e) {
+            quality = 0;
+          }
+        }
+      }
+      name = name.trim();
+      if (name.equalsIgnoreCase(coding)) {
+        return quality > 0;
+      }
+      if (name.equals("*")) {
+        wildcard = quality > 0;
+      }
+    }
+    return wildcard != null && wildcard;
+  }
+
+  /**
+   * Checks if the given <code>If-None-Match</code> header matches the entity tag, using weak comparison.
+   */
+  private static boolean matchesETag(String header, String etag) {
+    for (String candidate : header.split(",")) {
+      candidate = candidate.trim();
+      if (candidate.equals("*")) {
+        return true;
+      }
+      if (candidate.startsWith("W/")) {
+        candidate = candidate.substring(2);
+      }
+      if (candidate.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks if the <code>If-Range</code> header, when present, still matches the current representation.
+   */
+  private static boolean isIfRangeSatisfied(HttpServletRequest request, String etag, long lastModified) {
+    String ifRange = request.getHeader("If-Range");
+    if (ifRange == null) {
+      return true;
+    }
+    ifRange = ifRange.trim();
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+      // Strong comparison required
+      return ifRange.equals(etag);
+    }
+    long date = getDateHeader(request, "If-Range");
+    return date != -1 && lastModified / 1000 == date / 1000;
+  }
+
+  /**
+   * Parses the <code>Range</code> header.
+   *
+   * @return  the satisfiable ranges, an empty list when none are satisfiable, or {@code null} when the header is
+   *          invalid and must be ignored
+   */
+  private static List<Range> parseRanges(String header, long length) {
+    header = header.trim();
+    if (!header.startsWith("bytes=")) {
+      return null;
+    }
+    List<Range> ranges = new ArrayList<>();
+    for (String spec : header.substring("bytes=".length()).split(",")) {
+      spec = spec.trim();
+      int dash = spec.indexOf('-');
+      if (dash == -1) {
+        return null;
+      }
+      long first;
+      long last;
+      try {
+        String firstStr = spec.substring(0, dash).trim();
+        String lastStr = spec.substring(dash + 1).trim();
+        if (firstStr.isEmpty()) {
+          // Suffix range
+          if (lastStr.isEmpty()) {
+            return null;
+          }
+          long suffix = Long.parseLong(lastStr);
+          if (suffix <= 0) {
+            continue;
+          }
+          first = Math.max(0, length - suffix);
+          last = length - 1;
+        } else {
+          first = Long.parseLong(firstStr);
+          last = lastStr.isEmpty() ? (length - 1) : Math.min(Long.parseLong(lastStr), length - 1);
+          if (last < first) {
+            if (!lastStr.isEmpty() && Long.parseLong(lastStr) < first) {
+              // Syntactically invalid
+              return null;
+            }
+            continue;
+          }
+        }
+      } catch (NumberFormatException e) {
+        return null;
+      }
+      if (first < length) {
+        ranges.add(new Range(first, last));
+      }
+    }
+    return ranges;
+  }
+}
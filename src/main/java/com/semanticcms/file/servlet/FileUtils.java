@@ -1,6 +1,6 @@
 /*
  * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
- * Copyright (C) 2013, 2014, 2015, 2016, 2017, 2019, 2020, 2021, 2022, 2024  AO Industries, Inc.
+ * Copyright (C) 2013, 2014, 2015, 2016, 2017, 2019, 2020, 2021, 2022, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,14 +23,26 @@
 
 package com.semanticcms.file.servlet;
 
+import com.aoapps.net.Path;
 import com.semanticcms.core.model.Element;
 import com.semanticcms.core.model.Page;
+import com.semanticcms.core.model.PageRef;
 import com.semanticcms.core.servlet.CaptureLevel;
 import com.semanticcms.core.servlet.CapturePage;
 import com.semanticcms.file.model.File;
+import com.semanticcms.file.servlet.impl.FileMetadata;
+import com.semanticcms.file.servlet.impl.FileMetadataCache;
+import com.semanticcms.file.servlet.impl.FileMetadataPrefetch;
+import com.semanticcms.file.servlet.impl.FileMetrics;
+import com.semanticcms.file.servlet.impl.HasFileCache;
+import com.semanticcms.file.servlet.impl.HasFileSearch;
 import com.semanticcms.openfile.servlet.OpenFile;
 import java.io.IOException;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -50,44 +62,87 @@ public final class FileUtils {
 
   private static final Logger logger = Logger.getLogger(FileUtils.class.getName());
 
-  private static class IsOpenFileAllowedLock {
-    private IsOpenFileAllowedLock() {
-      // Empty lock class to help heap profile
+  private static final String OPEN_FILE_CLASS_NAME = "com.semanticcms.openfile.servlet.OpenFile";
+
+  /**
+   * The application-scope attribute holding the resolved {@link OpenFile#isAllowed(javax.servlet.ServletContext, javax.servlet.ServletRequest)}
+   * method handle, or {@link #OPEN_FILE_NOT_FOUND} when semanticcms-openfile-servlet is not available.
+   */
+  static final String IS_OPEN_FILE_ALLOWED_HANDLE_APPLICATION_ATTRIBUTE = FileUtils.class.getName() + ".isOpenFileAllowed.handle";
+
+  /**
+   * The request-scope attribute caching the result of {@link #isOpenFileAllowed(javax.servlet.ServletContext, javax.servlet.ServletRequest)}.
+   */
+  static final String IS_OPEN_FILE_ALLOWED_REQUEST_ATTRIBUTE = FileUtils.class.getName() + ".isOpenFileAllowed";
+
+  /**
+   * Sentinel method handle used when semanticcms-openfile-servlet is not available, always returns {@code false}.
+   */
+  private static final MethodHandle OPEN_FILE_NOT_FOUND = MethodHandles.dropArguments(
+      MethodHandles.constant(boolean.class, false),
+      0,
+      ServletContext.class,
+      ServletRequest.class
+  );
+
+  /**
+   * Resolves the {@link OpenFile#isAllowed(javax.servlet.ServletContext, javax.servlet.ServletRequest)} method handle once per
+   * {@link ServletContext}.  Concurrent first calls may each resolve the handle, but they all resolve to equivalent handles,
+   * so no lock is required.
+   */
+  private static MethodHandle getIsOpenFileAllowedHandle(ServletContext servletContext) throws ServletException {
+    MethodHandle handle = (MethodHandle) servletContext.getAttribute(IS_OPEN_FILE_ALLOWED_HANDLE_APPLICATION_ATTRIBUTE);
+    if (handle == null) {
+      try {
+        Class<?> openFileClass = Class.forName(OPEN_FILE_CLASS_NAME);
+        handle = MethodHandles.publicLookup().findStatic(
+            openFileClass,
+            "isAllowed",
+            MethodType.methodType(boolean.class, ServletContext.class, ServletRequest.class)
+        );
+      } catch (ClassNotFoundException e) {
+        logger.warning("Unable to open local files, if desktop integration is desired, add the semanticcms-openfile-servlet package.");
+        handle = OPEN_FILE_NOT_FOUND;
+      } catch (ReflectiveOperationException e) {
+        throw new ServletException(e);
+      }
+      servletContext.setAttribute(IS_OPEN_FILE_ALLOWED_HANDLE_APPLICATION_ATTRIBUTE, handle);
     }
+    return handle;
   }
 
-  private static final IsOpenFileAllowedLock isOpenFileAllowedLock = new IsOpenFileAllowedLock();
-  private static boolean openFileNotFound;
-
   /**
    * Determines if local file opening is allowed.
    *
-   * <p>Uses reflection to avoid hard dependency on semanticcms-openfile-servlet.</p>
+   * <p>Uses a method handle, resolved once per {@link ServletContext}, to avoid hard dependency on semanticcms-openfile-servlet.
+   * The result is remembered for the duration of the request.</p>
    *
    * @see  OpenFile#isAllowed(javax.servlet.ServletContext, javax.servlet.ServletRequest)
    */
   public static boolean isOpenFileAllowed(ServletContext servletContext, ServletRequest request) throws ServletException {
-    synchronized (isOpenFileAllowedLock) {
-      // If failed once, fail quickly the second time
-      if (openFileNotFound) {
-        return false;
-      }
+    Boolean allowed = (Boolean) request.getAttribute(IS_OPEN_FILE_ALLOWED_REQUEST_ATTRIBUTE);
+    if (allowed == null) {
+      FileMetrics metrics = FileMetrics.getInstance(servletContext);
+      long start = metrics.start();
+      MethodHandle handle = getIsOpenFileAllowedHandle(servletContext);
       try {
-        Class<?> openFileClass = Class.forName("com.semanticcms.openfile.servlet.OpenFile");
-        Method isAllowedMethod = openFileClass.getMethod("isAllowed", ServletContext.class, ServletRequest.class);
-        return (Boolean) isAllowedMethod.invoke(null, servletContext, request);
-      } catch (ClassNotFoundException e) {
-        logger.warning("Unable to open local files, if desktop integration is desired, add the semanticcms-openfile-servlet package.");
-        openFileNotFound = true;
-        return false;
-      } catch (ReflectiveOperationException e) {
-        throw new ServletException(e);
+        allowed = (boolean) handle.invokeExact(servletContext, request);
+      } catch (Error | RuntimeException | ServletException e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new ServletException(t);
       }
+      metrics.recordOpenFileAllowedTime(start);
+      request.setAttribute(IS_OPEN_FILE_ALLOWED_REQUEST_ATTRIBUTE, allowed);
     }
+    return allowed;
   }
 
   /**
    * Determines if the given page has any {@link File} that is not {@linkplain File#isHidden() hidden}.
+   *
+   * <p>Answers are cached across requests by {@link HasFileCache}, unless disabled.  In parallel mode, pages are
+   * captured in parallel by {@link HasFileSearch}, whether or not the cache is enabled.</p>
    */
   public static boolean hasFile(
       ServletContext servletContext,
@@ -96,16 +151,117 @@ public final class FileUtils {
       Page page,
       final boolean recursive
   ) throws ServletException, IOException {
-    return CapturePage.traversePagesAnyOrder(
+    FileMetrics metrics = FileMetrics.getInstance(servletContext);
+    long start = metrics.start();
+    HasFileCache hasFileCache = HasFileCache.getInstance(servletContext);
+    boolean result;
+    if (hasFileCache.isEnabled()) {
+      result = hasFileCache.hasFile(request, response, page, recursive);
+    } else if (hasFileCache.isParallel()) {
+      result = HasFileSearch.hasFile(servletContext, request, response, page, recursive);
+    } else {
+      result = CapturePage.traversePagesAnyOrder(
+          servletContext,
+          request,
+          response,
+          page,
+          CaptureLevel.META,
+          p -> {
+            metrics.recordHasFilePageVisited();
+            return HasFileCache.hasNonHiddenFile(p) ? Boolean.TRUE : null;
+          },
+          p -> recursive ? p.getChildRefs() : null,
+          // Child not in missing book
+          childPage -> childPage.getBook() != null
+      ) != null;
+    }
+    metrics.recordHasFile(start);
+    return result;
+  }
+
+  /**
+   * Reads the attributes of every {@link File} on the given page at the same time, so rendering the page does not read
+   * them one at a time.  Call after capturing the page at {@link CaptureLevel#META} and before rendering it at
+   * {@link CaptureLevel#BODY}.  The attributes are used for the rest of the request.
+   *
+   * <p>File elements prefetch their page automatically when the first of them is rendered, so calling this is only
+   * needed to prefetch earlier, such as before other output.</p>
+   *
+   * @throws  IllegalArgumentException  when a reference to a directory does not end in slash
+   *
+   * @see  FileMetadataPrefetch
+   */
+  public static void prefetchFileMetadata(
+      ServletContext servletContext,
+      ServletRequest request,
+      Page page
+  ) throws IOException {
+    FileMetadataPrefetch.getInstance(servletContext).prefetch(request, page);
+  }
+
+  /**
+   * Finds every {@link File} that is not {@linkplain File#isHidden() hidden} in the given page, or the given page and
+   * all its descendants, in a single traversal.  Each file is passed to the visitor as it is found, so the files are not
+   * held in memory, while aggregate totals are accumulated.
+   *
+   * <p>File attributes are read through {@link FileMetadataCache}, all files of each page at the same time.</p>
+   *
+   * @param  visitor  Optional, when {@code null} only the totals are computed
+   *
+   * @return  the aggregate totals
+   */
+  public static FileInventory inventoryFiles(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      Page page,
+      final boolean recursive,
+      FileInventory.Visitor visitor
+  ) throws ServletException, IOException {
+    final FileMetadataPrefetch prefetch = FileMetadataPrefetch.getInstance(servletContext);
+    final FileInventory inventory = new FileInventory();
+    CapturePage.traversePagesAnyOrder(
         servletContext,
         request,
         response,
         page,
         CaptureLevel.META,
         p -> {
+          List<File> files = new ArrayList<>();
+          List<PageRef> pageRefs = new ArrayList<>();
           for (Element e : p.getElements()) {
             if ((e instanceof File) && !((File) e).isHidden()) {
-              return true;
+              File file = (File) e;
+              files.add(file);
+              pageRefs.add(file.getPageRef());
+            }
+          }
+          if (files.isEmpty()) {
+            return null;
+          }
+          // Read all files of the page at the same time
+          FileMetadata[] metadatas = prefetch.getFileMetadata(pageRefs);
+          for (int i = 0, size = files.size(); i < size; i++) {
+            File file = files.get(i);
+            PageRef pageRef = pageRefs.get(i);
+            FileMetadata metadata = metadatas[i];
+            FileInventory.Item item;
+            if (metadata == null) {
+              item = new FileInventory.Item(file, pageRef.getPath().endsWith(Path.SEPARATOR_STRING), -1, -1);
+            } else {
+              item = new FileInventory.Item(
+                  file,
+                  metadata.isDirectory(),
+                  metadata.isDirectory() ? -1 : metadata.getLength(),
+                  metadata.getLastModified()
+              );
+            }
+            // Handlers may be called concurrently, visitor calls are not
+            synchronized (inventory) {
+              inventory.add(item);
+              if (visitor != null) {
+                visitor.visit(item);
+              }
             }
           }
           return null;
@@ -113,6 +269,7 @@ public final class FileUtils {
         p -> recursive ? p.getChildRefs() : null,
         // Child not in missing book
         childPage -> childPage.getBook() != null
-    ) != null;
+    );
+    return inventory;
   }
 }
@@ -0,0 +1,213 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import static com.aoapps.encoding.TextInXhtmlAttributeEncoder.encodeTextInXhtmlAttribute;
+import static com.aoapps.encoding.TextInXhtmlEncoder.encodeTextInXhtml;
+
+import com.aoapps.lang.Strings;
+import com.aoapps.net.Path;
+import com.aoapps.servlet.lastmodified.LastModifiedServlet;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The compact representation of a captured file element without a body, held in place of its HTML while the page is
+ * cached.  Strings are shared between elements: the URL from {@link HrefPrefixCache}, the digest from
+ * {@link FileDigestCache}, and the interned filename.  The length and last modified time are kept as primitives, and
+ * the HTML is only written by {@link #writeTo(java.io.Writer)}.
+ *
+ * <p>Only used when the HTML does not depend on the request, such as when URLs are not rewritten with a session id,
+ * and is final.  HTML that is still provisional, such as while the thumbnail is generated, is held as a
+ * {@link DeferredLink} instead, which is replaced by a captured link once final.</p>
+ */
+public final class CapturedLink implements FileImpl.CapturedFile {
+
+  private static final byte DIRECTORY = 1;
+  private static final byte VERSIONED = 2;
+  private static final byte XML = 4;
+
+  private final String refId;
+  private final String linkCssClass;
+  private final String prefix;
+  private final String name;
+  private final String digest;
+  private final long lastModified;
+  private final long length;
+  private final String thumbnailHref;
+  private final byte flags;
+
+  /**
+   * Creates a new captured link.
+   *
+   * @param  refId         the id of the link or {@code null} for none
+   * @param  linkCssClass  the class of the link or {@code null} for none
+   * @param  prefix        the encoded URL of the file, without any query string
+   * @param  name          the filename, which is interned
+   * @param  directory     is the file a directory
+   * @param  versioned     is the URL versioned by digest or last modified time
+   * @param  digest        the digest used to version the URL or {@code null} to version by last modified time
+   * @param  lastModified  the last modified time used to version the URL when there is no digest
+   * @param  length        the length of the file or {@code -1} when no size is shown
+   */
+  public CapturedLink(
+      String refId,
+      String linkCssClass,
+      String prefix,
+      String name,
+      boolean directory,
+      boolean versioned,
+      String digest,
+      long lastModified,
+      long length
+  ) {
+    this(refId, linkCssClass, prefix, name, directory, versioned, digest, lastModified, length, null, false);
+  }
+
+  /**
+   * Creates a new captured link, followed by a thumbnail.
+   *
+   * @param  thumbnailHref  the encoded URL of the thumbnail or {@code null} for none
+   * @param  xml            is the thumbnail written as XML
+   *
+   * @see  #CapturedLink(java.lang.String, java.lang.String, java.lang.String, java.lang.String, boolean, boolean, java.lang.String, long, long)
+   */
+  public CapturedLink(
+      String refId,
+      String linkCssClass,
+      String prefix,
+      String name,
+      boolean directory,
+      boolean versioned,
+      String digest,
+      long lastModified,
+      long length,
+      String thumbnailHref,
+      boolean xml
+  ) {
+    this.refId = refId;
+    this.linkCssClass = linkCssClass;
+    this.prefix = prefix;
+    this.name = name.intern();
+    this.digest = digest;
+    this.lastModified = lastModified;
+    this.length = length;
+    this.thumbnailHref = thumbnailHref;
+    this.flags = (byte) ((directory ? DIRECTORY : 0) | (versioned ? VERSIONED : 0) | (xml ? XML : 0));
+  }
+
+  /**
+   * Writes the link, followed by its size and any thumbnail.
+   */
+  @Override
+  public void writeTo(Writer out) throws IOException {
+    writeLink(
+        out,
+        refId,
+        linkCssClass,
+        prefix,
+        name,
+        (flags & DIRECTORY) != 0,
+        (flags & VERSIONED) != 0,
+        digest,
+        lastModified,
+        length
+    );
+    if (thumbnailHref != null) {
+      out.write(' ');
+      writeThumbnail(out, thumbnailHref, name, (flags & XML) != 0);
+    }
+  }
+
+  /**
+   * Writes a link, followed by its size.
+   *
+   * @see  #CapturedLink(java.lang.String, java.lang.String, java.lang.String, java.lang.String, boolean, boolean, java.lang.String, long, long)
+   */
+  static void writeLink(
+      Writer out,
+      String refId,
+      String linkCssClass,
+      String prefix,
+      String name,
+      boolean directory,
+      boolean versioned,
+      String digest,
+      long lastModified,
+      long length
+  ) throws IOException {
+    out.write("<a");
+    if (refId != null) {
+      out.write(" id=\"");
+      encodeTextInXhtmlAttribute(refId, out);
+      out.write('"');
+    }
+    if (linkCssClass != null) {
+      out.write(" class=\"");
+      encodeTextInXhtmlAttribute(linkCssClass, out);
+      out.write('"');
+    }
+    out.write(" href=\"");
+    encodeTextInXhtmlAttribute(prefix, out);
+    if (versioned) {
+      out.write('?');
+      if (digest != null) {
+        out.write(FileDigestCache.DIGEST_PARAMETER_NAME);
+        out.write('=');
+        out.write(digest);
+      } else {
+        out.write(LastModifiedServlet.LAST_MODIFIED_PARAMETER_NAME);
+        out.write('=');
+        out.write(LastModifiedServlet.encodeLastModified(lastModified));
+      }
+    }
+    out.write("\">");
+    encodeTextInXhtml(name, out);
+    if (directory) {
+      out.write(Path.SEPARATOR_CHAR);
+    }
+    out.write("</a>");
+    if (length != -1) {
+      out.write(" (");
+      encodeTextInXhtml(Strings.getApproximateSize(length), out);
+      out.write(')');
+    }
+  }
+
+  /**
+   * Writes a thumbnail.
+   *
+   * @param  href  the encoded URL of the thumbnail
+   * @param  name  the filename, used as the alternate text
+   * @param  xml   is the thumbnail written as XML
+   */
+  static void writeThumbnail(Writer out, String href, String name, boolean xml) throws IOException {
+    out.write("<img class=\"semanticcms-file-thumbnail\" src=\"");
+    encodeTextInXhtmlAttribute(href, out);
+    out.write("\" alt=\"");
+    encodeTextInXhtmlAttribute(name, out);
+    out.write('"');
+    out.write(xml ? " />" : ">");
+  }
+}
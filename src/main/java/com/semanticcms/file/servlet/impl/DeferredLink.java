@@ -0,0 +1,203 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import static com.aoapps.encoding.TextInXhtmlAttributeEncoder.encodeTextInXhtmlAttribute;
+import static com.aoapps.encoding.TextInXhtmlEncoder.encodeTextInXhtml;
+
+import com.aoapps.encoding.Serialization;
+import com.aoapps.lang.Strings;
+import com.semanticcms.core.model.PageRef;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import javax.servlet.ServletContext;
+
+/**
+ * A captured file element without a body whose HTML is provisional, such as while the content digest, thumbnail, or
+ * directory tree is generated in the background.  Instead of holding the provisional HTML in the page cache, the HTML
+ * is written again on every {@link #writeTo(java.io.Writer)} from the current state of those caches.
+ *
+ * <p>The file metadata is read again on every write, so a file modified since it was captured is not hashed or
+ * thumbnailed from stale metadata.  Once the digest and thumbnail are both available, the HTML is final and is written
+ * from a {@link CapturedLink} from then on.  Directories, with their archive links, remain provisional.</p>
+ *
+ * <p>The inputs that depend on the request are taken when captured, so this is only used when the HTML does not
+ * otherwise depend on the request, as with {@link CapturedLink}.</p>
+ */
+public final class DeferredLink implements FileImpl.CapturedFile {
+
+  private final ServletContext servletContext;
+  private final PageRef pageRef;
+  private final String refId;
+  private final String linkCssClass;
+  private final String prefix;
+  private final boolean versioned;
+  private final boolean exporting;
+  private final Serialization serialization;
+
+  /**
+   * The most recently read metadata, still used for the link when the file is no longer available.
+   */
+  private volatile FileMetadata metadata;
+
+  /**
+   * The final HTML, once the digest and thumbnail are available.
+   */
+  private volatile CapturedLink captured;
+
+  DeferredLink(
+      ServletContext servletContext,
+      PageRef pageRef,
+      FileMetadata metadata,
+      String refId,
+      String linkCssClass,
+      String prefix,
+      boolean versioned,
+      boolean exporting,
+      Serialization serialization
+  ) {
+    this.servletContext = servletContext;
+    this.pageRef = pageRef;
+    this.metadata = metadata;
+    this.refId = refId;
+    this.linkCssClass = linkCssClass;
+    this.prefix = prefix;
+    this.versioned = versioned;
+    this.exporting = exporting;
+    this.serialization = serialization;
+  }
+
+  /**
+   * Writes the link, followed by the size and any thumbnail or archive link, as currently available.
+   */
+  @Override
+  public void writeTo(Writer out) throws IOException {
+    CapturedLink link = captured;
+    if (link != null) {
+      link.writeTo(out);
+      return;
+    }
+    FileMetadata current = FileMetadataCache.getInstance(servletContext).getFileMetadata(pageRef);
+    // Nothing is generated for a file no longer available, and it remains provisional in case it returns
+    boolean available = current != null;
+    if (available) {
+      metadata = current;
+    } else {
+      current = metadata;
+    }
+    File file = current.getFile();
+    boolean directory = current.isDirectory();
+    boolean provisional = !available || (directory && !exporting);
+    String digest = null;
+    if (versioned && available) {
+      FileDigestCache digests = FileDigestCache.getInstance(servletContext);
+      digest = digests.getDigest(current);
+      if (digest == null && digests.isEnabled()) {
+        provisional = true;
+      }
+    }
+    // Thumbnail of images, with a placeholder until generated in the background
+    boolean thumbnailable = false;
+    String thumbnailHref = null;
+    if (!exporting && !directory && available) {
+      ThumbnailCache thumbnails = ThumbnailCache.getInstance(servletContext);
+      if (thumbnails.isThumbnailable(current)) {
+        thumbnailable = true;
+        if (thumbnails.getThumbnail(current) != null) {
+          thumbnailHref = HrefPrefixCache.appendParameter(
+              prefix,
+              ThumbnailCache.THUMBNAIL_PARAMETER_NAME,
+              ThumbnailCache.getVersion(current)
+          );
+        } else {
+          provisional = true;
+        }
+      }
+    }
+    if (!provisional) {
+      link = new CapturedLink(
+          refId,
+          linkCssClass,
+          prefix,
+          file.getName(),
+          directory,
+          versioned,
+          digest,
+          current.getLastModified(),
+          directory ? -1 : current.getLength(),
+          thumbnailHref,
+          serialization == Serialization.XML
+      );
+      captured = link;
+      link.writeTo(out);
+      return;
+    }
+    CapturedLink.writeLink(
+        out,
+        refId,
+        linkCssClass,
+        prefix,
+        file.getName(),
+        directory,
+        versioned,
+        digest,
+        current.getLastModified(),
+        directory ? -1 : current.getLength()
+    );
+    if (exporting) {
+      return;
+    }
+    if (!directory) {
+      if (thumbnailable) {
+        out.write(' ');
+        if (thumbnailHref != null) {
+          CapturedLink.writeThumbnail(out, thumbnailHref, file.getName(), serialization == Serialization.XML);
+        } else {
+          int size = ThumbnailCache.getInstance(servletContext).getSize();
+          out.write("<span class=\"semanticcms-file-thumbnail-placeholder\" style=\"display:inline-block;width:");
+          out.write(Integer.toString(size));
+          out.write("px;height:");
+          out.write(Integer.toString(size));
+          out.write("px\"></span>");
+        }
+      }
+    } else {
+      // Archive of directories, once the tree has been read in the background
+      DirectoryArchive archives = DirectoryArchive.getInstance(servletContext);
+      DirectoryArchive.Tree tree = available ? archives.getTreeInBackground(file) : null;
+      if (tree != null && !tree.isTooLarge()) {
+        File cached = archives.getCachedArchive(tree);
+        out.write(" (<a href=\"");
+        encodeTextInXhtmlAttribute(
+            HrefPrefixCache.appendParameter(prefix, DirectoryArchive.ARCHIVE_PARAMETER_NAME, tree.getFingerprint()),
+            out
+        );
+        out.write("\">zip</a>, ");
+        encodeTextInXhtml(Strings.getApproximateSize((cached != null) ? cached.length() : tree.getTotalLength()), out);
+        out.write(')');
+      }
+    }
+  }
+}
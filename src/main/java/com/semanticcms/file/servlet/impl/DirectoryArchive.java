@@ -0,0 +1,750 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Streams ZIP archives of directory trees, for download of directories referenced by file elements.  Archives are
+ * written directly to the response as the tree is read, without temporary files.
+ *
+ * <p>Hidden files, with names beginning with a period, and symbolic links are not included.  Files in
+ * already-compressed formats are not compressed again.</p>
+ *
+ * <p>Each tree is identified by its fingerprint: the number of entries, the total length, and the most recent last
+ * modified time.  When caching is enabled, each finished archive is also kept in a local cache directory keyed by the
+ * fingerprint, so popular directories are only archived once.  Concurrent requests for an archive not yet cached wait
+ * for the first to finish and are then sent the cached archive.  Archives of previous versions of the tree are
+ * deleted when a new archive is cached.</p>
+ *
+ * <p>Each file is checked again after it has been archived.  When its length or last modified time no longer matches
+ * the tree, the archive fails, is not cached, and the tree is read again on the next request.</p>
+ *
+ * <p>Rendering never reads a tree itself: {@link #getTreeInBackground(java.io.File)} queues the directory to be read on a
+ * single background thread, and the archive link is shown once it has been read.</p>
+ *
+ * <p>Configured by context init parameters:</p>
+ * <ul>
+ *   <li>{@link #ENABLED_INIT_PARAM} - When {@code true}, enables archive downloads (default {@code false})</li>
+ *   <li>{@link #CACHE_INIT_PARAM} - When {@code true}, caches finished archives (default {@code false})</li>
+ *   <li>{@link #DIRECTORY_INIT_PARAM} - The directory holding cached archives (default a subdirectory of
+ *       {@link ServletContext#TEMPDIR})</li>
+ *   <li>{@link #MAX_ENTRIES_INIT_PARAM} - The maximum number of entries in an archive (default {@value #DEFAULT_MAX_ENTRIES})</li>
+ *   <li>{@link #MAX_LENGTH_INIT_PARAM} - The maximum total length of the files in an archive
+ *       (default {@value #DEFAULT_MAX_LENGTH})</li>
+ *   <li>{@link #FINGERPRINT_TTL_INIT_PARAM} - The time, in milliseconds, a fingerprint is reused before the tree is read
+ *       again (default {@value #DEFAULT_FINGERPRINT_TTL})</li>
+ * </ul>
+ */
+public final class DirectoryArchive {
+
+  private static final Logger logger = Logger.getLogger(DirectoryArchive.class.getName());
+
+  private static final String APPLICATION_ATTRIBUTE = DirectoryArchive.class.getName();
+
+  /**
+   * The context init parameter to enable archive downloads.
+   */
+  public static final String ENABLED_INIT_PARAM = DirectoryArchive.class.getName() + ".enabled";
+
+  /**
+   * The context init parameter to cache finished archives.
+   */
+  public static final String CACHE_INIT_PARAM = DirectoryArchive.class.getName() + ".cache";
+
+  /**
+   * The context init parameter for the directory holding cached archives.
+   */
+  public static final String DIRECTORY_INIT_PARAM = DirectoryArchive.class.getName() + ".directory";
+
+  /**
+   * The context init parameter for the maximum number of entries in an archive.
+   */
+  public static final String MAX_ENTRIES_INIT_PARAM = DirectoryArchive.class.getName() + ".maxEntries";
+
+  /**
+   * The default maximum number of entries in an archive.
+   */
+  public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+  /**
+   * The context init parameter for the maximum total length of the files in an archive.
+   */
+  public static final String MAX_LENGTH_INIT_PARAM = DirectoryArchive.class.getName() + ".maxLength";
+
+  /**
+   * The default maximum total length of the files in an archive.
+   */
+  public static final long DEFAULT_MAX_LENGTH = 4L * 1024 * 1024 * 1024;
+
+  /**
+   * The context init parameter for the time a fingerprint is reused.
+   */
+  public static final String FINGERPRINT_TTL_INIT_PARAM = DirectoryArchive.class.getName() + ".fingerprintTtl";
+
+  /**
+   * The default time, in milliseconds, a fingerprint is reused.
+   */
+  public static final long DEFAULT_FINGERPRINT_TTL = 10000;
+
+  /**
+   * The URL parameter used to request the archive of a directory, with a value of {@link Tree#getFingerprint()}.
+   */
+  public static final String ARCHIVE_PARAMETER_NAME = "archive";
+
+  /**
+   * The content type of all archives.
+   */
+  public static final String CONTENT_TYPE = "application/zip";
+
+  private static final String SUFFIX = ".zip";
+
+  /**
+   * The filename extensions of already-compressed formats, which are not compressed again.
+   */
+  private static final Set<String> COMPRESSED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+      "7z",
+      "avi",
+      "bz2",
+      "docx",
+      "flac",
+      "gif",
+      "gz",
+      "iso",
+      "jar",
+      "jpeg",
+      "jpg",
+      "m4a",
+      "mkv",
+      "mov",
+      "mp3",
+      "mp4",
+      "odt",
+      "ogg",
+      "pdf",
+      "png",
+      "rar",
+      "tgz",
+      "war",
+      "webm",
+      "webp",
+      "xlsx",
+      "xz",
+      "zip",
+      "zst"
+  )));
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * The maximum number of directories waiting to be read in the background.
+   */
+  private static final int MAX_QUEUE = 100;
+
+  /**
+   * Shuts down the background thread on application shutdown.
+   */
+  @WebListener("Shuts down the directory archive background thread on application shutdown.")
+  public static class Initializer implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+      // Created on start, so any invalid context init parameters are logged on start
+      getInstance(event.getServletContext());
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+      ServletContext servletContext = event.getServletContext();
+      DirectoryArchive archive = (DirectoryArchive) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+      if (archive != null) {
+        servletContext.removeAttribute(APPLICATION_ATTRIBUTE);
+        archive.close();
+      }
+    }
+  }
+
+  /**
+   * Gets the archive support for the given servlet context.
+   */
+  public static DirectoryArchive getInstance(ServletContext servletContext) {
+    DirectoryArchive archive = (DirectoryArchive) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+    if (archive == null) {
+      synchronized (servletContext) {
+        archive = (DirectoryArchive) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+        if (archive == null) {
+          archive = new DirectoryArchive(servletContext);
+          servletContext.setAttribute(APPLICATION_ATTRIBUTE, archive);
+        }
+      }
+    }
+    return archive;
+  }
+
+  /**
+   * One file or directory in a tree.
+   */
+  private static final class Entry {
+    /**
+     * The path relative to the root of the tree, separated by slash, ending in slash for directories.
+     */
+    private final String name;
+    private final Path path;
+    private final long length;
+    private final long lastModified;
+
+    private Entry(String name, Path path, long length, long lastModified) {
+      this.name = name;
+      this.path = path;
+      this.length = length;
+      this.lastModified = lastModified;
+    }
+
+    private boolean isDirectory() {
+      return name.endsWith("/");
+    }
+  }
+
+  /**
+   * A snapshot of the entries of a directory tree.
+   */
+  public static final class Tree {
+    private final Path root;
+    private final List<Entry> entries;
+    private final long totalLength;
+    private final long lastModified;
+    private final boolean tooLarge;
+    private final long expiresNanos;
+    private final String fingerprint;
+
+    private Tree(Path root, List<Entry> entries, long totalLength, long lastModified, boolean tooLarge, long expiresNanos) {
+      this.root = root;
+      this.entries = entries;
+      this.totalLength = totalLength;
+      this.lastModified = lastModified;
+      this.tooLarge = tooLarge;
+      this.expiresNanos = expiresNanos;
+      this.fingerprint = Integer.toHexString(entries.size())
+          + '-' + Long.toHexString(totalLength)
+          + '-' + Long.toHexString(lastModified);
+    }
+
+    /**
+     * Gets the fingerprint, from the number of entries, the total length, and the most recent last modified time.
+     */
+    public String getFingerprint() {
+      return fingerprint;
+    }
+
+    /**
+     * Gets the number of files and directories.
+     */
+    public int getEntryCount() {
+      return entries.size();
+    }
+
+    /**
+     * Gets the total length of all files.
+     */
+    public long getTotalLength() {
+      return totalLength;
+    }
+
+    /**
+     * Gets the most recent last modified time of all files and directories.
+     */
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    /**
+     * Is the tree beyond the configured limits, and so not able to be archived.
+     */
+    public boolean isTooLarge() {
+      return tooLarge;
+    }
+  }
+
+  private final boolean enabled;
+  private final File directory;
+  private final int maxEntries;
+  private final long maxLength;
+  private final long fingerprintTtlNanos;
+
+  /**
+   * The most recent tree of each directory.
+   */
+  private final ConcurrentMap<Path, Tree> trees = new ConcurrentHashMap<>();
+
+  /**
+   * The directories currently queued or being read in the background.
+   */
+  private final ConcurrentMap<Path, Boolean> pending = new ConcurrentHashMap<>();
+
+  /**
+   * The archives currently being written to the cache, by cache file, released once cached or failed.
+   */
+  private final ConcurrentMap<File, CountDownLatch> writing = new ConcurrentHashMap<>();
+
+  private final ThreadPoolExecutor executor;
+
+  private DirectoryArchive(ServletContext servletContext) {
+    this.enabled = InitParameters.getBoolean(servletContext, ENABLED_INIT_PARAM, false);
+    if (InitParameters.getBoolean(servletContext, CACHE_INIT_PARAM, false)) {
+      String directoryParam = servletContext.getInitParameter(DIRECTORY_INIT_PARAM);
+      if (directoryParam != null) {
+        this.directory = new File(directoryParam.trim());
+      } else {
+        File tempDir = (File) servletContext.getAttribute(ServletContext.TEMPDIR);
+        this.directory = (tempDir == null) ? null : new File(tempDir, "semanticcms-file-archives");
+      }
+    } else {
+      this.directory = null;
+    }
+    this.maxEntries = InitParameters.getInt(servletContext, MAX_ENTRIES_INIT_PARAM, DEFAULT_MAX_ENTRIES, 1);
+    this.maxLength = InitParameters.getLong(servletContext, MAX_LENGTH_INIT_PARAM, DEFAULT_MAX_LENGTH, 0);
+    this.fingerprintTtlNanos = TimeUnit.MILLISECONDS.toNanos(
+        InitParameters.getLong(servletContext, FINGERPRINT_TTL_INIT_PARAM, DEFAULT_FINGERPRINT_TTL, 0)
+    );
+    if (enabled) {
+      this.executor = new ThreadPoolExecutor(
+          1,
+          1,
+          60,
+          TimeUnit.SECONDS,
+          new ArrayBlockingQueue<>(MAX_QUEUE),
+          r -> {
+            Thread thread = new Thread(r, DirectoryArchive.class.getName() + ".reader");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+          }
+      );
+      this.executor.allowCoreThreadTimeOut(true);
+    } else {
+      this.executor = null;
+    }
+  }
+
+  /**
+   * Are archive downloads enabled.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Gets the current tree of the given directory, reading it again only when the previous tree has expired.
+   *
+   * @return  the tree or {@code null} when disabled or the directory does not exist
+   */
+  public Tree getTree(File dir) throws IOException {
+    if (!enabled) {
+      return null;
+    }
+    Path root = dir.toPath().toAbsolutePath().normalize();
+    Tree tree = trees.get(root);
+    if (tree != null && tree.expiresNanos - System.nanoTime() > 0) {
+      return tree;
+    }
+    tree = readTree(root);
+    if (tree == null) {
+      trees.remove(root);
+    } else {
+      trees.put(root, tree);
+    }
+    return tree;
+  }
+
+  /**
+   * Gets the most recent tree of the given directory without reading it, so rendering never waits for a directory to
+   * be read.  When there is no tree or it has expired, queues the directory to be read in the background.
+   *
+   * @return  the most recent tree, which may have expired, or {@code null} when disabled or not yet read
+   */
+  public Tree getTreeInBackground(File dir) {
+    if (!enabled) {
+      return null;
+    }
+    Path root = dir.toPath().toAbsolutePath().normalize();
+    Tree tree = trees.get(root);
+    if (
+        (tree == null || tree.expiresNanos - System.nanoTime() <= 0)
+            && pending.putIfAbsent(root, Boolean.TRUE) == null
+    ) {
+      try {
+        executor.execute(() -> {
+          try {
+            Tree newTree = readTree(root);
+            if (newTree == null) {
+              trees.remove(root);
+            } else {
+              trees.put(root, newTree);
+            }
+          } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Unable to read directory tree: " + root, e);
+          } finally {
+            pending.remove(root);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // Queue full or shutting down, queued again on a later request
+        pending.remove(root);
+      }
+    }
+    return tree;
+  }
+
+  private Tree readTree(Path root) throws IOException {
+    BasicFileAttributes rootAttributes;
+    try {
+      rootAttributes = Files.readAttributes(root, BasicFileAttributes.class);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+    if (!rootAttributes.isDirectory()) {
+      return null;
+    }
+    List<Entry> entries = new ArrayList<>();
+    long[] totals = {0, rootAttributes.lastModifiedTime().toMillis()};
+    boolean[] tooLarge = {false};
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      private FileVisitResult add(Path path, BasicFileAttributes attributes, boolean isDirectory) {
+        long length = isDirectory ? 0 : attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        StringBuilder name = new StringBuilder();
+        for (Path part : root.relativize(path)) {
+          if (name.length() > 0) {
+            name.append('/');
+          }
+          name.append(part.toString());
+        }
+        if (isDirectory) {
+          name.append('/');
+        }
+        entries.add(new Entry(name.toString(), path, length, lastModified));
+        totals[0] += length;
+        if (lastModified > totals[1]) {
+          totals[1] = lastModified;
+        }
+        if (entries.size() > maxEntries || totals[0] > maxLength) {
+          tooLarge[0] = true;
+          return FileVisitResult.TERMINATE;
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+        if (dir.equals(root)) {
+          return FileVisitResult.CONTINUE;
+        }
+        if (dir.getFileName().toString().startsWith(".")) {
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        return add(dir, attributes, true);
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+        // Symbolic links are not followed
+        if (attributes.isRegularFile() && !file.getFileName().toString().startsWith(".")) {
+          return add(file, attributes, false);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException e) {
+        // Removed while reading or not readable
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    // Consistent order, so the same tree always produces the same archive
+    entries.sort((e1, e2) -> e1.name.compareTo(e2.name));
+    return new Tree(
+        root,
+        Collections.unmodifiableList(entries),
+        totals[0],
+        totals[1],
+        tooLarge[0],
+        System.nanoTime() + fingerprintTtlNanos
+    );
+  }
+
+  /**
+   * Gets the prefix shared by all cached archives of the given directory, regardless of version.
+   */
+  private static String getSourcePrefix(Path root) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(root.toString().getBytes(StandardCharsets.UTF_8));
+      StringBuilder prefix = new StringBuilder(33);
+      for (int i = 0; i < 16; i++) {
+        int b = hash[i] & 0xff;
+        prefix.append(Character.forDigit(b >>> 4, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return prefix.append('-').toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError("SHA-256 is required", e);
+    }
+  }
+
+  private File getCacheFile(Tree tree) {
+    return new File(directory, getSourcePrefix(tree.root) + tree.fingerprint + SUFFIX);
+  }
+
+  /**
+   * Gets the cached archive of the given tree.
+   *
+   * @return  the archive or {@code null} when caching is disabled or the archive is not yet cached
+   */
+  public File getCachedArchive(Tree tree) {
+    if (directory == null) {
+      return null;
+    }
+    File cached = getCacheFile(tree);
+    return cached.isFile() ? cached : null;
+  }
+
+  /**
+   * Is the given file in an already-compressed format.
+   */
+  private static boolean isCompressed(String name) {
+    int dot = name.lastIndexOf('.');
+    return dot != -1 && COMPRESSED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+  }
+
+  /**
+   * An output stream that writes to the response and, optionally, a second stream, stopping writes to the second after
+   * it fails.  The response is never closed.
+   */
+  private static final class TeeOutputStream extends FilterOutputStream {
+    private final OutputStream second;
+    private IOException secondFailure;
+
+    private TeeOutputStream(OutputStream first, OutputStream second) {
+      super(first);
+      this.second = second;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      if (second != null && secondFailure == null) {
+        try {
+          second.write(b);
+        } catch (IOException e) {
+          secondFailure = e;
+        }
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      if (second != null && secondFailure == null) {
+        try {
+          second.write(b, off, len);
+        } catch (IOException e) {
+          secondFailure = e;
+        }
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      // The first stream is the response, left open for the container
+      flush();
+    }
+  }
+
+  /**
+   * Writes the archive of the given tree.  When caching is enabled, the finished archive is also cached.
+   */
+  public void write(Tree tree, OutputStream out) throws IOException {
+    if (directory == null) {
+      writeArchive(tree, new TeeOutputStream(out, null));
+      return;
+    }
+    File cacheFile = getCacheFile(tree);
+    CountDownLatch latch = new CountDownLatch(1);
+    CountDownLatch inProgress = writing.putIfAbsent(cacheFile, latch);
+    if (inProgress != null) {
+      // Already being archived by another request, send its archive once cached
+      try {
+        inProgress.await();
+      } catch (InterruptedException e) {
+        // Restore the interrupted status
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+      try {
+        Files.copy(cacheFile.toPath(), out);
+        return;
+      } catch (NoSuchFileException e) {
+        // Not cached, such as when the other request failed or a newer version replaced it
+      }
+      writeArchive(tree, new TeeOutputStream(out, null));
+      return;
+    }
+    try {
+      Files.createDirectories(directory.toPath());
+      Path tempFile = Files.createTempFile(directory.toPath(), cacheFile.getName(), ".tmp");
+      try {
+        TeeOutputStream tee;
+        try (OutputStream cacheOut = Files.newOutputStream(tempFile)) {
+          tee = new TeeOutputStream(out, cacheOut);
+          writeArchive(tree, tee);
+        }
+        if (tee.secondFailure == null) {
+          evictStale(getSourcePrefix(tree.root));
+          Files.move(tempFile, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+      } finally {
+        Files.deleteIfExists(tempFile);
+      }
+    } finally {
+      writing.remove(cacheFile, latch);
+      latch.countDown();
+    }
+  }
+
+  /**
+   * Writes the archive of the given tree, failing when any file has changed since the tree was read.
+   */
+  private void writeArchive(Tree tree, OutputStream out) throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    try (ZipOutputStream zip = new ZipOutputStream(out, StandardCharsets.UTF_8)) {
+      for (Entry entry : tree.entries) {
+        ZipEntry zipEntry = new ZipEntry(entry.name);
+        zipEntry.setLastModifiedTime(FileTime.fromMillis(entry.lastModified));
+        if (entry.isDirectory()) {
+          zip.putNextEntry(zipEntry);
+        } else {
+          // Already-compressed formats are deflated without compression, since stored entries would require the
+          // checksum up-front, from a separate read that may not match the bytes written when the file is modified
+          zip.setLevel(isCompressed(entry.name) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+          zip.putNextEntry(zipEntry);
+          try (InputStream in = Files.newInputStream(entry.path)) {
+            long remaining = entry.length;
+            int count;
+            // Never write beyond the length in the tree, a file that grew is detected below
+            while (remaining > 0 && (count = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+              zip.write(buffer, 0, count);
+              remaining -= count;
+            }
+            if (remaining > 0) {
+              throw modified(tree, entry);
+            }
+          }
+          BasicFileAttributes attributes;
+          try {
+            attributes = Files.readAttributes(entry.path, BasicFileAttributes.class);
+          } catch (NoSuchFileException e) {
+            throw modified(tree, entry);
+          }
+          if (
+              attributes.size() != entry.length
+                  || attributes.lastModifiedTime().toMillis() != entry.lastModified
+          ) {
+            throw modified(tree, entry);
+          }
+        }
+        zip.closeEntry();
+      }
+    }
+  }
+
+  /**
+   * Forgets a tree that no longer matches the directory, so it is read again on the next request.
+   *
+   * @return  the exception to throw, failing the archive
+   */
+  private IOException modified(Tree tree, Entry entry) {
+    trees.remove(tree.root, tree);
+    return new IOException("File modified while archiving: " + entry.path);
+  }
+
+  /**
+   * Deletes the cached archives of previous versions of the tree.
+   */
+  private void evictStale(String sourcePrefix) throws IOException {
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath(), sourcePrefix + "*" + SUFFIX)) {
+      for (Path stale : stream) {
+        Files.deleteIfExists(stale);
+      }
+    }
+  }
+
+  private void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+}
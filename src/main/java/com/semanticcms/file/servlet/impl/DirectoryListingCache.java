@@ -0,0 +1,269 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.ServletContext;
+
+/**
+ * An application-scope cache of directory listings, so repeated views of large directories do not rescan them.
+ * Each listing is invalidated when the last modified time of its directory changes.
+ *
+ * <p>Hidden files, with names beginning with a period, are not listed.</p>
+ *
+ * <p>Since the last modified time of a directory changes only when entries are added, removed, or renamed, the length
+ * and last modified time of entries modified in-place may be stale until then.</p>
+ *
+ * <p>Configured by context init parameters:</p>
+ * <ul>
+ *   <li>{@link #MAX_DIRECTORIES_INIT_PARAM} - The maximum number of directories cached (default {@value #DEFAULT_MAX_DIRECTORIES})</li>
+ * </ul>
+ */
+public final class DirectoryListingCache {
+
+  private static final String APPLICATION_ATTRIBUTE = DirectoryListingCache.class.getName();
+
+  /**
+   * The context init parameter for the maximum number of directories cached.
+   */
+  public static final String MAX_DIRECTORIES_INIT_PARAM = DirectoryListingCache.class.getName() + ".maxDirectories";
+
+  /**
+   * The default maximum number of directories cached.
+   */
+  public static final int DEFAULT_MAX_DIRECTORIES = 64;
+
+  /**
+   * Gets the cache for the given servlet context.
+   */
+  public static DirectoryListingCache getInstance(ServletContext servletContext) {
+    DirectoryListingCache cache = (DirectoryListingCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+    if (cache == null) {
+      synchronized (servletContext) {
+        cache = (DirectoryListingCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+        if (cache == null) {
+          cache = new DirectoryListingCache(servletContext);
+          servletContext.setAttribute(APPLICATION_ATTRIBUTE, cache);
+        }
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * The available sort orders.
+   */
+  public enum Sort {
+    NAME(Comparator.comparing(Entry::getName)),
+    LENGTH(Comparator.comparingLong(Entry::getLength).thenComparing(Entry::getName)),
+    LAST_MODIFIED(Comparator.comparingLong(Entry::getLastModified).thenComparing(Entry::getName));
+
+    private final Comparator<Entry> comparator;
+
+    private Sort(Comparator<Entry> comparator) {
+      this.comparator = comparator;
+    }
+  }
+
+  /**
+   * One entry in a directory.
+   */
+  public static final class Entry {
+    private final String name;
+    private final boolean directory;
+    private final long length;
+    private final long lastModified;
+
+    private Entry(String name, boolean directory, long length, long lastModified) {
+      this.name = name;
+      this.directory = directory;
+      this.length = length;
+      this.lastModified = lastModified;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+
+    /**
+     * Gets the filename.
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Is this entry a directory.
+     */
+    public boolean isDirectory() {
+      return directory;
+    }
+
+    /**
+     * Gets the length, which is {@code -1} for directories.
+     */
+    public long getLength() {
+      return length;
+    }
+
+    /**
+     * Gets the last modified time.
+     */
+    public long getLastModified() {
+      return lastModified;
+    }
+  }
+
+  /**
+   * A snapshot of the entries of one directory.
+   */
+  public static final class Listing {
+    private final long directoryLastModified;
+    private final Entry[] entries;
+    /**
+     * The entries in each sort order, created when first needed.
+     */
+    private final Entry[][] sorted = new Entry[Sort.values().length][];
+
+    private Listing(long directoryLastModified, Entry[] entries) {
+      this.directoryLastModified = directoryLastModified;
+      this.entries = entries;
+    }
+
+    /**
+     * Gets the total number of entries.
+     */
+    public int size() {
+      return entries.length;
+    }
+
+    /**
+     * Gets the entries in the given order.  The returned array must not be modified.
+     */
+    @SuppressWarnings("ReturnOfCollectionOrArrayField")
+    public synchronized Entry[] getEntries(Sort sort) {
+      int ordinal = sort.ordinal();
+      Entry[] result = sorted[ordinal];
+      if (result == null) {
+        result = entries.clone();
+        Arrays.sort(result, sort.comparator);
+        sorted[ordinal] = result;
+      }
+      return result;
+    }
+  }
+
+  private final FileMetrics metrics;
+  private final int maxDirectories;
+
+  /**
+   * The cached listings, in access order for least recently used eviction.
+   */
+  private final Map<Path, Listing> listings;
+
+  private DirectoryListingCache(ServletContext servletContext) {
+    this.metrics = FileMetrics.getInstance(servletContext);
+    this.maxDirectories = InitParameters.getInt(servletContext, MAX_DIRECTORIES_INIT_PARAM, DEFAULT_MAX_DIRECTORIES, 1);
+    this.listings = new LinkedHashMap<Path, Listing>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Path, Listing> eldest) {
+        return size() > DirectoryListingCache.this.maxDirectories;
+      }
+    };
+  }
+
+  /**
+   * Gets the listing of the given directory, scanning it only when not cached or modified since cached.
+   *
+   * @return  the listing or {@code null} when the directory does not exist
+   */
+  public Listing getListing(File directory) throws IOException {
+    Path path = directory.toPath().toAbsolutePath().normalize();
+    long directoryLastModified;
+    try {
+      directoryLastModified = Files.getLastModifiedTime(path).toMillis();
+    } catch (NoSuchFileException e) {
+      synchronized (listings) {
+        listings.remove(path);
+      }
+      return null;
+    }
+    Listing listing;
+    long lockStart = metrics.start();
+    synchronized (listings) {
+      metrics.recordLockWaitTime(lockStart);
+      listing = listings.get(path);
+    }
+    if (listing == null || listing.directoryLastModified != directoryLastModified) {
+      List<Entry> entries = new ArrayList<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+        for (Path child : stream) {
+          String name = child.getFileName().toString();
+          if (name.startsWith(".")) {
+            // Skip hidden files, such as version control directories
+            continue;
+          }
+          BasicFileAttributes attributes;
+          try {
+            attributes = Files.readAttributes(child, BasicFileAttributes.class);
+          } catch (NoSuchFileException e) {
+            // Removed while listing
+            continue;
+          } catch (IOException e) {
+            // Broken symbolic link
+            attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+          }
+          boolean isDirectory = attributes.isDirectory();
+          entries.add(new Entry(
+              name,
+              isDirectory,
+              isDirectory ? -1 : attributes.size(),
+              attributes.lastModifiedTime().toMillis()
+          ));
+        }
+      }
+      listing = new Listing(directoryLastModified, entries.toArray(new Entry[entries.size()]));
+      synchronized (listings) {
+        listings.put(path, listing);
+      }
+    }
+    return listing;
+  }
+}
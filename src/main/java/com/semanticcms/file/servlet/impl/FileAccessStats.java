@@ -0,0 +1,551 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import com.semanticcms.core.model.Book;
+import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.servlet.SemanticCMS;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * An application-scope record of how often each resource file is requested, to find the hottest files for warming up
+ * and tuning caches.  Counts are kept in {@link LongAdder}, so concurrent requests for the same file do not contend.
+ *
+ * <p>Every file request counts as an access, including conditional requests answered with
+ * {@linkplain javax.servlet.http.HttpServletResponse#SC_NOT_MODIFIED not modified}.  Only requests that send the
+ * content count as a download.  Downloads of {@linkplain DirectoryArchive directory archives} are counted for the
+ * directory.</p>
+ *
+ * <p>The counts since the last flush are appended to a local file in the background, and the file is read and
+ * compacted to one record per file on startup.  A partial record left by a crash is discarded.</p>
+ *
+ * <p>Once {@link #MAX_FILES_INIT_PARAM} files are tracked, requests for additional files are not counted.</p>
+ *
+ * <p>Configured by context init parameters:</p>
+ * <ul>
+ *   <li>{@link #ENABLED_INIT_PARAM} - When {@code true}, enables access statistics (default {@code false})</li>
+ *   <li>{@link #FILE_INIT_PARAM} - The file holding the statistics (default a file in {@link ServletContext#TEMPDIR})</li>
+ *   <li>{@link #FLUSH_INTERVAL_INIT_PARAM} - The milliseconds between writing the counts to the file
+ *       (default {@value #DEFAULT_FLUSH_INTERVAL})</li>
+ *   <li>{@link #MAX_FILES_INIT_PARAM} - The maximum number of files tracked (default {@value #DEFAULT_MAX_FILES})</li>
+ * </ul>
+ */
+public final class FileAccessStats {
+
+  private static final Logger logger = Logger.getLogger(FileAccessStats.class.getName());
+
+  private static final String APPLICATION_ATTRIBUTE = FileAccessStats.class.getName();
+
+  /**
+   * The context init parameter to enable access statistics.
+   */
+  public static final String ENABLED_INIT_PARAM = FileAccessStats.class.getName() + ".enabled";
+
+  /**
+   * The context init parameter for the file holding the statistics.
+   */
+  public static final String FILE_INIT_PARAM = FileAccessStats.class.getName() + ".file";
+
+  /**
+   * The context init parameter for the milliseconds between writing the counts to the file.
+   */
+  public static final String FLUSH_INTERVAL_INIT_PARAM = FileAccessStats.class.getName() + ".flushInterval";
+
+  /**
+   * The default milliseconds between writing the counts to the file.
+   */
+  public static final long DEFAULT_FLUSH_INTERVAL = 60000;
+
+  /**
+   * The context init parameter for the maximum number of files tracked.
+   */
+  public static final String MAX_FILES_INIT_PARAM = FileAccessStats.class.getName() + ".maxFiles";
+
+  /**
+   * The default maximum number of files tracked.
+   */
+  public static final int DEFAULT_MAX_FILES = 100000;
+
+  /**
+   * Longer names might not fit in {@link DataOutputStream#writeUTF(java.lang.String)} and are not counted.
+   */
+  private static final int MAX_NAME_LENGTH = 65535 / 3;
+
+  /**
+   * Reads the statistics and starts the background thread on application start, then writes the remaining counts and
+   * stops the background thread on application shutdown.
+   */
+  @WebListener("Reads the file access statistics on application start and writes the remaining on application"
+      + " shutdown.")
+  public static class Initializer implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+      // Read here instead of in getInstance, where the lock on the servlet context is held
+      getInstance(event.getServletContext()).start();
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+      ServletContext servletContext = event.getServletContext();
+      FileAccessStats stats = (FileAccessStats) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+      if (stats != null) {
+        servletContext.removeAttribute(APPLICATION_ATTRIBUTE);
+        stats.close();
+      }
+    }
+  }
+
+  /**
+   * Gets the statistics for the given servlet context.
+   */
+  public static FileAccessStats getInstance(ServletContext servletContext) {
+    FileAccessStats stats = (FileAccessStats) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+    if (stats == null) {
+      synchronized (servletContext) {
+        stats = (FileAccessStats) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+        if (stats == null) {
+          stats = new FileAccessStats(servletContext);
+          servletContext.setAttribute(APPLICATION_ATTRIBUTE, stats);
+        }
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * The available orders of the hottest files.
+   */
+  public enum Order {
+    ACCESSES(Comparator.comparingLong(Entry::getAccesses).thenComparingLong(Entry::getDownloads)),
+    DOWNLOADS(Comparator.comparingLong(Entry::getDownloads).thenComparingLong(Entry::getAccesses));
+
+    private final Comparator<Entry> comparator;
+
+    private Order(Comparator<Entry> comparator) {
+      this.comparator = comparator;
+    }
+  }
+
+  /**
+   * A snapshot of the counts of one file.
+   */
+  public static final class Entry {
+    private final String bookName;
+    private final String path;
+    private final long accesses;
+    private final long downloads;
+
+    private Entry(String bookName, String path, long accesses, long downloads) {
+      this.bookName = bookName;
+      this.path = path;
+      this.accesses = accesses;
+      this.downloads = downloads;
+    }
+
+    @Override
+    public String toString() {
+      return bookName + ':' + path;
+    }
+
+    /**
+     * Gets the name of the book containing the file.
+     */
+    public String getBookName() {
+      return bookName;
+    }
+
+    /**
+     * Gets the path of the file within its book.
+     */
+    public String getPath() {
+      return path;
+    }
+
+    /**
+     * Gets the reference to the file.
+     *
+     * @return  the reference or {@code null} when the book no longer exists
+     */
+    public PageRef getPageRef(ServletContext servletContext) {
+      Book book = SemanticCMS.getInstance(servletContext).getBooks().get(bookName);
+      return (book == null) ? null : new PageRef(book, path);
+    }
+
+    /**
+     * Gets the number of accesses.
+     */
+    public long getAccesses() {
+      return accesses;
+    }
+
+    /**
+     * Gets the number of downloads.
+     */
+    public long getDownloads() {
+      return downloads;
+    }
+  }
+
+  private static final class Key {
+    private final String bookName;
+    private final String path;
+    private final int hash;
+
+    private Key(String bookName, String path) {
+      this.bookName = bookName;
+      this.path = path;
+      this.hash = bookName.hashCode() * 31 + path.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return hash == other.hash && bookName.equals(other.bookName) && path.equals(other.path);
+    }
+  }
+
+  /**
+   * The counts of one file.  The pending counts are updated by requests, and moved to the flushed counts only while
+   * holding the lock on {@link #counters}.
+   */
+  private static final class Counters {
+    private final LongAdder accesses = new LongAdder();
+    private final LongAdder downloads = new LongAdder();
+    private volatile long flushedAccesses;
+    private volatile long flushedDownloads;
+  }
+
+  private final boolean enabled;
+  private final File file;
+  private final int maxFiles;
+  private final long flushInterval;
+
+  /**
+   * The counts of each file, in no particular order.
+   */
+  private final ConcurrentMap<Key, Counters> counters = new ConcurrentHashMap<>();
+
+  private final ScheduledThreadPoolExecutor executor;
+
+  /**
+   * Logs only the first time the maximum number of files is reached.
+   */
+  private volatile boolean full;
+
+  private FileAccessStats(ServletContext servletContext) {
+    String fileParam = servletContext.getInitParameter(FILE_INIT_PARAM);
+    if (fileParam != null) {
+      this.file = new File(fileParam.trim());
+    } else {
+      File tempDir = (File) servletContext.getAttribute(ServletContext.TEMPDIR);
+      this.file = (tempDir == null) ? null : new File(tempDir, "semanticcms-file-access.dat");
+    }
+    this.enabled = file != null && InitParameters.getBoolean(servletContext, ENABLED_INIT_PARAM, false);
+    this.maxFiles = InitParameters.getInt(servletContext, MAX_FILES_INIT_PARAM, DEFAULT_MAX_FILES, 1);
+    this.flushInterval = InitParameters.getLong(servletContext, FLUSH_INTERVAL_INIT_PARAM, DEFAULT_FLUSH_INTERVAL, 1);
+    if (enabled) {
+      this.executor = new ScheduledThreadPoolExecutor(
+          1,
+          r -> {
+            Thread thread = new Thread(r, FileAccessStats.class.getName() + ".flusher");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+          }
+      );
+    } else {
+      this.executor = null;
+    }
+  }
+
+  /**
+   * Reads the statistics from the file, then starts writing the counts to the file in the background.  Flushing only
+   * starts once read, since records flushed before reading would be counted twice.
+   */
+  private void start() {
+    if (enabled) {
+      load();
+      executor.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Are access statistics enabled.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Gets the counts of the given file, adding them when first seen.
+   *
+   * @return  the counts or {@code null} when the maximum number of files are already tracked
+   */
+  private Counters getCounters(String bookName, String path) {
+    if (bookName.length() > MAX_NAME_LENGTH || path.length() > MAX_NAME_LENGTH) {
+      return null;
+    }
+    Key key = new Key(bookName, path);
+    Counters fileCounters = counters.get(key);
+    if (fileCounters == null) {
+      if (counters.size() >= maxFiles) {
+        if (!full) {
+          full = true;
+          logger.warning("Maximum number of files tracked, not counting additional files: " + maxFiles);
+        }
+        return null;
+      }
+      fileCounters = counters.computeIfAbsent(key, k -> new Counters());
+    }
+    return fileCounters;
+  }
+
+  /**
+   * Counts one access of the given file.
+   */
+  public void recordAccess(PageRef pageRef) {
+    if (enabled) {
+      Counters fileCounters = getCounters(pageRef.getBook().getName(), pageRef.getPath());
+      if (fileCounters != null) {
+        fileCounters.accesses.increment();
+      }
+    }
+  }
+
+  /**
+   * Counts one download of the given file.
+   */
+  public void recordDownload(PageRef pageRef) {
+    if (enabled) {
+      Counters fileCounters = getCounters(pageRef.getBook().getName(), pageRef.getPath());
+      if (fileCounters != null) {
+        fileCounters.downloads.increment();
+      }
+    }
+  }
+
+  /**
+   * Gets the hottest files, including counts not yet written to the file.
+   *
+   * @param  limit  the maximum number of files returned
+   *
+   * @return  the files, hottest first, or an empty list when not enabled
+   */
+  public List<Entry> getTop(int limit, Order order) {
+    if (!enabled || limit <= 0) {
+      return Collections.emptyList();
+    }
+    // Keep the hottest seen so far, with the coldest of them at the head
+    PriorityQueue<Entry> top = new PriorityQueue<>(Math.min(limit, counters.size()) + 1, order.comparator);
+    for (ConcurrentMap.Entry<Key, Counters> mapEntry : counters.entrySet()) {
+      Key key = mapEntry.getKey();
+      Counters fileCounters = mapEntry.getValue();
+      Entry entry = new Entry(
+          key.bookName,
+          key.path,
+          fileCounters.flushedAccesses + fileCounters.accesses.sum(),
+          fileCounters.flushedDownloads + fileCounters.downloads.sum()
+      );
+      if (top.size() < limit) {
+        top.add(entry);
+      } else if (order.comparator.compare(entry, top.peek()) > 0) {
+        top.poll();
+        top.add(entry);
+      }
+    }
+    List<Entry> result = new ArrayList<>(top);
+    result.sort(order.comparator.reversed());
+    return result;
+  }
+
+  /**
+   * Reads the statistics from the file, then rewrites it with one record per file.
+   */
+  private void load() {
+    synchronized (counters) {
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+        while (true) {
+          String bookName;
+          try {
+            bookName = in.readUTF();
+          } catch (EOFException e) {
+            break;
+          }
+          String path = in.readUTF();
+          long accesses = in.readLong();
+          long downloads = in.readLong();
+          Counters fileCounters = getCounters(bookName, path);
+          if (fileCounters != null) {
+            fileCounters.flushedAccesses += accesses;
+            fileCounters.flushedDownloads += downloads;
+          }
+        }
+      } catch (FileNotFoundException e) {
+        // First run
+        return;
+      } catch (EOFException e) {
+        logger.warning("Discarding partial record at end of file access statistics: " + file);
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Unable to read file access statistics, keeping what was read: " + file, e);
+      }
+      try {
+        Path tempFile = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+          try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            for (ConcurrentMap.Entry<Key, Counters> mapEntry : counters.entrySet()) {
+              Key key = mapEntry.getKey();
+              Counters fileCounters = mapEntry.getValue();
+              write(out, key, fileCounters.flushedAccesses, fileCounters.flushedDownloads);
+            }
+          }
+          Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+          Files.deleteIfExists(tempFile);
+        }
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Unable to compact file access statistics: " + file, e);
+      }
+    }
+  }
+
+  private static void write(DataOutputStream out, Key key, long accesses, long downloads) throws IOException {
+    out.writeUTF(key.bookName);
+    out.writeUTF(key.path);
+    out.writeLong(accesses);
+    out.writeLong(downloads);
+  }
+
+  /**
+   * Appends the counts since the last flush to the file, as a single write that is removed again on failure.  The
+   * counts are restored when not written, so they are included in the next flush.
+   */
+  private void flush() {
+    synchronized (counters) {
+      List<Counters> flushed = new ArrayList<>();
+      List<long[]> flushedCounts = new ArrayList<>();
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      boolean written = false;
+      try {
+        try (DataOutputStream out = new DataOutputStream(bout)) {
+          for (ConcurrentMap.Entry<Key, Counters> mapEntry : counters.entrySet()) {
+            Counters fileCounters = mapEntry.getValue();
+            long accesses = fileCounters.accesses.sumThenReset();
+            long downloads = fileCounters.downloads.sumThenReset();
+            if (accesses != 0 || downloads != 0) {
+              flushed.add(fileCounters);
+              flushedCounts.add(new long[] {accesses, downloads});
+              write(out, mapEntry.getKey(), accesses, downloads);
+            }
+          }
+        }
+        if (!flushed.isEmpty()) {
+          File parent = file.getAbsoluteFile().getParentFile();
+          if (parent != null) {
+            Files.createDirectories(parent.toPath());
+          }
+          try (FileChannel channel = FileChannel.open(
+              file.toPath(),
+              StandardOpenOption.CREATE,
+              StandardOpenOption.WRITE,
+              StandardOpenOption.APPEND
+          )) {
+            long size = channel.size();
+            try {
+              ByteBuffer buffer = ByteBuffer.wrap(bout.toByteArray());
+              while (buffer.hasRemaining()) {
+                channel.write(buffer);
+              }
+            } catch (IOException e) {
+              // Do not leave a partial record for the next flush to append after
+              channel.truncate(size);
+              throw e;
+            }
+          }
+        }
+        written = true;
+      } catch (IOException | RuntimeException e) {
+        logger.log(Level.WARNING, "Unable to write file access statistics: " + file, e);
+      } finally {
+        for (int i = 0, size = flushed.size(); i < size; i++) {
+          Counters fileCounters = flushed.get(i);
+          long[] counts = flushedCounts.get(i);
+          if (written) {
+            fileCounters.flushedAccesses += counts[0];
+            fileCounters.flushedDownloads += counts[1];
+          } else {
+            fileCounters.accesses.add(counts[0]);
+            fileCounters.downloads.add(counts[1]);
+          }
+        }
+      }
+    }
+  }
+
+  private void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+      flush();
+    }
+  }
+}
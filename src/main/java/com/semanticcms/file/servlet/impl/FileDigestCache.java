@@ -0,0 +1,440 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * An application-scope cache of resource file content digests, used to version file URLs by content instead of by
+ * last modified time.  Since the digest only changes when the content changes, the URL remains stable across
+ * checkouts and touches, preserving browser and CDN caches.
+ *
+ * <p>Digests are computed by background workers and persisted to an append-only file keyed by
+ * (path, length, last modified), so restarts do not rehash unchanged files.  The file starts with the algorithm, and
+ * is discarded on start when the algorithm has changed.  Until a digest is available,
+ * {@link #getDigest(com.semanticcms.file.servlet.impl.FileMetadata)} returns {@code null} and the caller falls
+ * back to last modified versioning.  Rendering never waits on hashing.</p>
+ *
+ * <p>Configured by context init parameters:</p>
+ * <ul>
+ *   <li>{@link #ENABLED_INIT_PARAM} - When {@code true}, enables content digest versioning (default {@code false})</li>
+ *   <li>{@link #ALGORITHM_INIT_PARAM} - The {@link MessageDigest} algorithm (default {@value #DEFAULT_ALGORITHM})</li>
+ *   <li>{@link #THREADS_INIT_PARAM} - The number of background hashing threads (default {@value #DEFAULT_THREADS})</li>
+ *   <li>{@link #DIRECTORY_INIT_PARAM} - The directory holding the persisted digests (default a subdirectory of
+ *       {@link ServletContext#TEMPDIR})</li>
+ * </ul>
+ */
+public final class FileDigestCache {
+
+  private static final Logger logger = Logger.getLogger(FileDigestCache.class.getName());
+
+  private static final String APPLICATION_ATTRIBUTE = FileDigestCache.class.getName();
+
+  /**
+   * The URL parameter used to version files by content digest.
+   */
+  public static final String DIGEST_PARAMETER_NAME = "digest";
+
+  /**
+   * The context init parameter to enable content digest versioning.
+   */
+  public static final String ENABLED_INIT_PARAM = FileDigestCache.class.getName() + ".enabled";
+
+  /**
+   * The context init parameter for the digest algorithm.
+   */
+  public static final String ALGORITHM_INIT_PARAM = FileDigestCache.class.getName() + ".algorithm";
+
+  /**
+   * The default digest algorithm.
+   */
+  public static final String DEFAULT_ALGORITHM = "SHA-256";
+
+  /**
+   * The context init parameter for the number of background hashing threads.
+   */
+  public static final String THREADS_INIT_PARAM = FileDigestCache.class.getName() + ".threads";
+
+  /**
+   * The default number of background hashing threads.
+   */
+  public static final int DEFAULT_THREADS = 2;
+
+  /**
+   * The context init parameter for the directory holding the persisted digests.
+   */
+  public static final String DIRECTORY_INIT_PARAM = FileDigestCache.class.getName() + ".directory";
+
+  private static final String DIGESTS_FILENAME = "digests.dat";
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Loads the persisted digests on application start and shuts down the background hashing threads on application
+   * shutdown.
+   */
+  @WebListener("Loads the persisted file digests on application start and shuts down the background hashing threads on"
+      + " application shutdown.")
+  public static class Initializer implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+      // Loaded here instead of in getInstance, where the lock on the servlet context is held
+      getInstance(event.getServletContext()).load();
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+      ServletContext servletContext = event.getServletContext();
+      FileDigestCache cache = (FileDigestCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+      if (cache != null) {
+        servletContext.removeAttribute(APPLICATION_ATTRIBUTE);
+        cache.close();
+      }
+    }
+  }
+
+  /**
+   * Gets the cache for the given servlet context.
+   */
+  public static FileDigestCache getInstance(ServletContext servletContext) {
+    FileDigestCache cache = (FileDigestCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+    if (cache == null) {
+      synchronized (servletContext) {
+        cache = (FileDigestCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+        if (cache == null) {
+          cache = new FileDigestCache(servletContext);
+          servletContext.setAttribute(APPLICATION_ATTRIBUTE, cache);
+        }
+      }
+    }
+    return cache;
+  }
+
+  private static class Entry {
+    private final long length;
+    private final long lastModified;
+    private final String digest;
+
+    private Entry(long length, long lastModified, String digest) {
+      this.length = length;
+      this.lastModified = lastModified;
+      this.digest = digest;
+    }
+
+    private boolean matches(FileMetadata metadata) {
+      return length == metadata.getLength() && lastModified == metadata.getLastModified();
+    }
+  }
+
+  private final boolean enabled;
+  private final String algorithm;
+  private final File digestsFile;
+
+  /**
+   * The known digests, keyed by absolute path.
+   */
+  private final ConcurrentMap<String, Entry> digests = new ConcurrentHashMap<>();
+
+  /**
+   * The paths currently queued or being hashed, to avoid hashing the same file more than once at a time.
+   */
+  private final ConcurrentMap<String, Boolean> pending = new ConcurrentHashMap<>();
+
+  private final ExecutorService executor;
+
+  private final Object outLock = new Object();
+  private DataOutputStream out;
+
+  /**
+   * Set until loaded, and when a partial record may be at the end of the file, so no records are appended after it.
+   */
+  private boolean outDisabled = true;
+
+  private FileDigestCache(ServletContext servletContext) {
+    boolean isEnabled = InitParameters.getBoolean(servletContext, ENABLED_INIT_PARAM, false);
+    String algorithmParam = servletContext.getInitParameter(ALGORITHM_INIT_PARAM);
+    this.algorithm = algorithmParam == null ? DEFAULT_ALGORITHM : algorithmParam.trim();
+    if (isEnabled) {
+      try {
+        MessageDigest.getInstance(algorithm);
+      } catch (NoSuchAlgorithmException e) {
+        logger.log(Level.WARNING, "Digest algorithm not available, content digest versioning disabled: " + algorithm, e);
+        isEnabled = false;
+      }
+    }
+    this.enabled = isEnabled;
+    if (enabled) {
+      String directoryParam = servletContext.getInitParameter(DIRECTORY_INIT_PARAM);
+      File directory;
+      if (directoryParam != null) {
+        directory = new File(directoryParam.trim());
+      } else {
+        File tempDir = (File) servletContext.getAttribute(ServletContext.TEMPDIR);
+        directory = (tempDir == null) ? null : new File(tempDir, "semanticcms-file-digests");
+      }
+      this.digestsFile = (directory == null) ? null : new File(directory, DIGESTS_FILENAME);
+      int threads = InitParameters.getInt(servletContext, THREADS_INIT_PARAM, DEFAULT_THREADS, 1);
+      AtomicInteger threadCounter = new AtomicInteger();
+      this.executor = Executors.newFixedThreadPool(threads, r -> {
+        Thread thread = new Thread(r, FileDigestCache.class.getName() + ".hasher-" + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+      });
+    } else {
+      this.digestsFile = null;
+      this.executor = null;
+    }
+  }
+
+  /**
+   * Is content digest versioning enabled.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Gets the content digest for the given file, encoded as URL-safe Base64 without padding.  When the digest is not yet
+   * available, queues the file for background hashing and returns {@code null} immediately.
+   *
+   * @return  the digest or {@code null} when disabled, when the file is a directory, or when not yet computed
+   */
+  public String getDigest(FileMetadata metadata) {
+    if (!enabled || metadata.isDirectory()) {
+      return null;
+    }
+    String path = metadata.getFile().getAbsolutePath();
+    Entry entry = digests.get(path);
+    if (entry != null && entry.matches(metadata)) {
+      return entry.digest;
+    }
+    if (pending.putIfAbsent(path, Boolean.TRUE) == null) {
+      try {
+        executor.execute(() -> {
+          try {
+            hash(path, metadata);
+          } finally {
+            pending.remove(path);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // Shutting down
+        pending.remove(path);
+      }
+    }
+    return null;
+  }
+
+  private void hash(String path, FileMetadata metadata) {
+    try {
+      MessageDigest md = MessageDigest.getInstance(algorithm);
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+      File file = metadata.getFile();
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+        while (channel.read(buffer) != -1) {
+          buffer.flip();
+          md.update(buffer);
+          buffer.clear();
+        }
+      }
+      // Discard when modified during hashing
+      FileMetadata after = FileMetadata.readFileMetadata(file);
+      if (
+          after != null
+              && after.getLength() == metadata.getLength()
+              && after.getLastModified() == metadata.getLastModified()
+      ) {
+        String digest = Base64.getUrlEncoder().withoutPadding().encodeToString(md.digest());
+        Entry entry = new Entry(metadata.getLength(), metadata.getLastModified(), digest);
+        digests.put(path, entry);
+        persist(path, entry);
+      }
+    } catch (IOException | NoSuchAlgorithmException e) {
+      logger.log(Level.WARNING, "Unable to compute digest: " + path, e);
+    }
+  }
+
+  /**
+   * Loads the persisted digests, then rewrites the file to remove any superseded records.  The file is discarded when
+   * written with a different algorithm.  Nothing is appended to the file until loaded.
+   */
+  private void load() {
+    if (digestsFile == null) {
+      return;
+    }
+    synchronized (outLock) {
+      boolean appendable = true;
+      if (digestsFile.exists()) {
+        String fileAlgorithm = null;
+        int records = 0;
+        boolean partial = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(digestsFile.toPath())))) {
+          fileAlgorithm = in.readUTF();
+          if (algorithm.equals(fileAlgorithm)) {
+            while (true) {
+              // End of file only between records, any other end of file is a partial record
+              in.mark(1);
+              if (in.read() == -1) {
+                break;
+              }
+              in.reset();
+              String path = in.readUTF();
+              long length = in.readLong();
+              long lastModified = in.readLong();
+              String digest = in.readUTF();
+              // Any digest computed since start is more recent
+              digests.putIfAbsent(path, new Entry(length, lastModified, digest));
+              records++;
+            }
+          }
+        } catch (EOFException e) {
+          logger.log(Level.WARNING, "Truncated digests file, ignoring partial record: " + digestsFile, e);
+          partial = true;
+        } catch (IOException e) {
+          logger.log(Level.WARNING, "Unable to load digests: " + digestsFile, e);
+          partial = true;
+        }
+        if (fileAlgorithm != null && !algorithm.equals(fileAlgorithm)) {
+          logger.info("Digest algorithm changed from " + fileAlgorithm + " to " + algorithm + ", discarding digests: "
+              + digestsFile);
+          try {
+            Files.delete(digestsFile.toPath());
+          } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to discard digests, not persisting: " + digestsFile, e);
+            appendable = false;
+          }
+        } else if ((partial || records > digests.size()) && !compact() && partial) {
+          // Rewritten without any partial record, which would misalign the records appended after it
+          appendable = false;
+        }
+      }
+      outDisabled = !appendable;
+    }
+  }
+
+  /**
+   * Rewrites the digests file with only the current entries.
+   *
+   * @return  {@code true} when compacted successfully
+   */
+  private boolean compact() {
+    File newFile = new File(digestsFile.getPath() + ".new");
+    try {
+      try (DataOutputStream newOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(newFile.toPath())))) {
+        newOut.writeUTF(algorithm);
+        for (Map.Entry<String, Entry> e : digests.entrySet()) {
+          write(newOut, e.getKey(), e.getValue());
+        }
+      }
+      Files.move(newFile.toPath(), digestsFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      return true;
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Unable to compact digests: " + digestsFile, e);
+      return false;
+    }
+  }
+
+  private static void write(DataOutputStream out, String path, Entry entry) throws IOException {
+    out.writeUTF(path);
+    out.writeLong(entry.length);
+    out.writeLong(entry.lastModified);
+    out.writeUTF(entry.digest);
+  }
+
+  private void persist(String path, Entry entry) {
+    if (digestsFile != null) {
+      synchronized (outLock) {
+        if (outDisabled) {
+          return;
+        }
+        try {
+          if (out == null) {
+            Files.createDirectories(digestsFile.getParentFile().toPath());
+            OutputStream fileOut = Files.newOutputStream(
+                digestsFile.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND
+            );
+            out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            if (Files.size(digestsFile.toPath()) == 0) {
+              out.writeUTF(algorithm);
+            }
+          }
+          write(out, path, entry);
+          out.flush();
+        } catch (IOException e) {
+          // A partial record may have been written, so nothing more is appended until compacted on the next start
+          logger.log(Level.WARNING, "Unable to persist digest, no longer persisting: " + path, e);
+          outDisabled = true;
+        }
+      }
+    }
+  }
+
+  private void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    synchronized (outLock) {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException e) {
+          logger.log(Level.WARNING, null, e);
+        }
+        out = null;
+      }
+    }
+  }
+}
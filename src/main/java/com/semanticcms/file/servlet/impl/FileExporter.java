@@ -0,0 +1,441 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import com.semanticcms.core.model.PageRef;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Copies the resource files referenced during a static export directly into the export tree, in parallel, instead of
+ * the export fetching each file through the container.
+ *
+ * <p>Each file is placed at its servlet path within the export directory, which matches the links written while
+ * exporting.  Each referenced file is copied once, no matter how many times it is referenced, unless its copy has
+ * since been removed from the export tree.  Files whose length and last modified time match the previous export are
+ * skipped.  Files with identical content, by digest, are hard linked to an earlier copy when the filesystem supports
+ * it and that copy has not since been rewritten, and otherwise copied with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.  A hard link has the last modified
+ * time of the copy it links to, so is skipped when still linked to the copy of the same digest.</p>
+ *
+ * <p>Copies happen in the background.  Call {@link #awaitCompletion(long, java.util.concurrent.TimeUnit)} before
+ * using the export tree.</p>
+ *
+ * <p>Configured by context init parameters:</p>
+ * <ul>
+ *   <li>{@link #DIRECTORY_INIT_PARAM} - The root of the export tree (default none, disabled)</li>
+ *   <li>{@link #THREADS_INIT_PARAM} - The number of copy threads (default the number of processors)</li>
+ * </ul>
+ */
+public final class FileExporter {
+
+  private static final Logger logger = Logger.getLogger(FileExporter.class.getName());
+
+  private static final String APPLICATION_ATTRIBUTE = FileExporter.class.getName();
+
+  /**
+   * The context init parameter for the root of the export tree.
+   */
+  public static final String DIRECTORY_INIT_PARAM = FileExporter.class.getName() + ".directory";
+
+  /**
+   * The context init parameter for the number of copy threads.
+   */
+  public static final String THREADS_INIT_PARAM = FileExporter.class.getName() + ".threads";
+
+  /**
+   * The maximum time to wait for copies in progress on application shutdown.
+   */
+  private static final long SHUTDOWN_WAIT_SECONDS = 60;
+
+  /**
+   * Finishes copies in progress on application shutdown.
+   */
+  @WebListener("Finishes file export copies in progress on application shutdown.")
+  public static class Initializer implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+      // Created on start, so any invalid context init parameters are logged on start
+      getInstance(event.getServletContext());
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+      ServletContext servletContext = event.getServletContext();
+      FileExporter exporter = (FileExporter) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+      if (exporter != null) {
+        servletContext.removeAttribute(APPLICATION_ATTRIBUTE);
+        exporter.close();
+      }
+    }
+  }
+
+  /**
+   * Gets the exporter for the given servlet context.
+   */
+  public static FileExporter getInstance(ServletContext servletContext) {
+    FileExporter exporter = (FileExporter) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+    if (exporter == null) {
+      synchronized (servletContext) {
+        exporter = (FileExporter) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+        if (exporter == null) {
+          exporter = new FileExporter(servletContext);
+          servletContext.setAttribute(APPLICATION_ATTRIBUTE, exporter);
+        }
+      }
+    }
+    return exporter;
+  }
+
+  private final ServletContext servletContext;
+  private final Path directory;
+  private final ExecutorService executor;
+
+  /**
+   * The files already submitted, by servlet path, to copy each referenced file once.
+   */
+  private final ConcurrentMap<String, FileMetadata> submitted = new ConcurrentHashMap<>();
+
+  /**
+   * The servlet paths currently queued or being copied.
+   */
+  private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+
+  /**
+   * An exported copy of some content.  Targets are only ever replaced by moving a new file into place, so a target
+   * rewritten since it was copied has a different file key.  When the filesystem has no file keys, the length and last
+   * modified time are compared instead.
+   */
+  private static final class Copy {
+
+    private final Path path;
+    private final Object fileKey;
+    private final long length;
+    private final long lastModified;
+
+    private Copy(Path path, BasicFileAttributes attributes) {
+      this.path = path;
+      this.fileKey = attributes.fileKey();
+      this.length = attributes.size();
+      this.lastModified = attributes.lastModifiedTime().toMillis();
+    }
+
+    /**
+     * Is the given file still this copy, such as a new link to it.
+     */
+    private boolean isSameFile(BasicFileAttributes attributes) {
+      if (fileKey != null) {
+        return fileKey.equals(attributes.fileKey());
+      }
+      return
+          attributes.size() == length
+              && attributes.lastModifiedTime().toMillis() == lastModified;
+    }
+  }
+
+  /**
+   * The most recent exported copy of each content digest, for hard linking.
+   */
+  private final ConcurrentMap<String, Copy> byDigest = new ConcurrentHashMap<>();
+
+  private final Object pendingLock = new Object();
+  private int pending;
+
+  private final LongAdder copied = new LongAdder();
+  private final LongAdder linked = new LongAdder();
+  private final LongAdder skipped = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+
+  private FileExporter(ServletContext servletContext) {
+    this.servletContext = servletContext;
+    String directoryParam = servletContext.getInitParameter(DIRECTORY_INIT_PARAM);
+    if (directoryParam != null && !directoryParam.trim().isEmpty()) {
+      this.directory = Path.of(directoryParam.trim()).toAbsolutePath().normalize();
+      int threads = InitParameters.getInt(servletContext, THREADS_INIT_PARAM, Runtime.getRuntime().availableProcessors(), 1);
+      AtomicInteger threadCounter = new AtomicInteger();
+      this.executor = Executors.newFixedThreadPool(threads, r -> {
+        Thread thread = new Thread(r, FileExporter.class.getName() + ".copier-" + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    } else {
+      this.directory = null;
+      this.executor = null;
+    }
+  }
+
+  private void close() {
+    if (executor != null) {
+      executor.shutdown();
+      try {
+        if (!executor.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+          logger.warning("Export copies still in progress on shutdown");
+        }
+      } catch (InterruptedException e) {
+        // Restore the interrupted status
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Is exporting of files enabled.
+   */
+  public boolean isEnabled() {
+    return directory != null;
+  }
+
+  /**
+   * Queues the given file to be copied into the export tree, unless already queued with the same length and last
+   * modified time and either still in progress or still in the export tree, such as not removed before a later export.
+   * Directories are ignored.
+   */
+  public void export(PageRef pageRef, FileMetadata metadata) {
+    if (directory == null || metadata.isDirectory()) {
+      return;
+    }
+    String servletPath = pageRef.getServletPath();
+    Path target = directory.resolve(servletPath.substring(1)).normalize();
+    if (!target.startsWith(directory)) {
+      throw new IllegalArgumentException("Servlet path outside of export directory: " + servletPath);
+    }
+    FileMetadata previous = submitted.put(servletPath, metadata);
+    if (
+        previous != null
+            && previous.getLength() == metadata.getLength()
+            && previous.getLastModified() == metadata.getLastModified()
+            && (inProgress.contains(servletPath) || Files.exists(target))
+    ) {
+      return;
+    }
+    inProgress.add(servletPath);
+    synchronized (pendingLock) {
+      pending++;
+    }
+    try {
+      executor.execute(() -> {
+        try {
+          copy(metadata, target);
+        } catch (IOException | RuntimeException e) {
+          failed.increment();
+          submitted.remove(servletPath, metadata);
+          logger.log(Level.WARNING, "Unable to export: " + servletPath, e);
+        } finally {
+          inProgress.remove(servletPath);
+          done();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // Shutting down
+      submitted.remove(servletPath, metadata);
+      inProgress.remove(servletPath);
+      done();
+    }
+  }
+
+  private void done() {
+    synchronized (pendingLock) {
+      pending--;
+      if (pending == 0) {
+        pendingLock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Waits for all queued copies to complete.
+   *
+   * @return  {@code true} when all copies completed, or {@code false} on timeout
+   */
+  public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    synchronized (pendingLock) {
+      while (pending > 0) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(pendingLock, remaining);
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Gets the number of files copied.
+   */
+  public long getCopied() {
+    return copied.sum();
+  }
+
+  /**
+   * Gets the number of files hard linked to identical content.
+   */
+  public long getLinked() {
+    return linked.sum();
+  }
+
+  /**
+   * Gets the number of files skipped since unchanged since the previous export.
+   */
+  public long getSkipped() {
+    return skipped.sum();
+  }
+
+  /**
+   * Gets the number of files that could not be exported.
+   */
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  private String getDigest(FileMetadata metadata) throws IOException {
+    String digest = FileDigestCache.getInstance(servletContext).getDigest(metadata);
+    if (digest == null) {
+      MessageDigest md;
+      try {
+        md = MessageDigest.getInstance(FileDigestCache.DEFAULT_ALGORITHM);
+      } catch (NoSuchAlgorithmException e) {
+        throw new IOException(e);
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+      try (FileChannel channel = FileChannel.open(metadata.getFile().toPath(), StandardOpenOption.READ)) {
+        while (channel.read(buffer) != -1) {
+          buffer.flip();
+          md.update(buffer);
+          buffer.clear();
+        }
+      }
+      digest = Base64.getUrlEncoder().withoutPadding().encodeToString(md.digest());
+    }
+    return digest;
+  }
+
+  private static void moveIntoPlace(Path temp, Path target) throws IOException {
+    try {
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private void copy(FileMetadata metadata, Path target) throws IOException {
+    String digest = null;
+    // Skip when unchanged since the previous export
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class);
+      if (attributes.isRegularFile() && attributes.size() == metadata.getLength()) {
+        if (attributes.lastModifiedTime().toMillis() == metadata.getLastModified()) {
+          skipped.increment();
+          return;
+        }
+        // A hard link has the last modified time of the copy it links to, so compare by digest instead
+        digest = getDigest(metadata);
+        Copy existing = byDigest.get(digest);
+        if (existing != null && existing.isSameFile(attributes)) {
+          skipped.increment();
+          return;
+        }
+      }
+    } catch (NoSuchFileException e) {
+      // Not yet exported
+    }
+    Path source = metadata.getFile().toPath();
+    if (digest == null) {
+      digest = getDigest(metadata);
+    }
+    Files.createDirectories(target.getParent());
+    Path temp = target.resolveSibling(target.getFileName() + "." + Thread.currentThread().getId() + ".tmp");
+    try {
+      Copy existing = byDigest.get(digest);
+      if (existing != null && !existing.path.equals(target)) {
+        try {
+          Files.deleteIfExists(temp);
+          Files.createLink(temp, existing.path);
+          // Verify the link, since the existing copy may have been rewritten with other content
+          if (existing.isSameFile(Files.readAttributes(temp, BasicFileAttributes.class))) {
+            moveIntoPlace(temp, target);
+            linked.increment();
+            return;
+          }
+          Files.delete(temp);
+        } catch (IOException | UnsupportedOperationException e) {
+          // Different filesystem or no hard link support, fall-back to copy
+          logger.log(Level.FINE, "Unable to link, copying instead: " + target, e);
+        }
+      }
+      try (
+          FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+          FileChannel out = FileChannel.open(
+              temp,
+              StandardOpenOption.WRITE,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING
+          )
+          ) {
+        long size = in.size();
+        long position = 0;
+        while (position < size) {
+          position += in.transferTo(position, size - position, out);
+        }
+      }
+      Files.setLastModifiedTime(temp, FileTime.fromMillis(metadata.getLastModified()));
+      Copy copy = new Copy(target, Files.readAttributes(temp, BasicFileAttributes.class));
+      moveIntoPlace(temp, target);
+      copied.increment();
+      // Replaces any copy since rewritten
+      byDigest.put(digest, copy);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+}
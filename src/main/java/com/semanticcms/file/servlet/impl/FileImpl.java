@@ -1,6 +1,6 @@
 /*
  * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
- * Copyright (C) 2013, 2014, 2015, 2016, 2017, 2019, 2020, 2021, 2022, 2024  AO Industries, Inc.
+ * Copyright (C) 2013, 2014, 2015, 2016, 2017, 2019, 2020, 2021, 2022, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,15 +23,19 @@
 
 package com.semanticcms.file.servlet.impl;
 
+import com.aoapps.encoding.Serialization;
 import com.aoapps.html.any.AnyA;
 import com.aoapps.html.any.AnyUnion_Palpable_Phrasing;
+import com.aoapps.html.servlet.DocumentEE;
+import com.aoapps.html.servlet.SerializationEE;
 import com.aoapps.io.buffer.BufferResult;
 import com.aoapps.lang.Strings;
 import com.aoapps.net.Path;
-import com.aoapps.net.URIEncoder;
 import com.aoapps.servlet.lastmodified.LastModifiedServlet;
 import com.semanticcms.core.model.NodeBodyWriter;
+import com.semanticcms.core.model.Page;
 import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.servlet.CurrentPage;
 import com.semanticcms.core.servlet.Headers;
 import com.semanticcms.core.servlet.PageIndex;
 import com.semanticcms.core.servlet.SemanticCMS;
@@ -40,6 +44,7 @@ import com.semanticcms.core.servlet.impl.LinkImpl;
 import com.semanticcms.file.servlet.FileUtils;
 import java.io.File;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.io.Writer;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -70,6 +75,16 @@ public final class FileImpl {
     void doBody(boolean discard) throws Ex, IOException, SkipPageException;
   }
 
+  /**
+   * The captured HTML of a file element, written when the page is written.
+   */
+  public static interface CapturedFile {
+    /**
+     * Writes the HTML.
+     */
+    void writeTo(Writer out) throws IOException;
+  }
+
   /**
    * Writes the file element HTML.
    *
@@ -82,17 +97,61 @@ public final class FileImpl {
       AnyUnion_Palpable_Phrasing<?, ?> content,
       com.semanticcms.file.model.File element
   ) throws ServletException, IOException {
+    doFileImpl(servletContext, request, response, content, element, false);
+  }
+
+  /**
+   * Captures the file element HTML to be written later, such as while held in the page cache.  When the HTML does not
+   * depend on the request, nothing is written and a captured representation is returned instead.  Provisional HTML is
+   * written again from the current state on every write, so it is never held in the page cache.
+   *
+   * @return  the captured representation or {@code null} when the HTML has been written to the content
+   */
+  public static CapturedFile captureFileImpl(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      AnyUnion_Palpable_Phrasing<?, ?> content,
+      com.semanticcms.file.model.File element
+  ) throws ServletException, IOException {
+    return doFileImpl(servletContext, request, response, content, element, true);
+  }
+
+  private static CapturedFile doFileImpl(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      AnyUnion_Palpable_Phrasing<?, ?> content,
+      com.semanticcms.file.model.File element,
+      boolean capture
+  ) throws ServletException, IOException {
+    FileMetrics metrics = FileMetrics.getInstance(servletContext);
+    metrics.recordRender();
     PageRef pageRef = element.getPageRef();
     // Find the local file, assuming relative to CVSWORK directory
-    File resourceFile = pageRef.getResourceFile(false, true);
+    long metadataStart = metrics.start();
+    FileMetadataPrefetch prefetch = FileMetadataPrefetch.getInstance(servletContext);
+    if (content != null) {
+      // The first file element rendered reads the files of the whole page at the same time
+      Page currentPage = CurrentPage.getCurrentPage(request);
+      prefetch.prefetchPage(servletContext, request, response, (currentPage == null) ? null : currentPage.getPageRef());
+    }
+    FileMetadata metadata = prefetch.getFileMetadata(request, pageRef);
+    metrics.recordMetadataTime(metadataStart);
+    File resourceFile = (metadata == null) ? null : metadata.getFile();
+    // Fall-back to any precomputed manifest when not available locally
+    FileManifest.Entry manifestEntry = (resourceFile == null)
+        ? FileManifest.getInstance(servletContext).getEntry(pageRef)
+        : null;
     // Check if is directory and filename matches required pattern for directory
     boolean isDirectory;
-    if (resourceFile == null) {
+    if (resourceFile == null && manifestEntry == null) {
+      metrics.recordBrokenPath();
       // In other book and not available, assume directory when ends in path separator
       isDirectory = pageRef.getPath().endsWith(Path.SEPARATOR_STRING);
     } else {
-      // In accessible book, use attributes
-      isDirectory = resourceFile.isDirectory();
+      // In accessible book or manifest, use attributes
+      isDirectory = (resourceFile != null) ? metadata.isDirectory() : manifestEntry.isDirectory();
       // When is a directory, must end in slash
       if (
           isDirectory
@@ -112,74 +171,328 @@ public final class FileImpl {
       // Determine if local file opening is allowed
       final boolean isOpenFileAllowed = FileUtils.isOpenFileAllowed(servletContext, request);
       final boolean isExporting = Headers.isExporting(request);
+      if (isExporting && resourceFile != null && !isDirectory) {
+        FileExporter.getInstance(servletContext).export(pageRef, metadata);
+      }
+      // Check for header disabling auto last modified
+      final boolean isLastModifiedDisabled = "false".equalsIgnoreCase(request.getHeader(LastModifiedServlet.LAST_MODIFIED_HEADER_NAME));
 
       String elemId = element.getId();
-      AnyA<?, ? extends AnyUnion_Palpable_Phrasing<?, ?>, ?, ?> a = content.a();
-      if (elemId != null) {
-        // TODO: To appendIdInPage, review other uses, too
-        a.id(PageIndex.getRefIdInPage(request, element.getPage(), elemId));
-      }
-      if (!hasBody) {
+      // TODO: To appendIdInPage, review other uses, too
+      String refId = (elemId == null) ? null : PageIndex.getRefIdInPage(request, element.getPage(), elemId);
+      if (hasBody) {
+        writeLink(servletContext, request, response, content, element, metadata, manifestEntry, isDirectory, body,
+            refId, null, isOpenFileAllowed, isExporting, isLastModifiedDisabled);
+      } else {
         // TODO: Class like core:link, where providing empty class disables automatic class selection here
-        a.clazz(SemanticCMS.getInstance(servletContext).getLinkCssClass(element));
+        String linkCssClass = SemanticCMS.getInstance(servletContext).getLinkCssClass(element);
+        if (capture) {
+          CapturedFile link = getCapturedLink(servletContext, request, response, pageRef, metadata, manifestEntry,
+              isDirectory, refId, linkCssClass, isOpenFileAllowed, isExporting, isLastModifiedDisabled);
+          if (link != null) {
+            return link;
+          }
+        }
+        LinkFragmentCache fragments = LinkFragmentCache.getInstance(servletContext);
+        LinkFragmentCache.Key key = fragments.getKey(
+            servletContext,
+            request,
+            response,
+            pageRef,
+            refId,
+            linkCssClass,
+            (resourceFile != null) ? metadata.getLength() : (manifestEntry != null) ? manifestEntry.getLength() : -1,
+            (resourceFile != null) ? metadata.getLastModified() : (manifestEntry != null) ? manifestEntry.getLastModified() : -1,
+            isOpenFileAllowed,
+            isExporting,
+            isLastModifiedDisabled
+        );
+        if (key == null) {
+          // URLs may be rewritten per session
+          writeLink(servletContext, request, response, content, element, metadata, manifestEntry, isDirectory, body,
+              refId, linkCssClass, isOpenFileAllowed, isExporting, isLastModifiedDisabled);
+        } else {
+          String fragment = fragments.get(key);
+          if (fragment == null) {
+            StringWriter fragmentOut = new StringWriter();
+            boolean provisional = writeLink(servletContext, request, response,
+                new DocumentEE(servletContext, request, response, fragmentOut), element, metadata, manifestEntry,
+                isDirectory, body, refId, linkCssClass, isOpenFileAllowed, isExporting, isLastModifiedDisabled);
+            fragment = fragmentOut.toString();
+            if (!provisional) {
+              fragments.put(key, fragment);
+            }
+          }
+          @SuppressWarnings("deprecation")
+          Writer unsafe = content.getRawUnsafe();
+          unsafe.write(fragment);
+        }
       }
-      if (
-          isOpenFileAllowed
-              && resourceFile != null
-              && !isExporting
-      ) {
-        a.href(response.encodeURL(resourceFile.toURI().toASCIIString()));
-      } else {
-        final String urlPath;
-        if (
-            resourceFile != null
-                && !isDirectory
-                // Check for header disabling auto last modified
-                && !"false".equalsIgnoreCase(request.getHeader(LastModifiedServlet.LAST_MODIFIED_HEADER_NAME))
-        ) {
-          // Include last modified on file
-          urlPath = request.getContextPath()
-              + pageRef.getServletPath()
-              + "?" + LastModifiedServlet.LAST_MODIFIED_PARAMETER_NAME
-              + "=" + LastModifiedServlet.encodeLastModified(resourceFile.lastModified());
+    }
+    return null;
+  }
+
+  /**
+   * Gets the representation of a captured link without a body, written when the page is written.  Final HTML is
+   * captured as a {@link CapturedLink}, while provisional HTML is captured as a {@link DeferredLink} that is written
+   * again from the current state of the background caches until final.
+   *
+   * @return  the captured link or {@code null} when the HTML depends on more than the captured values, such as a
+   *          broken path, opening local files, or URLs rewritten per session
+   */
+  private static CapturedFile getCapturedLink(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      PageRef pageRef,
+      FileMetadata metadata,
+      FileManifest.Entry manifestEntry,
+      boolean isDirectory,
+      String refId,
+      String linkCssClass,
+      boolean isOpenFileAllowed,
+      boolean isExporting,
+      boolean isLastModifiedDisabled
+  ) throws IOException {
+    File resourceFile = (metadata == null) ? null : metadata.getFile();
+    if (resourceFile == null && manifestEntry == null) {
+      return null;
+    }
+    if (isOpenFileAllowed && resourceFile != null && !isExporting) {
+      return null;
+    }
+    String prefix = HrefPrefixCache.getInstance(servletContext).getPrefix(request.getContextPath(), pageRef);
+    if (!response.encodeURL(prefix).equals(prefix)) {
+      return null;
+    }
+    boolean versioned = !isDirectory && !isLastModifiedDisabled;
+    String digest;
+    String thumbnailHref = null;
+    if (resourceFile != null) {
+      // Archive links are provisional, as are thumbnails and links while still generating in the background
+      boolean provisional = false;
+      if (!isExporting) {
+        if (isDirectory) {
+          provisional = DirectoryArchive.getInstance(servletContext).isEnabled();
         } else {
-          urlPath = request.getContextPath()
-              + pageRef.getServletPath();
+          ThumbnailCache thumbnails = ThumbnailCache.getInstance(servletContext);
+          if (thumbnails.isThumbnailable(metadata)) {
+            if (thumbnails.getThumbnail(metadata) != null) {
+              thumbnailHref = HrefPrefixCache.appendParameter(
+                  prefix,
+                  ThumbnailCache.THUMBNAIL_PARAMETER_NAME,
+                  ThumbnailCache.getVersion(metadata)
+              );
+            } else {
+              provisional = true;
+            }
+          }
         }
-        a.href(response.encodeURL(URIEncoder.encodeURI(urlPath)));
       }
+      if (versioned && !provisional) {
+        FileDigestCache digests = FileDigestCache.getInstance(servletContext);
+        digest = digests.getDigest(metadata);
+        provisional = digest == null && digests.isEnabled();
+      } else {
+        digest = null;
+      }
+      if (provisional) {
+        return new DeferredLink(
+            servletContext,
+            pageRef,
+            metadata,
+            refId,
+            linkCssClass,
+            prefix,
+            versioned,
+            isExporting,
+            SerializationEE.get(servletContext, request)
+        );
+      }
+    } else {
+      digest = versioned ? manifestEntry.getDigest() : null;
+    }
+    return new CapturedLink(
+        refId,
+        linkCssClass,
+        prefix,
+        (resourceFile != null) ? resourceFile.getName() : manifestEntry.getName(),
+        isDirectory,
+        versioned,
+        digest,
+        (resourceFile != null) ? metadata.getLastModified() : manifestEntry.getLastModified(),
+        isDirectory ? -1 : (resourceFile != null) ? metadata.getLength() : manifestEntry.getLength(),
+        thumbnailHref,
+        SerializationEE.get(servletContext, request) == Serialization.XML
+    );
+  }
+
+
+  /**
+   * Writes the link, followed by the size and any thumbnail or archive link when there is no body.
+   *
+   * @param  linkCssClass  the class of the link, only used when there is no body
+   *
+   * @return  {@code true} when the output is provisional, such as while the digest or thumbnail is being generated,
+   *          or depends on more than the fragment key, and must not be cached
+   */
+  private static boolean writeLink(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      AnyUnion_Palpable_Phrasing<?, ?> content,
+      com.semanticcms.file.model.File element,
+      FileMetadata metadata,
+      FileManifest.Entry manifestEntry,
+      boolean isDirectory,
+      BufferResult body,
+      String refId,
+      String linkCssClass,
+      boolean isOpenFileAllowed,
+      boolean isExporting,
+      boolean isLastModifiedDisabled
+  ) throws IOException {
+    PageRef pageRef = element.getPageRef();
+    File resourceFile = (metadata == null) ? null : metadata.getFile();
+    boolean hasBody = body.getLength() != 0;
+    boolean provisional = false;
+    AnyA<?, ? extends AnyUnion_Palpable_Phrasing<?, ?>, ?, ?> a = content.a();
+    if (refId != null) {
+      a.id(refId);
+    }
+    if (!hasBody) {
+      a.clazz(linkCssClass);
+    }
+    if (
+        isOpenFileAllowed
+            && resourceFile != null
+            && !isExporting
+    ) {
+      a.href(response.encodeURL(resourceFile.toURI().toASCIIString()));
+    } else {
+      final String href;
+      String prefix = HrefPrefixCache.getInstance(servletContext).getPrefix(request.getContextPath(), pageRef);
       if (
-          isOpenFileAllowed
-              && resourceFile != null
-              && !isExporting
+          (resourceFile != null || manifestEntry != null)
+              && !isDirectory
+              && !isLastModifiedDisabled
       ) {
-        a.onclick(onclick -> onclick
-            .append("semanticcms_openfile_servlet.openFile(").text(pageRef.getBook().getName()).append(", ").text(pageRef.getPath()).append("); return false;")
-        );
+        String digest;
+        if (resourceFile != null) {
+          FileDigestCache digests = FileDigestCache.getInstance(servletContext);
+          digest = digests.getDigest(metadata);
+          if (digest == null && digests.isEnabled()) {
+            // Still hashing in the background
+            provisional = true;
+          }
+        } else {
+          digest = manifestEntry.getDigest();
+        }
+        if (digest != null) {
+          // Include content digest on file
+          href = HrefPrefixCache.appendParameter(prefix, FileDigestCache.DIGEST_PARAMETER_NAME, digest);
+        } else {
+          // Include last modified on file
+          href = HrefPrefixCache.appendParameter(
+              prefix,
+              LastModifiedServlet.LAST_MODIFIED_PARAMETER_NAME,
+              LastModifiedServlet.encodeLastModified(
+                  (resourceFile != null) ? metadata.getLastModified() : manifestEntry.getLastModified()
+              )
+          );
+        }
+      } else {
+        href = prefix;
       }
-      a.__(a__ -> {
-        if (!hasBody) {
-          if (resourceFile == null) {
-            a__.text(text -> LinkImpl.writeBrokenPath(pageRef, text));
-          } else {
-            a__.text(resourceFile.getName());
-            if (isDirectory) {
-              a__.text(Path.SEPARATOR_CHAR);
-            }
+      a.href(response.encodeURL(href));
+    }
+    if (
+        isOpenFileAllowed
+            && resourceFile != null
+            && !isExporting
+    ) {
+      a.onclick(onclick -> onclick
+          .append("semanticcms_openfile_servlet.openFile(").text(pageRef.getBook().getName()).append(", ").text(pageRef.getPath()).append("); return false;")
+      );
+    }
+    a.__(a__ -> {
+      if (!hasBody) {
+        if (resourceFile != null) {
+          a__.text(resourceFile.getName());
+          if (isDirectory) {
+            a__.text(Path.SEPARATOR_CHAR);
+          }
+        } else if (manifestEntry != null) {
+          a__.text(manifestEntry.getName());
+          if (isDirectory) {
+            a__.text(Path.SEPARATOR_CHAR);
           }
         } else {
-          @SuppressWarnings("deprecation")
-          Writer unsafe = a__.getRawUnsafe();
-          body.writeTo(new NodeBodyWriter(element, unsafe, new ServletElementContext(servletContext, request, response)));
+          a__.text(text -> LinkImpl.writeBrokenPath(pageRef, text));
+        }
+      } else {
+        @SuppressWarnings("deprecation")
+        Writer unsafe = a__.getRawUnsafe();
+        body.writeTo(new NodeBodyWriter(element, unsafe, new ServletElementContext(servletContext, request, response)));
+      }
+    });
+    if (
+        !hasBody
+            && (resourceFile != null || manifestEntry != null)
+            && !isDirectory
+    ) {
+      content.text(" (").text(Strings.getApproximateSize(
+          (resourceFile != null) ? metadata.getLength() : manifestEntry.getLength()
+      )).text(')');
+      // Thumbnail of images, with a placeholder until generated in the background
+      if (resourceFile != null && !isExporting) {
+        ThumbnailCache thumbnails = ThumbnailCache.getInstance(servletContext);
+        if (thumbnails.isThumbnailable(metadata)) {
+          content.text(' ');
+          if (thumbnails.getThumbnail(metadata) != null) {
+            String thumbnailHref = HrefPrefixCache.appendParameter(
+                HrefPrefixCache.getInstance(servletContext).getPrefix(request.getContextPath(), pageRef),
+                ThumbnailCache.THUMBNAIL_PARAMETER_NAME,
+                ThumbnailCache.getVersion(metadata)
+            );
+            content.img()
+                .clazz("semanticcms-file-thumbnail")
+                .src(response.encodeURL(thumbnailHref))
+                .alt(resourceFile.getName())
+                .__();
+          } else {
+            content.span()
+                .clazz("semanticcms-file-thumbnail-placeholder")
+                .style("display:inline-block;width:" + thumbnails.getSize() + "px;height:" + thumbnails.getSize() + "px")
+                .__();
+            provisional = true;
+          }
+        }
+      }
+    }
+    // Archive of directories, with the size of the cached archive or otherwise the total size of its files.  The tree
+    // is read in the background, and the archive link is left out until it has been read.
+    if (!hasBody && resourceFile != null && isDirectory && !isExporting) {
+      DirectoryArchive archives = DirectoryArchive.getInstance(servletContext);
+      if (archives.isEnabled()) {
+        // The fingerprint of the tree is not part of the fragment key
+        provisional = true;
+        DirectoryArchive.Tree tree = archives.getTreeInBackground(resourceFile);
+        if (tree != null && !tree.isTooLarge()) {
+          File cached = archives.getCachedArchive(tree);
+          String archiveHref = HrefPrefixCache.appendParameter(
+              HrefPrefixCache.getInstance(servletContext).getPrefix(request.getContextPath(), pageRef),
+              DirectoryArchive.ARCHIVE_PARAMETER_NAME,
+              tree.getFingerprint()
+          );
+          content.text(" (");
+          content.a().href(response.encodeURL(archiveHref)).__(archive__ -> archive__.text("zip"));
+          content.text(", ").text(Strings.getApproximateSize(
+              (cached != null) ? cached.length() : tree.getTotalLength()
+          )).text(')');
         }
-      });
-      if (
-          !hasBody
-              && resourceFile != null
-              && !isDirectory
-      ) {
-        content.text(" (").text(Strings.getApproximateSize(resourceFile.length())).text(')');
       }
     }
+    return provisional;
   }
 }
@@ -0,0 +1,481 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import com.semanticcms.core.model.PageRef;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Precomputed file metadata for books whose sources are not available locally, so links to their files remain
+ * versioned and sized without filesystem access.
+ *
+ * <p>A manifest is generated for each book at build time, by running this class:</p>
+ * <pre>java com.semanticcms.file.servlet.impl.FileManifest <i>book</i> <i>sourceDirectory</i> <i>manifestFile</i> [<i>digestAlgorithm</i>]</pre>
+ *
+ * <p>When a digest algorithm is given, it should match {@link FileDigestCache#ALGORITHM_INIT_PARAM}, and content
+ * digests are included.  Hidden files, with names beginning with a period, are not included.</p>
+ *
+ * <p>The manifest is a compact binary hash table, memory-mapped on application start-up for constant time lookup
+ * directly from the mapped pages.  All manifests in the configured directory, with the extension
+ * {@value #EXTENSION}, are loaded.  Each manifest records the name of its book.</p>
+ *
+ * <p>Configured by context init parameters:</p>
+ * <ul>
+ *   <li>{@link #DIRECTORY_INIT_PARAM} - The directory holding the manifests (default none, disabled)</li>
+ * </ul>
+ */
+public final class FileManifest {
+
+  private static final Logger logger = Logger.getLogger(FileManifest.class.getName());
+
+  private static final String APPLICATION_ATTRIBUTE = FileManifest.class.getName();
+
+  /**
+   * The context init parameter for the directory holding the manifests.
+   */
+  public static final String DIRECTORY_INIT_PARAM = FileManifest.class.getName() + ".directory";
+
+  /**
+   * The filename extension of manifests.
+   */
+  public static final String EXTENSION = ".manifest";
+
+  /**
+   * Identifies the file format.
+   */
+  private static final int MAGIC = 0x53434d46;
+
+  private static final int VERSION = 1;
+
+  private static final byte FLAG_DIRECTORY = 1;
+  private static final byte FLAG_DIGEST = 2;
+
+  /**
+   * Loads the manifests on application start-up.
+   */
+  @WebListener("Loads the file metadata manifests on application start-up.")
+  public static class Initializer implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+      getInstance(event.getServletContext());
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+      // Mapped buffers are released when no longer reachable
+      event.getServletContext().removeAttribute(APPLICATION_ATTRIBUTE);
+    }
+  }
+
+  /**
+   * Gets the manifests for the given servlet context.
+   */
+  public static FileManifest getInstance(ServletContext servletContext) {
+    FileManifest manifest = (FileManifest) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+    if (manifest == null) {
+      synchronized (servletContext) {
+        manifest = (FileManifest) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+        if (manifest == null) {
+          manifest = new FileManifest(servletContext);
+          servletContext.setAttribute(APPLICATION_ATTRIBUTE, manifest);
+        }
+      }
+    }
+    return manifest;
+  }
+
+  /**
+   * The metadata of one file or directory.
+   */
+  public static final class Entry {
+    private final String path;
+    private final boolean directory;
+    private final long length;
+    private final long lastModified;
+    private final String digest;
+
+    private Entry(String path, boolean directory, long length, long lastModified, String digest) {
+      this.path = path;
+      this.directory = directory;
+      this.length = length;
+      this.lastModified = lastModified;
+      this.digest = digest;
+    }
+
+    @Override
+    public String toString() {
+      return path;
+    }
+
+    /**
+     * Gets the book-relative path, ending in slash for directories.
+     */
+    public String getPath() {
+      return path;
+    }
+
+    /**
+     * Gets the filename, without any trailing slash.
+     */
+    public String getName() {
+      int end = directory ? path.length() - 1 : path.length();
+      return path.substring(path.lastIndexOf('/', end - 1) + 1, end);
+    }
+
+    /**
+     * Is this a directory.
+     */
+    public boolean isDirectory() {
+      return directory;
+    }
+
+    /**
+     * Gets the length, which is {@code -1} for directories.
+     */
+    public long getLength() {
+      return length;
+    }
+
+    /**
+     * Gets the last modified time.
+     */
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    /**
+     * Gets the content digest, encoded as URL-safe Base64 without padding.
+     *
+     * @return  the digest or {@code null} when not included in the manifest
+     */
+    public String getDigest() {
+      return digest;
+    }
+  }
+
+  /**
+   * A stable hash of a path, spreading the higher bits since the table size is a power of two.
+   */
+  private static int hash(String path) {
+    int h = path.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * One memory-mapped manifest.
+   *
+   * <p>Layout, all big-endian:</p>
+   * <ol>
+   *   <li>Header: magic (int), version (int), book name length (short), book name (UTF-8), entry count (int),
+   *       table size (int, a power of two)</li>
+   *   <li>Table: one int per slot, the offset of the record or zero when empty, probed linearly</li>
+   *   <li>Records: hash (int), path length (short), path (UTF-8), flags (byte), length (long),
+   *       last modified (long), and when {@link #FLAG_DIGEST}: digest length (byte), digest (ASCII)</li>
+   * </ol>
+   */
+  private static final class Mapped {
+    private final ByteBuffer buffer;
+    private final int tableOffset;
+    private final int mask;
+
+    private Mapped(ByteBuffer buffer, int tableOffset, int tableSize) {
+      this.buffer = buffer;
+      this.tableOffset = tableOffset;
+      this.mask = tableSize - 1;
+    }
+
+    /**
+     * Finds the entry for the given path.  Only absolute gets are used, so concurrent lookups are safe.
+     */
+    private Entry lookup(String path) {
+      int hash = hash(path);
+      byte[] key = path.getBytes(StandardCharsets.UTF_8);
+      for (int slot = hash & mask, probes = 0; probes <= mask; slot = (slot + 1) & mask, probes++) {
+        int offset = buffer.getInt(tableOffset + slot * Integer.BYTES);
+        if (offset == 0) {
+          return null;
+        }
+        if (buffer.getInt(offset) == hash && matches(offset + Integer.BYTES, key)) {
+          int pos = offset + Integer.BYTES + Short.BYTES + key.length;
+          byte flags = buffer.get(pos);
+          pos++;
+          long length = buffer.getLong(pos);
+          pos += Long.BYTES;
+          long lastModified = buffer.getLong(pos);
+          pos += Long.BYTES;
+          String digest;
+          if ((flags & FLAG_DIGEST) != 0) {
+            byte[] digestBytes = new byte[buffer.get(pos) & 0xff];
+            pos++;
+            for (int i = 0; i < digestBytes.length; i++) {
+              digestBytes[i] = buffer.get(pos + i);
+            }
+            digest = new String(digestBytes, StandardCharsets.US_ASCII);
+          } else {
+            digest = null;
+          }
+          return new Entry(path, (flags & FLAG_DIRECTORY) != 0, length, lastModified, digest);
+        }
+      }
+      return null;
+    }
+
+    private boolean matches(int pos, byte[] key) {
+      if ((buffer.getShort(pos) & 0xffff) != key.length) {
+        return false;
+      }
+      pos += Short.BYTES;
+      for (int i = 0; i < key.length; i++) {
+        if (buffer.get(pos + i) != key[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * The manifests by book name.
+   */
+  private final Map<String, Mapped> books;
+
+  private FileManifest(ServletContext servletContext) {
+    String directoryParam = servletContext.getInitParameter(DIRECTORY_INIT_PARAM);
+    Map<String, Mapped> loaded = new HashMap<>();
+    if (directoryParam != null && !directoryParam.trim().isEmpty()) {
+      Path directory = Path.of(directoryParam.trim());
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+        for (Path file : stream) {
+          try {
+            load(file, loaded);
+          } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Unable to load manifest: " + file, e);
+          }
+        }
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Unable to list manifests: " + directory, e);
+      }
+    }
+    this.books = loaded.isEmpty() ? Collections.emptyMap() : loaded;
+  }
+
+  private static void load(Path file, Map<String, Mapped> loaded) throws IOException {
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a manifest");
+    }
+    int version = buffer.getInt(Integer.BYTES);
+    if (version != VERSION) {
+      throw new IOException("Unsupported version: " + version);
+    }
+    int pos = Integer.BYTES * 2;
+    byte[] bookBytes = new byte[buffer.getShort(pos) & 0xffff];
+    pos += Short.BYTES;
+    for (int i = 0; i < bookBytes.length; i++) {
+      bookBytes[i] = buffer.get(pos + i);
+    }
+    pos += bookBytes.length;
+    String book = new String(bookBytes, StandardCharsets.UTF_8);
+    int count = buffer.getInt(pos);
+    pos += Integer.BYTES;
+    int tableSize = buffer.getInt(pos);
+    pos += Integer.BYTES;
+    if (Integer.bitCount(tableSize) != 1 || pos + (long) tableSize * Integer.BYTES > buffer.capacity()) {
+      throw new IOException("Invalid table size: " + tableSize);
+    }
+    if (loaded.putIfAbsent(book, new Mapped(buffer, pos, tableSize)) != null) {
+      logger.warning("Duplicate manifest for book \"" + book + "\", ignoring: " + file);
+    } else if (logger.isLoggable(Level.FINE)) {
+      logger.fine("Loaded manifest for book \"" + book + "\" with " + count + " entries: " + file);
+    }
+  }
+
+  /**
+   * Gets the manifest entry for the given page reference.
+   *
+   * @return  the entry or {@code null} when no manifest for the book or not found in the manifest
+   */
+  public Entry getEntry(PageRef pageRef) {
+    if (books.isEmpty()) {
+      return null;
+    }
+    Mapped mapped = books.get(pageRef.getBook().getName());
+    return (mapped == null) ? null : mapped.lookup(pageRef.getPath());
+  }
+
+  /**
+   * Writes a manifest of the given directory.
+   *
+   * @param  digestAlgorithm  the {@link MessageDigest} algorithm, or {@code null} to not include digests
+   */
+  public static void write(String book, Path root, Path manifestFile, String digestAlgorithm) throws IOException, NoSuchAlgorithmException {
+    MessageDigest md = (digestAlgorithm == null) ? null : MessageDigest.getInstance(digestAlgorithm);
+    List<Entry> entries = new ArrayList<>();
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      private String toPath(Path file, boolean directory) {
+        StringBuilder path = new StringBuilder();
+        for (Path name : root.relativize(file)) {
+          String segment = name.toString();
+          if (!segment.isEmpty()) {
+            path.append('/').append(segment);
+          }
+        }
+        if (directory || path.length() == 0) {
+          path.append('/');
+        }
+        return path.toString();
+      }
+
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        if (!dir.equals(root) && dir.getFileName().toString().startsWith(".")) {
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        entries.add(new Entry(toPath(dir, true), true, -1, attrs.lastModifiedTime().toMillis(), null));
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        if (file.getFileName().toString().startsWith(".") || attrs.isDirectory()) {
+          return FileVisitResult.CONTINUE;
+        }
+        String digest;
+        if (md != null) {
+          md.reset();
+          byte[] buff = new byte[8192];
+          try (InputStream in = Files.newInputStream(file)) {
+            int count;
+            while ((count = in.read(buff)) != -1) {
+              md.update(buff, 0, count);
+            }
+          }
+          digest = Base64.getUrlEncoder().withoutPadding().encodeToString(md.digest());
+        } else {
+          digest = null;
+        }
+        entries.add(new Entry(toPath(file, false), false, attrs.size(), attrs.lastModifiedTime().toMillis(), digest));
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    // Records, with offsets relative to the start of the records
+    byte[] bookBytes = book.getBytes(StandardCharsets.UTF_8);
+    int tableSize = Integer.highestOneBit(Math.max(entries.size() * 2 - 1, 1)) << 1;
+    int recordsOffset = Integer.BYTES * 2 + Short.BYTES + bookBytes.length + Integer.BYTES * 2 + tableSize * Integer.BYTES;
+    int[] table = new int[tableSize];
+    ByteArrayOutputStream recordsBytes = new ByteArrayOutputStream();
+    DataOutputStream records = new DataOutputStream(recordsBytes);
+    for (Entry entry : entries) {
+      int offset = recordsOffset + records.size();
+      int hash = hash(entry.path);
+      byte[] pathBytes = entry.path.getBytes(StandardCharsets.UTF_8);
+      if (pathBytes.length > 0xffff) {
+        throw new IOException("Path too long: " + entry.path);
+      }
+      records.writeInt(hash);
+      records.writeShort(pathBytes.length);
+      records.write(pathBytes);
+      records.writeByte((entry.directory ? FLAG_DIRECTORY : 0) | (entry.digest != null ? FLAG_DIGEST : 0));
+      records.writeLong(entry.length);
+      records.writeLong(entry.lastModified);
+      if (entry.digest != null) {
+        byte[] digestBytes = entry.digest.getBytes(StandardCharsets.US_ASCII);
+        records.writeByte(digestBytes.length);
+        records.write(digestBytes);
+      }
+      int slot = hash & (tableSize - 1);
+      while (table[slot] != 0) {
+        slot = (slot + 1) & (tableSize - 1);
+      }
+      table[slot] = offset;
+    }
+    records.flush();
+    Path tempFile = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+    try (
+        OutputStream fileOut = Files.newOutputStream(tempFile);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))
+        ) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeShort(bookBytes.length);
+      out.write(bookBytes);
+      out.writeInt(entries.size());
+      out.writeInt(tableSize);
+      for (int offset : table) {
+        out.writeInt(offset);
+      }
+      recordsBytes.writeTo(out);
+    }
+    Files.move(tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Writes a manifest at build time.
+   *
+   * @param  args  <i>book</i> <i>sourceDirectory</i> <i>manifestFile</i> [<i>digestAlgorithm</i>]
+   */
+  @SuppressWarnings("UseOfSystemOutOrSystemErr")
+  public static void main(String[] args) throws IOException, NoSuchAlgorithmException {
+    if (args.length < 3 || args.length > 4) {
+      System.err.println("usage: " + FileManifest.class.getName() + " book sourceDirectory manifestFile [digestAlgorithm]");
+      System.exit(1);
+    } else {
+      write(args[0], Path.of(args[1]), Path.of(args[2]), args.length == 4 ? args[3] : null);
+    }
+  }
+}
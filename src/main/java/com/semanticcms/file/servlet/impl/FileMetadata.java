@@ -0,0 +1,110 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * The attributes of a resource file, as read in a single filesystem call.
+ */
+public final class FileMetadata {
+
+  /**
+   * Reads the attributes of the given file in a single call.
+   *
+   * @return  the attributes or {@code null} when the file does not exist
+   */
+  public static FileMetadata readFileMetadata(File file) throws IOException {
+    BasicFileAttributes attributes;
+    try {
+      attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+    return new FileMetadata(
+        file,
+        attributes.isDirectory(),
+        attributes.size(),
+        attributes.lastModifiedTime().toMillis()
+    );
+  }
+
+  private final File file;
+  private final boolean directory;
+  private final long length;
+  private final long lastModified;
+
+  /**
+   * Creates new file metadata.
+   */
+  public FileMetadata(File file, boolean directory, long length, long lastModified) {
+    this.file = file;
+    this.directory = directory;
+    this.length = length;
+    this.lastModified = lastModified;
+  }
+
+  @Override
+  public String toString() {
+    return file.toString();
+  }
+
+  /**
+   * Gets the resource file.
+   */
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Is the resource file a directory.
+   *
+   * @see  File#isDirectory()
+   */
+  public boolean isDirectory() {
+    return directory;
+  }
+
+  /**
+   * Gets the length of the resource file.
+   *
+   * @see  File#length()
+   */
+  public long getLength() {
+    return length;
+  }
+
+  /**
+   * Gets the last modified time of the resource file.
+   *
+   * @see  File#lastModified()
+   */
+  public long getLastModified() {
+    return lastModified;
+  }
+}
@@ -0,0 +1,596 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import com.semanticcms.core.model.PageRef;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * An application-scope cache of {@link FileMetadata}, which avoids repeated filesystem calls for the same
+ * resource files on every render.
+ *
+ * <p>Entries are keyed by absolute, normalized path.  The parent directory of each cached file is registered with
+ * a {@link WatchService}, and entries are invalidated as changes are reported.  Cached directories are also watched
+ * themselves, since the last modified time of a directory changes with its entries.  When a directory cannot be
+ * watched, too many directories are already watched, or watching is disabled, entries expire after a time-to-live
+ * instead.  Note that a {@link WatchService} is not
+ * notified of changes made by other hosts on network filesystems, so {@link #WATCH_INIT_PARAM} should be set to
+ * {@code false} on shared storage.</p>
+ *
+ * <p>The cache is bounded and evicts the least recently used entries once full.  Directories are no longer watched
+ * once no entries depend on them.</p>
+ *
+ * <p>Configured by context init parameters:</p>
+ * <ul>
+ *   <li>{@link #ENABLED_INIT_PARAM} - When {@code false}, bypasses the cache and reads attributes directly (default {@code true})</li>
+ *   <li>{@link #MAX_SIZE_INIT_PARAM} - The maximum number of entries (default {@value #DEFAULT_MAX_SIZE})</li>
+ *   <li>{@link #TTL_INIT_PARAM} - The time-to-live, in milliseconds, for entries not invalidated by watching (default {@value #DEFAULT_TTL})</li>
+ *   <li>{@link #WATCH_INIT_PARAM} - When {@code false}, does not use a {@link WatchService} and relies on time-to-live only (default {@code true})</li>
+ *   <li>{@link #MAX_WATCHED_INIT_PARAM} - The maximum number of watched directories (default {@value #DEFAULT_MAX_WATCHED})</li>
+ * </ul>
+ */
+public final class FileMetadataCache {
+
+  private static final Logger logger = Logger.getLogger(FileMetadataCache.class.getName());
+
+  private static final String APPLICATION_ATTRIBUTE = FileMetadataCache.class.getName();
+
+  /**
+   * The context init parameter to enable or disable the cache.
+   */
+  public static final String ENABLED_INIT_PARAM = FileMetadataCache.class.getName() + ".enabled";
+
+  /**
+   * The context init parameter for the maximum number of entries.
+   */
+  public static final String MAX_SIZE_INIT_PARAM = FileMetadataCache.class.getName() + ".maxSize";
+
+  /**
+   * The default maximum number of entries.
+   */
+  public static final int DEFAULT_MAX_SIZE = 100000;
+
+  /**
+   * The context init parameter for the time-to-live, in milliseconds.
+   */
+  public static final String TTL_INIT_PARAM = FileMetadataCache.class.getName() + ".ttl";
+
+  /**
+   * The default time-to-live, in milliseconds.
+   */
+  public static final long DEFAULT_TTL = 10000;
+
+  /**
+   * The context init parameter to enable or disable watching for changes.
+   */
+  public static final String WATCH_INIT_PARAM = FileMetadataCache.class.getName() + ".watch";
+
+  /**
+   * The context init parameter for the maximum number of watched directories.
+   */
+  public static final String MAX_WATCHED_INIT_PARAM = FileMetadataCache.class.getName() + ".maxWatched";
+
+  /**
+   * The default maximum number of watched directories, well within the default per-user limit of inotify watches.
+   */
+  public static final int DEFAULT_MAX_WATCHED = 4096;
+
+  /**
+   * Closes the watch service on application shutdown.
+   */
+  @WebListener("Closes the file metadata cache watch service on application shutdown.")
+  public static class Initializer implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+      // Created on start, so any invalid context init parameters are logged on start
+      getInstance(event.getServletContext());
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+      ServletContext servletContext = event.getServletContext();
+      FileMetadataCache cache = (FileMetadataCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+      if (cache != null) {
+        servletContext.removeAttribute(APPLICATION_ATTRIBUTE);
+        cache.close();
+      }
+    }
+  }
+
+  /**
+   * Gets the cache for the given servlet context.
+   */
+  public static FileMetadataCache getInstance(ServletContext servletContext) {
+    FileMetadataCache cache = (FileMetadataCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+    if (cache == null) {
+      synchronized (servletContext) {
+        cache = (FileMetadataCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+        if (cache == null) {
+          cache = new FileMetadataCache(servletContext);
+          servletContext.setAttribute(APPLICATION_ATTRIBUTE, cache);
+        }
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Marks a cached non-existent file.
+   */
+  private static final FileMetadata NOT_FOUND = new FileMetadata(new File(""), false, 0, 0);
+
+  private static class Entry {
+    private final FileMetadata metadata;
+    private final long expiresNanos;
+    /**
+     * The {@link System#nanoTime()} of the most recent access, used for least recently used eviction.
+     */
+    private volatile long lastAccessed;
+
+    private Entry(FileMetadata metadata, long expiresNanos, long lastAccessed) {
+      this.metadata = metadata;
+      this.expiresNanos = expiresNanos;
+      this.lastAccessed = lastAccessed;
+    }
+  }
+
+  private final FileMetrics metrics;
+  private final boolean enabled;
+  private final int maxSize;
+  private final long ttlNanos;
+  private final boolean watch;
+  private final int maxWatched;
+
+  private final ConcurrentMap<Path, Entry> entries = new ConcurrentHashMap<>();
+
+  /**
+   * Increments on every invalidation, used to detect an invalidation racing with an attribute read.
+   */
+  private final AtomicLong invalidationCounter = new AtomicLong();
+
+  private final AtomicBoolean evicting = new AtomicBoolean();
+
+  /**
+   * The watched directories, mapped to {@link Boolean#TRUE} when successfully watched or {@link Boolean#FALSE} when
+   * the directory could not be watched.
+   */
+  private final ConcurrentMap<Path, Boolean> watchedDirectories = new ConcurrentHashMap<>();
+
+  private final Object watchServiceLock = new Object();
+  private WatchService watchService;
+  private boolean closed;
+
+  /**
+   * The watch key of each successfully watched directory, to be cancelled once no longer needed.
+   */
+  private final Map<Path, WatchKey> watchKeys = new HashMap<>();
+
+  /**
+   * The {@link System#nanoTime()} of the most recent pruning of the watched directories, to limit pruning once full.
+   */
+  private long lastPruned;
+
+  private FileMetadataCache(ServletContext servletContext) {
+    this.metrics = FileMetrics.getInstance(servletContext);
+    this.enabled = InitParameters.getBoolean(servletContext, ENABLED_INIT_PARAM, true);
+    this.maxSize = InitParameters.getInt(servletContext, MAX_SIZE_INIT_PARAM, DEFAULT_MAX_SIZE, 1);
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(InitParameters.getLong(servletContext, TTL_INIT_PARAM, DEFAULT_TTL, 0));
+    this.watch = InitParameters.getBoolean(servletContext, WATCH_INIT_PARAM, true);
+    this.maxWatched = InitParameters.getInt(servletContext, MAX_WATCHED_INIT_PARAM, DEFAULT_MAX_WATCHED, 0);
+    this.lastPruned = System.nanoTime() - ttlNanos;
+  }
+
+  /**
+   * Is the cache enabled.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Gets the metadata for the resource file of the given page, using cached metadata when available.
+   *
+   * @return  the metadata or {@code null} when the book is not available locally or the file does not exist
+   *
+   * @see  PageRef#getResourceFile(boolean, boolean)
+   */
+  public FileMetadata getFileMetadata(PageRef pageRef) throws IOException {
+    File resourceFile = pageRef.getResourceFile(false, false);
+    return resourceFile == null ? null : getFileMetadata(resourceFile);
+  }
+
+  /**
+   * Gets the metadata for the given file, using cached metadata when available.
+   *
+   * @return  the metadata or {@code null} when the file does not exist
+   */
+  public FileMetadata getFileMetadata(File file) throws IOException {
+    if (!enabled) {
+      return FileMetadata.readFileMetadata(file);
+    }
+    Path path = file.toPath().toAbsolutePath().normalize();
+    Entry entry = entries.get(path);
+    if (entry != null) {
+      if (entry.expiresNanos == Long.MAX_VALUE || entry.expiresNanos - System.nanoTime() > 0) {
+        entry.lastAccessed = System.nanoTime();
+        FileMetadata metadata = entry.metadata;
+        return metadata == NOT_FOUND ? null : metadata;
+      }
+      entries.remove(path, entry);
+    }
+    // Counted before watching, since a directory may stop being watched at any time
+    long invalidations = invalidationCounter.get();
+    // Watch before reading so no changes are missed
+    boolean watched = watchDirectory(path.getParent());
+    FileMetadata metadata = FileMetadata.readFileMetadata(file);
+    if (watched && metadata != null && metadata.isDirectory()) {
+      // Changes to the entries of a directory, and thus its last modified time, are reported to the directory itself
+      boolean wasWatched = Boolean.TRUE.equals(watchedDirectories.get(path));
+      if (!watchDirectory(path)) {
+        watched = false;
+      } else if (!wasWatched) {
+        // Read again, since may have changed before being watched
+        metadata = FileMetadata.readFileMetadata(file);
+      }
+    }
+    long now = System.nanoTime();
+    Entry newEntry = new Entry(
+        metadata == null ? NOT_FOUND : metadata,
+        watched ? Long.MAX_VALUE : (now + ttlNanos),
+        now
+    );
+    entries.put(path, newEntry);
+    if (invalidationCounter.get() != invalidations) {
+      // Invalidated while reading, do not trust the new entry
+      entries.remove(path, newEntry);
+    }
+    if (entries.size() > maxSize) {
+      evict();
+    }
+    return metadata;
+  }
+
+  /**
+   * Gets the invalidation counter, to be read before reading attributes passed to
+   * {@link #preload(com.semanticcms.file.servlet.impl.FileMetadata, long)}.
+   */
+  long getInvalidations() {
+    return invalidationCounter.get();
+  }
+
+  /**
+   * Watches the given directory before its entries are read for {@link #preload(com.semanticcms.file.servlet.impl.FileMetadata, long)}.
+   *
+   * @return  {@code true} when the directory is being watched
+   */
+  boolean watch(File directory) {
+    return enabled && watchDirectory(directory.toPath().toAbsolutePath().normalize());
+  }
+
+  /**
+   * Adds metadata read in bulk, such as by a directory scan, when not already cached.  The parent directory must have
+   * been {@linkplain #watch(java.io.File) watched} before reading the attributes.
+   *
+   * @param  invalidations  the value of {@link #getInvalidations()} before the attributes were read
+   *
+   * @return  {@code false} when the cache is full and no more should be added
+   */
+  boolean preload(FileMetadata metadata, long invalidations) {
+    return preload(metadata, invalidations, -1);
+  }
+
+  /**
+   * Adds metadata from a persisted snapshot, when not already cached.  These entries are not watched and expire after
+   * the given time-to-live unless revalidated by {@link #revalidate(java.io.File)}.
+   *
+   * @return  {@code false} when the cache is full and no more should be added
+   */
+  boolean preloadUnvalidated(FileMetadata metadata, long ttlNanos) {
+    return preload(metadata, invalidationCounter.get(), ttlNanos);
+  }
+
+  private boolean preload(FileMetadata metadata, long invalidations, long unvalidatedTtlNanos) {
+    if (!enabled || entries.size() >= maxSize) {
+      return false;
+    }
+    Path path = metadata.getFile().toPath().toAbsolutePath().normalize();
+    long now = System.nanoTime();
+    long expiresNanos;
+    if (unvalidatedTtlNanos >= 0) {
+      expiresNanos = now + unvalidatedTtlNanos;
+    } else {
+      boolean watched = Boolean.TRUE.equals(watchedDirectories.get(path.getParent()))
+          && (!metadata.isDirectory() || Boolean.TRUE.equals(watchedDirectories.get(path)));
+      expiresNanos = watched ? Long.MAX_VALUE : (now + ttlNanos);
+    }
+    Entry newEntry = new Entry(metadata, expiresNanos, now);
+    if (entries.putIfAbsent(path, newEntry) == null && invalidationCounter.get() != invalidations) {
+      // Invalidated while reading, do not trust the new entry
+      entries.remove(path, newEntry);
+    }
+    return true;
+  }
+
+  /**
+   * Re-reads the metadata of the given file unless already cached with a watched entry, replacing any entry loaded
+   * from a snapshot.
+   */
+  void revalidate(File file) throws IOException {
+    if (!enabled) {
+      return;
+    }
+    Path path = file.toPath().toAbsolutePath().normalize();
+    Entry entry = entries.get(path);
+    if (entry != null && entry.expiresNanos != Long.MAX_VALUE) {
+      entries.remove(path, entry);
+    }
+    getFileMetadata(file);
+  }
+
+  /**
+   * Gets all currently cached metadata for files that exist.
+   */
+  List<FileMetadata> getAll() {
+    List<FileMetadata> all = new ArrayList<>(entries.size());
+    for (Entry entry : entries.values()) {
+      if (entry.metadata != NOT_FOUND) {
+        all.add(entry.metadata);
+      }
+    }
+    return all;
+  }
+
+  /**
+   * Removes any cached metadata for the given file.
+   */
+  public void invalidate(File file) {
+    invalidate(file.toPath().toAbsolutePath().normalize());
+  }
+
+  private void invalidate(Path path) {
+    invalidationCounter.incrementAndGet();
+    entries.remove(path);
+  }
+
+  /**
+   * Removes all cached metadata for the given directory and the files directly within it.
+   */
+  private void invalidateDirectory(Path directory) {
+    invalidationCounter.incrementAndGet();
+    entries.keySet().removeIf(path -> directory.equals(path) || directory.equals(path.getParent()));
+  }
+
+  /**
+   * Removes all cached metadata.
+   */
+  public void clear() {
+    invalidationCounter.incrementAndGet();
+    entries.clear();
+  }
+
+  /**
+   * Evicts the least recently used entries down to 90% of the maximum size.  Only one thread evicts at a time, other
+   * threads continue without waiting.
+   */
+  private void evict() {
+    if (evicting.compareAndSet(false, true)) {
+      try {
+        int toRemove = entries.size() - (maxSize - maxSize / 10);
+        if (toRemove > 0) {
+          List<Map.Entry<Path, Entry>> snapshot = new ArrayList<>(entries.entrySet());
+          snapshot.sort(Comparator.comparingLong(e -> e.getValue().lastAccessed));
+          for (int i = 0, size = Math.min(toRemove, snapshot.size()); i < size; i++) {
+            Map.Entry<Path, Entry> e = snapshot.get(i);
+            entries.remove(e.getKey(), e.getValue());
+          }
+          pruneWatches();
+        }
+      } finally {
+        evicting.set(false);
+      }
+    }
+  }
+
+  /**
+   * Stops watching the directories no longer needed by any entry, so the watched directories remain bounded as
+   * entries are evicted or invalidated.  Any entries read while a directory was still watched are invalidated.
+   */
+  private void pruneWatches() {
+    Set<Path> needed = new HashSet<>();
+    for (Map.Entry<Path, Entry> e : entries.entrySet()) {
+      Path path = e.getKey();
+      Path parent = path.getParent();
+      if (parent != null) {
+        needed.add(parent);
+      }
+      if (e.getValue().metadata.isDirectory()) {
+        needed.add(path);
+      }
+    }
+    synchronized (watchServiceLock) {
+      lastPruned = System.nanoTime();
+      Iterator<Path> iter = watchedDirectories.keySet().iterator();
+      while (iter.hasNext()) {
+        Path directory = iter.next();
+        if (!needed.contains(directory)) {
+          iter.remove();
+          WatchKey key = watchKeys.remove(directory);
+          if (key != null) {
+            key.cancel();
+          }
+          invalidateDirectory(directory);
+        }
+      }
+    }
+  }
+
+  /**
+   * Registers the given directory with the watch service, if not already registered.
+   *
+   * @return  {@code true} when the directory is being watched, or {@code false} when entries must rely on time-to-live
+   */
+  private boolean watchDirectory(Path directory) {
+    if (!watch || directory == null) {
+      return false;
+    }
+    Boolean watched = watchedDirectories.get(directory);
+    if (watched == null) {
+      long lockStart = metrics.start();
+      synchronized (watchServiceLock) {
+        metrics.recordLockWaitTime(lockStart);
+        watched = watchedDirectories.get(directory);
+        if (watched == null) {
+          if (watchedDirectories.size() >= maxWatched) {
+            if (System.nanoTime() - lastPruned >= ttlNanos) {
+              pruneWatches();
+            }
+            if (watchedDirectories.size() >= maxWatched) {
+              // Not remembered, so watched once there is room
+              return false;
+            }
+          }
+          watched = false;
+          if (!closed) {
+            try {
+              if (watchService == null) {
+                watchService = FileSystems.getDefault().newWatchService();
+                Thread watcher = new Thread(this::watch, FileMetadataCache.class.getName() + ".watcher");
+                watcher.setDaemon(true);
+                watcher.start();
+              }
+              WatchKey key = directory.register(
+                  watchService,
+                  StandardWatchEventKinds.ENTRY_CREATE,
+                  StandardWatchEventKinds.ENTRY_DELETE,
+                  StandardWatchEventKinds.ENTRY_MODIFY
+              );
+              watchKeys.put(directory, key);
+              watched = true;
+            } catch (IOException | UnsupportedOperationException e) {
+              logger.log(Level.FINE, "Unable to watch directory, using time-to-live: " + directory, e);
+            }
+          }
+          watchedDirectories.put(directory, watched);
+        }
+      }
+    }
+    return watched;
+  }
+
+  /**
+   * Processes watch events until the watch service is closed.
+   */
+  private void watch() {
+    WatchService ws;
+    synchronized (watchServiceLock) {
+      ws = watchService;
+    }
+    try {
+      while (true) {
+        WatchKey key = ws.take();
+        Path directory = (Path) key.watchable();
+        try {
+          boolean entriesChanged = false;
+          for (WatchEvent<?> event : key.pollEvents()) {
+            WatchEvent.Kind<?> kind = event.kind();
+            if (kind == StandardWatchEventKinds.OVERFLOW) {
+              invalidateDirectory(directory);
+            } else {
+              invalidate(directory.resolve((Path) event.context()));
+              if (kind != StandardWatchEventKinds.ENTRY_MODIFY) {
+                entriesChanged = true;
+              }
+            }
+          }
+          if (entriesChanged) {
+            // The last modified time of the directory itself
+            invalidate(directory);
+          }
+        } catch (RuntimeException e) {
+          logger.log(Level.SEVERE, null, e);
+          invalidateDirectory(directory);
+        }
+        if (!key.reset()) {
+          // Directory no longer accessible or no longer watched
+          synchronized (watchServiceLock) {
+            if (watchKeys.remove(directory, key)) {
+              watchedDirectories.remove(directory);
+            }
+          }
+          invalidateDirectory(directory);
+        }
+      }
+    } catch (ClosedWatchServiceException e) {
+      // Normal shutdown
+    } catch (InterruptedException e) {
+      // Restore the interrupted status
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void close() {
+    synchronized (watchServiceLock) {
+      closed = true;
+      if (watchService != null) {
+        try {
+          watchService.close();
+        } catch (IOException e) {
+          logger.log(Level.WARNING, null, e);
+        }
+        watchService = null;
+      }
+      watchedDirectories.clear();
+      watchKeys.clear();
+    }
+    clear();
+  }
+}
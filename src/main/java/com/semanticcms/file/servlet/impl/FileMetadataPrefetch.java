@@ -0,0 +1,385 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import com.aoapps.net.Path;
+import com.semanticcms.core.model.Element;
+import com.semanticcms.core.model.Page;
+import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.servlet.CaptureLevel;
+import com.semanticcms.core.servlet.CapturePage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.annotation.WebListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Reads the metadata of every file element on a page at the same time, instead of one at a time while rendering, so
+ * pages with many files on network storage do not wait on many serial rounds of filesystem calls.
+ *
+ * <p>{@link FileImpl} prefetches the current page when rendering its first file element at {@link CaptureLevel#BODY},
+ * using the page captured at {@link CaptureLevel#META}, which is usually already captured by the time the body is
+ * rendered.  Views may also call {@link #prefetch(javax.servlet.ServletRequest, com.semanticcms.core.model.Page)}
+ * earlier.  The results are held for the rest of the request and used by {@link FileImpl} in place of reading each
+ * file again.  References to directories that do not end in slash are reported by the prefetch, for the whole page at
+ * once.</p>
+ *
+ * <p>Each batch reads with at most {@link #PARALLELISM_INIT_PARAM} threads, including the calling thread.  Virtual
+ * threads are used when available.</p>
+ *
+ * <p>Configured by context init parameters:</p>
+ * <ul>
+ *   <li>{@link #PARALLELISM_INIT_PARAM} - The maximum number of files read at the same time per batch
+ *       (default {@value #DEFAULT_PARALLELISM})</li>
+ *   <li>{@link #VIRTUAL_THREADS_INIT_PARAM} - When {@code false}, uses a fixed pool of platform threads even when
+ *       virtual threads are available (default {@code true})</li>
+ * </ul>
+ */
+public final class FileMetadataPrefetch {
+
+  private static final Logger logger = Logger.getLogger(FileMetadataPrefetch.class.getName());
+
+  private static final String APPLICATION_ATTRIBUTE = FileMetadataPrefetch.class.getName();
+
+  private static final String PREFETCHED_REQUEST_ATTRIBUTE = FileMetadataPrefetch.class.getName() + ".prefetched";
+
+  /**
+   * Marks a prefetched file that does not exist, since concurrent maps do not allow {@code null} values.
+   */
+  private static final FileMetadata NOT_FOUND = new FileMetadata(new File(""), false, 0, 0);
+
+  /**
+   * Marks a file being read by a prefetch, which other threads read for themselves.
+   */
+  private static final FileMetadata PENDING = new FileMetadata(new File(""), false, 0, 0);
+
+  /**
+   * The prefetched metadata of a request.  Concurrent, since subrequests may be captured on other threads.
+   */
+  private static final class Prefetched {
+
+    private final ConcurrentMap<PageRef, FileMetadata> files = new ConcurrentHashMap<>();
+
+    /**
+     * The pages already prefetched, or being prefetched.
+     */
+    private final Set<PageRef> pages = ConcurrentHashMap.newKeySet();
+  }
+
+  /**
+   * The context init parameter for the maximum number of files read at the same time per batch.
+   */
+  public static final String PARALLELISM_INIT_PARAM = FileMetadataPrefetch.class.getName() + ".parallelism";
+
+  /**
+   * The default maximum number of files read at the same time per batch.
+   */
+  public static final int DEFAULT_PARALLELISM = 16;
+
+  /**
+   * The context init parameter to use virtual threads when available.
+   */
+  public static final String VIRTUAL_THREADS_INIT_PARAM = FileMetadataPrefetch.class.getName() + ".virtualThreads";
+
+  /**
+   * Shuts down the prefetch threads on application shutdown.
+   */
+  @WebListener("Shuts down the file metadata prefetch threads on application shutdown.")
+  public static class Initializer implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+      // Created on start, so any invalid context init parameters are logged on start
+      getInstance(event.getServletContext());
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+      ServletContext servletContext = event.getServletContext();
+      FileMetadataPrefetch prefetch = (FileMetadataPrefetch) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+      if (prefetch != null) {
+        servletContext.removeAttribute(APPLICATION_ATTRIBUTE);
+        prefetch.close();
+      }
+    }
+  }
+
+  /**
+   * Gets the prefetch for the given servlet context.
+   */
+  public static FileMetadataPrefetch getInstance(ServletContext servletContext) {
+    FileMetadataPrefetch prefetch = (FileMetadataPrefetch) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+    if (prefetch == null) {
+      synchronized (servletContext) {
+        prefetch = (FileMetadataPrefetch) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+        if (prefetch == null) {
+          prefetch = new FileMetadataPrefetch(servletContext);
+          servletContext.setAttribute(APPLICATION_ATTRIBUTE, prefetch);
+        }
+      }
+    }
+    return prefetch;
+  }
+
+  /**
+   * Creates an executor that starts a new virtual thread for each task.
+   *
+   * @return  the executor or {@code null} when virtual threads are not available
+   */
+  private static ExecutorService newVirtualThreadPerTaskExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      // Java 20 or older
+      return null;
+    }
+  }
+
+  private final FileMetadataCache metadataCache;
+  private final int parallelism;
+  private final ExecutorService executor;
+
+  private FileMetadataPrefetch(ServletContext servletContext) {
+    this.metadataCache = FileMetadataCache.getInstance(servletContext);
+    this.parallelism = InitParameters.getInt(servletContext, PARALLELISM_INIT_PARAM, DEFAULT_PARALLELISM, 1);
+    ExecutorService virtual = (parallelism > 1 && InitParameters.getBoolean(servletContext, VIRTUAL_THREADS_INIT_PARAM, true))
+        ? newVirtualThreadPerTaskExecutor()
+        : null;
+    if (virtual != null) {
+      this.executor = virtual;
+    } else if (parallelism > 1) {
+      // The calling thread is one of the readers
+      AtomicInteger threadNum = new AtomicInteger();
+      this.executor = Executors.newFixedThreadPool(parallelism - 1, r -> {
+        Thread thread = new Thread(r, FileMetadataPrefetch.class.getName() + ".reader-" + threadNum.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    } else {
+      this.executor = null;
+    }
+  }
+
+  /**
+   * Gets the metadata of the resource files of the given pages, reading at the same time.
+   *
+   * @return  the metadata, in the same order as the pages, with {@code null} where the book is not available locally or
+   *          the file does not exist
+   *
+   * @see  FileMetadataCache#getFileMetadata(com.semanticcms.core.model.PageRef)
+   */
+  public FileMetadata[] getFileMetadata(List<PageRef> pageRefs) throws IOException {
+    final int size = pageRefs.size();
+    final FileMetadata[] results = new FileMetadata[size];
+    final AtomicInteger next = new AtomicInteger();
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    Runnable reader = () -> {
+      int i;
+      while (failure.get() == null && (i = next.getAndIncrement()) < size) {
+        try {
+          results[i] = metadataCache.getFileMetadata(pageRefs.get(i));
+        } catch (IOException | RuntimeException e) {
+          failure.compareAndSet(null, e);
+        }
+      }
+    };
+    List<Future<?>> futures = new ArrayList<>();
+    if (executor != null) {
+      for (int helpers = Math.min(size, parallelism) - 1; helpers > 0; helpers--) {
+        try {
+          futures.add(executor.submit(reader));
+        } catch (RejectedExecutionException e) {
+          // Shutting down, read the rest on this thread
+          break;
+        }
+      }
+    }
+    reader.run();
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        failure.compareAndSet(null, new InterruptedIOException("Interrupted waiting for file metadata"));
+      } catch (ExecutionException e) {
+        failure.compareAndSet(null, e.getCause());
+      }
+    }
+    Throwable t = failure.get();
+    if (t instanceof IOException) {
+      throw (IOException) t;
+    }
+    if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    }
+    if (t instanceof Error) {
+      throw (Error) t;
+    }
+    if (t != null) {
+      throw new IOException(t);
+    }
+    return results;
+  }
+
+  private static Prefetched getPrefetched(ServletRequest request, boolean create) {
+    Prefetched prefetched = (Prefetched) request.getAttribute(PREFETCHED_REQUEST_ATTRIBUTE);
+    if (prefetched == null && create) {
+      synchronized (request) {
+        prefetched = (Prefetched) request.getAttribute(PREFETCHED_REQUEST_ATTRIBUTE);
+        if (prefetched == null) {
+          prefetched = new Prefetched();
+          request.setAttribute(PREFETCHED_REQUEST_ATTRIBUTE, prefetched);
+        }
+      }
+    }
+    return prefetched;
+  }
+
+  /**
+   * Prefetches the given page once per request, capturing it at {@link CaptureLevel#META}.  Does nothing when the page
+   * has already been prefetched.
+   *
+   * @param  pageRef  the page being rendered, or {@code null} when not within a page
+   *
+   * @throws  IllegalArgumentException  when a reference to a directory does not end in slash
+   */
+  void prefetchPage(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      PageRef pageRef
+  ) throws ServletException, IOException {
+    if (pageRef == null || !getPrefetched(request, true).pages.add(pageRef)) {
+      return;
+    }
+    prefetch(request, CapturePage.capturePage(servletContext, request, response, pageRef, CaptureLevel.META));
+  }
+
+  /**
+   * Reads the metadata of every file element on the given page at the same time, holding the results for the rest of
+   * the request.
+   *
+   * @param  page  the page, captured at {@link CaptureLevel#META} or higher
+   *
+   * @throws  IllegalArgumentException  when a reference to a directory does not end in slash
+   */
+  public void prefetch(ServletRequest request, Page page) throws IOException {
+    Prefetched prefetched = getPrefetched(request, true);
+    prefetched.pages.add(page.getPageRef());
+    List<PageRef> pageRefs = new ArrayList<>();
+    for (Element e : page.getElements()) {
+      if (e instanceof com.semanticcms.file.model.File) {
+        PageRef pageRef = ((com.semanticcms.file.model.File) e).getPageRef();
+        // Placeholder prevents duplicates within the batch and between threads
+        if (pageRef != null && prefetched.files.putIfAbsent(pageRef, PENDING) == null) {
+          pageRefs.add(pageRef);
+        }
+      }
+    }
+    if (pageRefs.isEmpty()) {
+      return;
+    }
+    FileMetadata[] results;
+    try {
+      results = getFileMetadata(pageRefs);
+    } catch (IOException | RuntimeException e) {
+      // Read again while rendering
+      for (PageRef pageRef : pageRefs) {
+        prefetched.files.remove(pageRef, PENDING);
+      }
+      throw e;
+    }
+    IllegalArgumentException invalid = null;
+    for (int i = 0, size = pageRefs.size(); i < size; i++) {
+      PageRef pageRef = pageRefs.get(i);
+      FileMetadata metadata = results[i];
+      prefetched.files.put(pageRef, (metadata == null) ? NOT_FOUND : metadata);
+      if (
+          invalid == null
+              && metadata != null
+              && metadata.isDirectory()
+              && !pageRef.getPath().endsWith(Path.SEPARATOR_STRING)
+      ) {
+        invalid = new IllegalArgumentException(
+            "References to directories must end in slash ("
+                + Path.SEPARATOR_CHAR
+                + "): "
+                + pageRef
+        );
+      }
+    }
+    if (logger.isLoggable(Level.FINER)) {
+      logger.finer("Prefetched " + pageRefs.size() + " files: " + page.getPageRef());
+    }
+    if (invalid != null) {
+      throw invalid;
+    }
+  }
+
+  /**
+   * Gets the metadata for the resource file of the given page, using the prefetched metadata when available.
+   *
+   * @return  the metadata or {@code null} when the book is not available locally or the file does not exist
+   */
+  public FileMetadata getFileMetadata(ServletRequest request, PageRef pageRef) throws IOException {
+    Prefetched prefetched = getPrefetched(request, false);
+    if (prefetched != null) {
+      FileMetadata metadata = prefetched.files.get(pageRef);
+      if (metadata == NOT_FOUND) {
+        return null;
+      }
+      if (metadata != null && metadata != PENDING) {
+        return metadata;
+      }
+    }
+    return metadataCache.getFileMetadata(pageRef);
+  }
+
+  private void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+}
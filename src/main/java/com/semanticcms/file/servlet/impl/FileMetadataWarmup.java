@@ -0,0 +1,428 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import com.semanticcms.core.model.Book;
+import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.servlet.SemanticCMS;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Warms {@link FileMetadataCache} on application start-up, so the first page views after a deploy do not each pay
+ * for reading the attributes of every linked file.
+ *
+ * <p>Warm-up runs in the background and never delays start-up.  When a snapshot from a previous run exists, it is
+ * loaded into the cache immediately and each entry then revalidated in the background.  Until revalidated, entries
+ * from the snapshot may be stale, but never longer than {@link #SNAPSHOT_TTL_INIT_PARAM}.  Otherwise, the resource
+ * directories of all local books are scanned in parallel.  Hidden files, with names beginning with a period, are
+ * skipped.</p>
+ *
+ * <p>The snapshot is saved after warm-up and again on application shutdown.  It is only used when
+ * {@link #SNAPSHOT_INIT_PARAM} is set, to a file outside the container work directory, which is deleted on redeploy.
+ * Without it, the resource directories are scanned on every start.</p>
+ *
+ * <p>Configured by context init parameters:</p>
+ * <ul>
+ *   <li>{@link #ENABLED_INIT_PARAM} - When {@code true}, warms the cache on start-up (default {@code false})</li>
+ *   <li>{@link #THREADS_INIT_PARAM} - The number of scanning threads (default the number of processors)</li>
+ *   <li>{@link #SNAPSHOT_INIT_PARAM} - The snapshot file (default none, always scanning)</li>
+ *   <li>{@link #SNAPSHOT_TTL_INIT_PARAM} - The maximum time, in milliseconds, entries from the snapshot are used before
+ *       revalidation (default {@value #DEFAULT_SNAPSHOT_TTL})</li>
+ * </ul>
+ */
+public final class FileMetadataWarmup {
+
+  private static final Logger logger = Logger.getLogger(FileMetadataWarmup.class.getName());
+
+  private static final String APPLICATION_ATTRIBUTE = FileMetadataWarmup.class.getName();
+
+  /**
+   * The context init parameter to enable or disable warm-up.
+   */
+  public static final String ENABLED_INIT_PARAM = FileMetadataWarmup.class.getName() + ".enabled";
+
+  /**
+   * The context init parameter for the number of scanning threads.
+   */
+  public static final String THREADS_INIT_PARAM = FileMetadataWarmup.class.getName() + ".threads";
+
+  /**
+   * The context init parameter for the snapshot file.
+   */
+  public static final String SNAPSHOT_INIT_PARAM = FileMetadataWarmup.class.getName() + ".snapshot";
+
+  /**
+   * The context init parameter for the maximum time entries from the snapshot are used before revalidation, in
+   * milliseconds.
+   */
+  public static final String SNAPSHOT_TTL_INIT_PARAM = FileMetadataWarmup.class.getName() + ".snapshotTtl";
+
+  /**
+   * The default maximum time entries from the snapshot are used before revalidation, in milliseconds.
+   */
+  public static final long DEFAULT_SNAPSHOT_TTL = 300000;
+
+
+  /**
+   * Identifies the file format.
+   */
+  private static final int MAGIC = 0x53434d53;
+
+  private static final int VERSION = 1;
+
+  /**
+   * Starts warm-up on application start-up and saves the snapshot on shutdown.
+   */
+  @WebListener("Warms the file metadata cache on application start-up and saves a snapshot on shutdown.")
+  public static class Initializer implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+      ServletContext servletContext = event.getServletContext();
+      if (InitParameters.getBoolean(servletContext, ENABLED_INIT_PARAM, false)) {
+        FileMetadataWarmup warmup = new FileMetadataWarmup(servletContext);
+        servletContext.setAttribute(APPLICATION_ATTRIBUTE, warmup);
+        warmup.start();
+      }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+      ServletContext servletContext = event.getServletContext();
+      FileMetadataWarmup warmup = (FileMetadataWarmup) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+      if (warmup != null) {
+        servletContext.removeAttribute(APPLICATION_ATTRIBUTE);
+        warmup.close();
+      }
+    }
+  }
+
+  private final ServletContext servletContext;
+  private final FileMetadataCache cache;
+  private final int threads;
+  private final File snapshotFile;
+  private final long snapshotTtlNanos;
+
+  private final AtomicBoolean closed = new AtomicBoolean();
+  private volatile ForkJoinPool pool;
+
+  private FileMetadataWarmup(ServletContext servletContext) {
+    this.servletContext = servletContext;
+    this.cache = FileMetadataCache.getInstance(servletContext);
+    this.threads = InitParameters.getInt(servletContext, THREADS_INIT_PARAM, Runtime.getRuntime().availableProcessors(), 1);
+    String snapshotParam = servletContext.getInitParameter(SNAPSHOT_INIT_PARAM);
+    if (snapshotParam != null && !snapshotParam.trim().isEmpty()) {
+      // Absolute, so always has a parent directory
+      this.snapshotFile = new File(snapshotParam.trim()).getAbsoluteFile();
+    } else {
+      logger.info("No snapshot configured, scanning on every start, set " + SNAPSHOT_INIT_PARAM
+          + " to a file outside the work directory to use a snapshot");
+      this.snapshotFile = null;
+    }
+    this.snapshotTtlNanos = TimeUnit.MILLISECONDS.toNanos(
+        InitParameters.getLong(servletContext, SNAPSHOT_TTL_INIT_PARAM, DEFAULT_SNAPSHOT_TTL, 0)
+    );
+  }
+
+  private void start() {
+    if (!cache.isEnabled()) {
+      logger.info("File metadata cache disabled, skipping warm-up");
+      return;
+    }
+    Thread thread = new Thread(this::warmup, FileMetadataWarmup.class.getName() + ".warmup");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    thread.start();
+  }
+
+  private void close() {
+    if (closed.compareAndSet(false, true)) {
+      ForkJoinPool p = pool;
+      if (p != null) {
+        p.shutdownNow();
+      }
+      if (cache.isEnabled()) {
+        saveSnapshot();
+      }
+    }
+  }
+
+  private void warmup() {
+    long startNanos = System.nanoTime();
+    AtomicInteger threadCounter = new AtomicInteger();
+    ForkJoinPool p = new ForkJoinPool(
+        threads,
+        fjp -> {
+          ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(fjp);
+          thread.setName(FileMetadataWarmup.class.getName() + ".scanner-" + threadCounter.incrementAndGet());
+          thread.setPriority(Thread.MIN_PRIORITY);
+          return thread;
+        },
+        null,
+        false
+    );
+    pool = p;
+    try {
+      if (closed.get()) {
+        return;
+      }
+      List<FileMetadata> snapshot = loadSnapshot();
+      if (snapshot != null) {
+        for (FileMetadata metadata : snapshot) {
+          if (!cache.preloadUnvalidated(metadata, snapshotTtlNanos)) {
+            break;
+          }
+        }
+        logger.info("Loaded " + snapshot.size() + " file metadata entries from snapshot, revalidating in background");
+        p.invoke(new Revalidate(snapshot, 0, snapshot.size()));
+      } else {
+        List<Scan> scans = new ArrayList<>();
+        for (Book book : SemanticCMS.getInstance(servletContext).getBooks().values()) {
+          File root = new PageRef(book, "/").getResourceFile(false, false);
+          if (root != null && root.isDirectory()) {
+            scans.add(new Scan(root.toPath()));
+          }
+        }
+        p.invoke(new RecursiveAction() {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          protected void compute() {
+            invokeAll(scans);
+          }
+        });
+      }
+      if (!closed.get()) {
+        if (logger.isLoggable(Level.INFO)) {
+          logger.info(
+              "File metadata warm-up completed in "
+                  + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms"
+          );
+        }
+        saveSnapshot();
+      }
+    } catch (IOException | RuntimeException e) {
+      if (!closed.get()) {
+        logger.log(Level.WARNING, "File metadata warm-up failed", e);
+      }
+    } finally {
+      pool = null;
+      p.shutdown();
+    }
+  }
+
+  /**
+   * Scans one directory, forking for each subdirectory.
+   */
+  private final class Scan extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Path directory;
+
+    private Scan(Path directory) {
+      this.directory = directory;
+    }
+
+    @Override
+    protected void compute() {
+      if (closed.get()) {
+        return;
+      }
+      // Watch before reading so no changes are missed
+      cache.watch(directory.toFile());
+      List<Scan> subdirectories = new ArrayList<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+        for (Path child : stream) {
+          if (child.getFileName().toString().startsWith(".")) {
+            continue;
+          }
+          long invalidations = cache.getInvalidations();
+          BasicFileAttributes attributes;
+          try {
+            attributes = Files.readAttributes(child, BasicFileAttributes.class);
+          } catch (NoSuchFileException e) {
+            // Removed while scanning
+            continue;
+          } catch (IOException e) {
+            // Broken symbolic link, left to be read on first use
+            continue;
+          }
+          boolean isDirectory = attributes.isDirectory();
+          if (!cache.preload(
+              new FileMetadata(child.toFile(), isDirectory, attributes.size(), attributes.lastModifiedTime().toMillis()),
+              invalidations
+          )) {
+            // Full
+            return;
+          }
+          if (isDirectory && !Files.isSymbolicLink(child)) {
+            subdirectories.add(new Scan(child));
+          }
+        }
+      } catch (IOException e) {
+        logger.log(Level.FINE, "Unable to scan directory: " + directory, e);
+      }
+      invokeAll(subdirectories);
+    }
+  }
+
+  /**
+   * Revalidates a range of snapshot entries, splitting while large.
+   */
+  private final class Revalidate extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private static final int THRESHOLD = 256;
+
+    private final List<FileMetadata> snapshot;
+    private final int from;
+    private final int to;
+
+    private Revalidate(List<FileMetadata> snapshot, int from, int to) {
+      this.snapshot = snapshot;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > THRESHOLD) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new Revalidate(snapshot, from, mid), new Revalidate(snapshot, mid, to));
+      } else {
+        for (int i = from; i < to && !closed.get(); i++) {
+          File file = snapshot.get(i).getFile();
+          try {
+            cache.revalidate(file);
+          } catch (IOException e) {
+            logger.log(Level.FINE, "Unable to revalidate: " + file, e);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Loads the snapshot.
+   *
+   * @return  the metadata or {@code null} when no snapshot or unable to read
+   */
+  private List<FileMetadata> loadSnapshot() {
+    if (snapshotFile == null || !snapshotFile.exists()) {
+      return null;
+    }
+    try (
+        InputStream fileIn = Files.newInputStream(snapshotFile.toPath());
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(fileIn)))
+        ) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        logger.warning("Ignoring unrecognized snapshot: " + snapshotFile);
+        return null;
+      }
+      int count = in.readInt();
+      List<FileMetadata> snapshot = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        String path = in.readUTF();
+        boolean isDirectory = in.readBoolean();
+        long length = in.readLong();
+        long lastModified = in.readLong();
+        snapshot.add(new FileMetadata(new File(path), isDirectory, length, lastModified));
+      }
+      return snapshot;
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Unable to load snapshot, scanning instead: " + snapshotFile, e);
+      return null;
+    }
+  }
+
+  /**
+   * Saves the current contents of the cache as the snapshot.
+   */
+  private void saveSnapshot() {
+    if (snapshotFile == null) {
+      return;
+    }
+    List<FileMetadata> all = cache.getAll();
+    Path path = snapshotFile.toPath();
+    Path tempFile = path.resolveSibling(path.getFileName() + ".tmp");
+    try {
+      Path parent = path.getParent();
+      if (parent != null) {
+        Files.createDirectories(parent);
+      }
+      try (
+          OutputStream fileOut = Files.newOutputStream(tempFile);
+          DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(fileOut)))
+          ) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(all.size());
+        for (FileMetadata metadata : all) {
+          out.writeUTF(metadata.getFile().getAbsolutePath());
+          out.writeBoolean(metadata.isDirectory());
+          out.writeLong(metadata.getLength());
+          out.writeLong(metadata.getLastModified());
+        }
+      }
+      try {
+        Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException | RuntimeException e) {
+      // Also called from contextDestroyed, which must not fail
+      logger.log(Level.WARNING, "Unable to save snapshot: " + snapshotFile, e);
+    }
+  }
+}
@@ -0,0 +1,609 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import com.semanticcms.file.servlet.impl.FileMetricsReporter.Metric;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.ConstructorParameters;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Low-overhead instrumentation of file rendering and subtree lookups, exposed as a JMX MBean per
+ * {@link ServletContext} and optionally passed to any {@link FileMetricsReporter} found by {@link ServiceLoader}.
+ *
+ * <p>Counters and histograms are striped with {@link LongAdder}, so concurrent requests do not contend.  Times are
+ * recorded into power-of-two nanosecond buckets, from which percentiles are estimated.</p>
+ *
+ * <p>When disabled, which is the default, each recording method is a single test of a final field, and no clock is
+ * read.</p>
+ *
+ * <p>The MBean is registered as <code>com.semanticcms.file.servlet:type=FileMetrics,context=<i>contextPath</i></code>.</p>
+ *
+ * <p>Configured by context init parameters:</p>
+ * <ul>
+ *   <li>{@link #ENABLED_INIT_PARAM} - When {@code true}, records metrics (default {@code false})</li>
+ *   <li>{@link #RATE_INTERVAL_INIT_PARAM} - The milliseconds between samples of the render rate, at least one
+ *       (default {@value #DEFAULT_RATE_INTERVAL})</li>
+ * </ul>
+ */
+public final class FileMetrics implements FileMetricsMXBean {
+
+  private static final Logger logger = Logger.getLogger(FileMetrics.class.getName());
+
+  private static final String APPLICATION_ATTRIBUTE = FileMetrics.class.getName();
+
+  /**
+   * The context init parameter to enable or disable metrics.
+   */
+  public static final String ENABLED_INIT_PARAM = FileMetrics.class.getName() + ".enabled";
+
+  /**
+   * The context init parameter for the milliseconds between samples of the render rate.
+   */
+  public static final String RATE_INTERVAL_INIT_PARAM = FileMetrics.class.getName() + ".rateInterval";
+
+  /**
+   * The default milliseconds between samples of the render rate.
+   */
+  public static final long DEFAULT_RATE_INTERVAL = 10000;
+
+  /**
+   * The JMX domain of the MBeans.
+   */
+  public static final String JMX_DOMAIN = "com.semanticcms.file.servlet";
+
+  /**
+   * Registers the MBean on application start-up and unregisters it on shutdown.
+   */
+  @WebListener("Registers the file metrics MBean on application start-up and unregisters it on shutdown.")
+  public static class Initializer implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+      getInstance(event.getServletContext());
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+      ServletContext servletContext = event.getServletContext();
+      FileMetrics metrics = (FileMetrics) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+      if (metrics != null) {
+        servletContext.removeAttribute(APPLICATION_ATTRIBUTE);
+        metrics.close();
+      }
+    }
+  }
+
+  /**
+   * Gets the metrics for the given servlet context.
+   */
+  public static FileMetrics getInstance(ServletContext servletContext) {
+    FileMetrics metrics = (FileMetrics) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+    if (metrics == null) {
+      synchronized (servletContext) {
+        metrics = (FileMetrics) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+        if (metrics == null) {
+          metrics = new FileMetrics(servletContext);
+          servletContext.setAttribute(APPLICATION_ATTRIBUTE, metrics);
+        }
+      }
+    }
+    return metrics;
+  }
+
+  /**
+   * A snapshot of one timing histogram.
+   */
+  public static final class Timing {
+    private final long count;
+    private final long totalNanos;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long maxNanos;
+
+    @ConstructorParameters({"count", "totalNanos", "p50Nanos", "p99Nanos", "maxNanos"})
+    public Timing(long count, long totalNanos, long p50Nanos, long p99Nanos, long maxNanos) {
+      this.count = count;
+      this.totalNanos = totalNanos;
+      this.p50Nanos = p50Nanos;
+      this.p99Nanos = p99Nanos;
+      this.maxNanos = maxNanos;
+    }
+
+    @Override
+    public String toString() {
+      return "count=" + count + ", totalNanos=" + totalNanos + ", p50Nanos=" + p50Nanos + ", p99Nanos=" + p99Nanos
+          + ", maxNanos=" + maxNanos;
+    }
+
+    /**
+     * Gets the number of recorded times.
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * Gets the sum of all recorded times, in nanoseconds.
+     */
+    public long getTotalNanos() {
+      return totalNanos;
+    }
+
+    /**
+     * Gets the estimated median, in nanoseconds, accurate to within a factor of two.
+     */
+    public long getP50Nanos() {
+      return p50Nanos;
+    }
+
+    /**
+     * Gets the estimated 99th percentile, in nanoseconds, accurate to within a factor of two.
+     */
+    public long getP99Nanos() {
+      return p99Nanos;
+    }
+
+    /**
+     * Gets the maximum recorded time, in nanoseconds.
+     */
+    public long getMaxNanos() {
+      return maxNanos;
+    }
+  }
+
+  private static final Timing EMPTY_TIMING = new Timing(0, 0, 0, 0, 0);
+
+  /**
+   * A striped histogram of nanosecond times in power-of-two buckets.
+   */
+  private static final class Histogram {
+    /**
+     * Bucket {@code i} holds times in the range {@code [2^(i-1), 2^i)}, with bucket zero holding zero.
+     */
+    private final LongAdder[] buckets = new LongAdder[Long.SIZE];
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    private Histogram() {
+      for (int i = 0; i < buckets.length; i++) {
+        buckets[i] = new LongAdder();
+      }
+    }
+
+    private void record(long nanos) {
+      if (nanos < 0) {
+        nanos = 0;
+      }
+      buckets[Long.SIZE - Long.numberOfLeadingZeros(nanos)].increment();
+      total.add(nanos);
+      max.accumulate(nanos);
+    }
+
+    private static long percentile(long[] counts, long count, double fraction) {
+      long target = (long) Math.ceil(count * fraction);
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= target) {
+          // Upper bound of the bucket
+          return i == 0 ? 0 : (1L << i) - 1;
+        }
+      }
+      return Long.MAX_VALUE;
+    }
+
+    private Timing snapshot() {
+      long[] counts = new long[buckets.length];
+      long count = 0;
+      for (int i = 0; i < counts.length; i++) {
+        long c = buckets[i].sum();
+        counts[i] = c;
+        count += c;
+      }
+      long maxNanos = max.get();
+      return new Timing(
+          count,
+          total.sum(),
+          count == 0 ? 0 : Math.min(percentile(counts, count, 0.50), maxNanos),
+          count == 0 ? 0 : Math.min(percentile(counts, count, 0.99), maxNanos),
+          maxNanos
+      );
+    }
+
+    private void reset() {
+      for (LongAdder bucket : buckets) {
+        bucket.reset();
+      }
+      total.reset();
+      max.reset();
+    }
+  }
+
+  private final ServletContext servletContext;
+  private final boolean enabled;
+  private final FileMetricsReporter[] reporters;
+  private final ObjectName objectName;
+
+  private final LongAdder renders;
+  private final Histogram metadataTime;
+  private final LongAdder brokenPaths;
+  private final Histogram openFileAllowedTime;
+  private final LongAdder hasFileCalls;
+  private final LongAdder hasFilePagesVisited;
+  private final Histogram hasFileTime;
+  private final Histogram lockWaitTime;
+  private final Histogram transferWaitTime;
+  private final LongAdder rejectedTransfers;
+
+  /**
+   * Samples the render rate on a fixed schedule, so reading the rate has no side effects.
+   */
+  private final ScheduledThreadPoolExecutor sampler;
+
+  private final Object rateLock = new Object();
+  private long rateSampleNanos;
+  private long rateSampleRenders;
+  private volatile double rendersPerSecond;
+
+  private FileMetrics(ServletContext servletContext) {
+    this.servletContext = servletContext;
+    this.enabled = InitParameters.getBoolean(servletContext, ENABLED_INIT_PARAM, false);
+    if (enabled) {
+      renders = new LongAdder();
+      metadataTime = new Histogram();
+      brokenPaths = new LongAdder();
+      openFileAllowedTime = new Histogram();
+      hasFileCalls = new LongAdder();
+      hasFilePagesVisited = new LongAdder();
+      hasFileTime = new Histogram();
+      lockWaitTime = new Histogram();
+      transferWaitTime = new Histogram();
+      rejectedTransfers = new LongAdder();
+      rateSampleNanos = System.nanoTime();
+      List<FileMetricsReporter> found = new ArrayList<>();
+      try {
+        for (FileMetricsReporter reporter : ServiceLoader.load(FileMetricsReporter.class)) {
+          found.add(reporter);
+        }
+      } catch (ServiceConfigurationError e) {
+        logger.log(Level.WARNING, null, e);
+      }
+      reporters = found.toArray(new FileMetricsReporter[found.size()]);
+      // Must be positive for scheduleAtFixedRate
+      long rateInterval = InitParameters.getLong(servletContext, RATE_INTERVAL_INIT_PARAM, DEFAULT_RATE_INTERVAL, 1);
+      sampler = new ScheduledThreadPoolExecutor(
+          1,
+          r -> {
+            Thread thread = new Thread(r, FileMetrics.class.getName() + ".sampler");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+          }
+      );
+      sampler.scheduleAtFixedRate(this::sampleRate, rateInterval, rateInterval, TimeUnit.MILLISECONDS);
+      objectName = register();
+    } else {
+      renders = null;
+      metadataTime = null;
+      brokenPaths = null;
+      openFileAllowedTime = null;
+      hasFileCalls = null;
+      hasFilePagesVisited = null;
+      hasFileTime = null;
+      lockWaitTime = null;
+      transferWaitTime = null;
+      rejectedTransfers = null;
+      reporters = new FileMetricsReporter[0];
+      sampler = null;
+      objectName = null;
+    }
+  }
+
+  /**
+   * Registers the MBean.
+   *
+   * @return  the registered name or {@code null} when unable to register
+   */
+  private ObjectName register() {
+    String contextPath = servletContext.getContextPath();
+    try {
+      ObjectName name = new ObjectName(
+          JMX_DOMAIN + ":type=FileMetrics,context=" + ObjectName.quote(contextPath.isEmpty() ? "/" : contextPath)
+      );
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+      return name;
+    } catch (JMException e) {
+      logger.log(Level.WARNING, "Unable to register MBean, metrics are available to reporters only", e);
+      return null;
+    }
+  }
+
+  private void close() {
+    if (sampler != null) {
+      sampler.shutdownNow();
+    }
+    if (objectName != null) {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      try {
+        server.unregisterMBean(objectName);
+      } catch (JMException e) {
+        logger.log(Level.WARNING, null, e);
+      }
+    }
+  }
+
+  /**
+   * Are metrics being recorded.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Gets the start time for a timed operation.
+   *
+   * @return  the current {@link System#nanoTime()} or {@code 0} when disabled
+   */
+  public long start() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  private static long elapsed(long start) {
+    return System.nanoTime() - start;
+  }
+
+  private void report(Metric metric, long value) {
+    for (FileMetricsReporter reporter : reporters) {
+      try {
+        reporter.record(servletContext, metric, value);
+      } catch (RuntimeException e) {
+        logger.log(Level.WARNING, null, e);
+      }
+    }
+  }
+
+  /**
+   * Records a file element rendered.
+   */
+  public void recordRender() {
+    if (enabled) {
+      renders.increment();
+      report(Metric.RENDER, 1);
+    }
+  }
+
+  /**
+   * Records the time spent reading file metadata.
+   *
+   * @param  start  the value returned from {@link #start()}
+   */
+  public void recordMetadataTime(long start) {
+    if (enabled) {
+      long nanos = elapsed(start);
+      metadataTime.record(nanos);
+      report(Metric.METADATA_TIME, nanos);
+    }
+  }
+
+  /**
+   * Records a file element with a path not found locally.
+   */
+  public void recordBrokenPath() {
+    if (enabled) {
+      brokenPaths.increment();
+      report(Metric.BROKEN_PATH, 1);
+    }
+  }
+
+  /**
+   * Records the time spent determining if local file opening is allowed.
+   *
+   * @param  start  the value returned from {@link #start()}
+   */
+  public void recordOpenFileAllowedTime(long start) {
+    if (enabled) {
+      long nanos = elapsed(start);
+      openFileAllowedTime.record(nanos);
+      report(Metric.OPEN_FILE_ALLOWED_TIME, nanos);
+    }
+  }
+
+  /**
+   * Records a call to determine if a page has files, and the time spent.
+   *
+   * @param  start  the value returned from {@link #start()}
+   */
+  public void recordHasFile(long start) {
+    if (enabled) {
+      long nanos = elapsed(start);
+      hasFileCalls.increment();
+      hasFileTime.record(nanos);
+      report(Metric.HAS_FILE, 1);
+      report(Metric.HAS_FILE_TIME, nanos);
+    }
+  }
+
+  /**
+   * Records a page visited while determining if a page has files.
+   */
+  public void recordHasFilePageVisited() {
+    if (enabled) {
+      hasFilePagesVisited.increment();
+      report(Metric.HAS_FILE_PAGE_VISITED, 1);
+    }
+  }
+
+  /**
+   * Records the time spent waiting to acquire a lock.  Call on the first line within the lock.
+   *
+   * @param  start  the value returned from {@link #start()}, obtained immediately before acquiring the lock
+   */
+  public void recordLockWaitTime(long start) {
+    if (enabled) {
+      long nanos = elapsed(start);
+      lockWaitTime.record(nanos);
+      report(Metric.LOCK_WAIT_TIME, nanos);
+    }
+  }
+
+  /**
+   * Records the time a large transfer waited for admission.
+   *
+   * @param  start  the value returned from {@link #start()}
+   */
+  public void recordTransferWaitTime(long start) {
+    if (enabled) {
+      long nanos = elapsed(start);
+      transferWaitTime.record(nanos);
+      report(Metric.TRANSFER_WAIT_TIME, nanos);
+    }
+  }
+
+  /**
+   * Records a large transfer rejected by admission control.
+   */
+  public void recordTransferRejected() {
+    if (enabled) {
+      rejectedTransfers.increment();
+      report(Metric.TRANSFER_REJECTED, 1);
+    }
+  }
+
+  @Override
+  public long getRenders() {
+    return enabled ? renders.sum() : 0;
+  }
+
+  /**
+   * Computes the render rate since the previous sample.
+   */
+  private void sampleRate() {
+    synchronized (rateLock) {
+      long now = System.nanoTime();
+      long count = renders.sum();
+      long elapsedNanos = now - rateSampleNanos;
+      rendersPerSecond = elapsedNanos <= 0 ? 0 : (count - rateSampleRenders) * 1e9 / elapsedNanos;
+      rateSampleNanos = now;
+      rateSampleRenders = count;
+    }
+  }
+
+  @Override
+  public double getRendersPerSecond() {
+    return enabled ? rendersPerSecond : 0;
+  }
+
+  @Override
+  public Timing getMetadataTime() {
+    return enabled ? metadataTime.snapshot() : EMPTY_TIMING;
+  }
+
+  @Override
+  public long getBrokenPaths() {
+    return enabled ? brokenPaths.sum() : 0;
+  }
+
+  @Override
+  public Timing getOpenFileAllowedTime() {
+    return enabled ? openFileAllowedTime.snapshot() : EMPTY_TIMING;
+  }
+
+  @Override
+  public long getHasFileCalls() {
+    return enabled ? hasFileCalls.sum() : 0;
+  }
+
+  @Override
+  public long getHasFilePagesVisited() {
+    return enabled ? hasFilePagesVisited.sum() : 0;
+  }
+
+  @Override
+  public Timing getHasFileTime() {
+    return enabled ? hasFileTime.snapshot() : EMPTY_TIMING;
+  }
+
+  @Override
+  public Timing getLockWaitTime() {
+    return enabled ? lockWaitTime.snapshot() : EMPTY_TIMING;
+  }
+
+  @Override
+  public int getActiveTransfers() {
+    return TransferAdmission.getInstance(servletContext).getActive();
+  }
+
+  @Override
+  public int getQueuedTransfers() {
+    return TransferAdmission.getInstance(servletContext).getQueued();
+  }
+
+  @Override
+  public Timing getTransferWaitTime() {
+    return enabled ? transferWaitTime.snapshot() : EMPTY_TIMING;
+  }
+
+  @Override
+  public long getRejectedTransfers() {
+    return enabled ? rejectedTransfers.sum() : 0;
+  }
+
+  @Override
+  public void reset() {
+    if (enabled) {
+      renders.reset();
+      metadataTime.reset();
+      brokenPaths.reset();
+      openFileAllowedTime.reset();
+      hasFileCalls.reset();
+      hasFilePagesVisited.reset();
+      hasFileTime.reset();
+      lockWaitTime.reset();
+      transferWaitTime.reset();
+      rejectedTransfers.reset();
+      synchronized (rateLock) {
+        rateSampleNanos = System.nanoTime();
+        rateSampleRenders = 0;
+        rendersPerSecond = 0;
+      }
+    }
+  }
+}
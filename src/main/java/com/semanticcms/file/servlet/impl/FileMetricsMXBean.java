@@ -0,0 +1,104 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+/**
+ * The JMX management interface of {@link FileMetrics}.
+ */
+public interface FileMetricsMXBean {
+
+  /**
+   * Gets the number of file elements rendered.
+   */
+  long getRenders();
+
+  /**
+   * Gets the rate of file elements rendered over the most recent sampling interval, which is zero until the first
+   * interval completes after start or reset.  Reading the rate has no side effects, so any number of monitoring tools
+   * may poll it.
+   *
+   * @see  FileMetrics#RATE_INTERVAL_INIT_PARAM
+   */
+  double getRendersPerSecond();
+
+  /**
+   * Gets the time spent reading file metadata.
+   */
+  FileMetrics.Timing getMetadataTime();
+
+  /**
+   * Gets the number of file elements with a path not found locally.
+   */
+  long getBrokenPaths();
+
+  /**
+   * Gets the time spent determining if local file opening is allowed, once per request.
+   */
+  FileMetrics.Timing getOpenFileAllowedTime();
+
+  /**
+   * Gets the number of calls to determine if a page has files.
+   */
+  long getHasFileCalls();
+
+  /**
+   * Gets the number of pages visited while determining if pages have files.
+   */
+  long getHasFilePagesVisited();
+
+  /**
+   * Gets the time spent determining if pages have files.
+   */
+  FileMetrics.Timing getHasFileTime();
+
+  /**
+   * Gets the time spent waiting to acquire locks.
+   */
+  FileMetrics.Timing getLockWaitTime();
+
+  /**
+   * Gets the number of large transfers in progress.
+   */
+  int getActiveTransfers();
+
+  /**
+   * Gets the number of large transfers waiting for admission.
+   */
+  int getQueuedTransfers();
+
+  /**
+   * Gets the time large transfers waited for admission.
+   */
+  FileMetrics.Timing getTransferWaitTime();
+
+  /**
+   * Gets the number of large transfers rejected by admission control.
+   */
+  long getRejectedTransfers();
+
+  /**
+   * Resets all counters to zero.
+   */
+  void reset();
+}
@@ -0,0 +1,87 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import javax.servlet.ServletContext;
+
+/**
+ * A pluggable destination for {@link FileMetrics}, such as an application metrics library.  Implementations are found
+ * with {@link java.util.ServiceLoader} when metrics are enabled, and receive every recorded value in addition to the
+ * built-in JMX counters.
+ *
+ * <p>Implementations are called on the request thread and must be thread-safe and fast.</p>
+ */
+public interface FileMetricsReporter {
+
+  /**
+   * The recorded metrics.
+   */
+  enum Metric {
+    /**
+     * A file element rendered, value is always {@code 1}.
+     */
+    RENDER,
+    /**
+     * Time spent reading file metadata, value in nanoseconds.
+     */
+    METADATA_TIME,
+    /**
+     * A file element with a path not found locally, value is always {@code 1}.
+     */
+    BROKEN_PATH,
+    /**
+     * Time spent determining if local file opening is allowed, value in nanoseconds.
+     */
+    OPEN_FILE_ALLOWED_TIME,
+    /**
+     * A call to determine if a page has files, value is always {@code 1}.
+     */
+    HAS_FILE,
+    /**
+     * A page visited while determining if a page has files, value is always {@code 1}.
+     */
+    HAS_FILE_PAGE_VISITED,
+    /**
+     * Time spent determining if a page has files, value in nanoseconds.
+     */
+    HAS_FILE_TIME,
+    /**
+     * Time spent waiting to acquire a lock, value in nanoseconds.
+     */
+    LOCK_WAIT_TIME,
+    /**
+     * Time a large transfer waited for admission, value in nanoseconds.
+     */
+    TRANSFER_WAIT_TIME,
+    /**
+     * A large transfer rejected by admission control, value is always {@code 1}.
+     */
+    TRANSFER_REJECTED
+  }
+
+  /**
+   * Records one value.
+   */
+  void record(ServletContext servletContext, Metric metric, long value);
+}
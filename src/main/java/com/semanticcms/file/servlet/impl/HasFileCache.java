@@ -0,0 +1,391 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import com.semanticcms.core.model.ChildRef;
+import com.semanticcms.core.model.Element;
+import com.semanticcms.core.model.Page;
+import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.servlet.CaptureLevel;
+import com.semanticcms.core.servlet.CapturePage;
+import com.semanticcms.file.model.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * An application-scope cache of the answers to
+ * {@link com.semanticcms.file.servlet.FileUtils#hasFile(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page, boolean)}.
+ *
+ * <p>Each answer records the last modified time of the page source it was computed from, along with the answers of
+ * the child pages it consulted.  An answer remains valid while none of these have changed.  Answers for pages without
+ * a local source file expire after a time-to-live instead.</p>
+ *
+ * <p>Recursive answers are built from the answers of child pages, so that the answers for an entire tree of pages are
+ * computed in a single pass.  Validation is remembered for the duration of the request, so checking many pages of
+ * the same tree in one request also takes a single pass.</p>
+ *
+ * <p>Since only page sources are considered, changes to included content that adds or removes files are not detected
+ * until the page itself is modified.</p>
+ *
+ * <p>In parallel mode, all child pages without a valid answer are captured together, in batches, by
+ * {@link HasFileSearch}.  Any child directly containing a file then ends the search before any further batches or
+ * grandchildren are captured.  The answers are the same as sequential mode.  Parallel mode also applies when the cache
+ * is disabled.</p>
+ *
+ * <p>Configured by context init parameters:</p>
+ * <ul>
+ *   <li>{@link #ENABLED_INIT_PARAM} - When {@code false}, every call performs a full traversal (default {@code true})</li>
+ *   <li>{@link #TTL_INIT_PARAM} - The time-to-live, in milliseconds, for answers of pages without a local source file
+ *       (default {@value #DEFAULT_TTL})</li>
+ *   <li>{@link #PARALLEL_INIT_PARAM} - When {@code true}, captures sibling pages in parallel, whether or not the cache is
+ *       enabled (default {@code false})</li>
+ * </ul>
+ */
+public final class HasFileCache {
+
+  private static final String APPLICATION_ATTRIBUTE = HasFileCache.class.getName();
+
+  private static final String VALIDATED_REQUEST_ATTRIBUTE = HasFileCache.class.getName() + ".validated";
+
+  /**
+   * The context init parameter to enable or disable the cache.
+   */
+  public static final String ENABLED_INIT_PARAM = HasFileCache.class.getName() + ".enabled";
+
+  /**
+   * The context init parameter for the time-to-live, in milliseconds.
+   */
+  public static final String TTL_INIT_PARAM = HasFileCache.class.getName() + ".ttl";
+
+  /**
+   * The default time-to-live, in milliseconds.
+   */
+  public static final long DEFAULT_TTL = 10000;
+
+  /**
+   * The context init parameter to enable parallel capture of sibling pages.
+   */
+  public static final String PARALLEL_INIT_PARAM = HasFileCache.class.getName() + ".parallel";
+
+  /**
+   * Gets the cache for the given servlet context.
+   */
+  public static HasFileCache getInstance(ServletContext servletContext) {
+    HasFileCache cache = (HasFileCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+    if (cache == null) {
+      synchronized (servletContext) {
+        cache = (HasFileCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+        if (cache == null) {
+          cache = new HasFileCache(servletContext);
+          servletContext.setAttribute(APPLICATION_ATTRIBUTE, cache);
+        }
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Determines if the given page directly has any {@link File} that is not {@linkplain File#isHidden() hidden}.
+   */
+  public static boolean hasNonHiddenFile(Page page) {
+    for (Element e : page.getElements()) {
+      if ((e instanceof File) && !((File) e).isHidden()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static final class Entry {
+    private final boolean result;
+    private final PageRef pageRef;
+    /**
+     * The last modified time of the page source, or {@code -1} when not available locally.
+     */
+    private final long pageLastModified;
+    private final long expiresNanos;
+    private final Entry[] children;
+
+    private Entry(boolean result, PageRef pageRef, long pageLastModified, long expiresNanos, Entry[] children) {
+      this.result = result;
+      this.pageRef = pageRef;
+      this.pageLastModified = pageLastModified;
+      this.expiresNanos = expiresNanos;
+      this.children = children;
+    }
+  }
+
+  /**
+   * The state of a single traversal.
+   */
+  private static final class Traversal {
+    private final Set<PageRef> inProgress = new HashSet<>();
+    /**
+     * Entries computed during this traversal but not cached, due to a cycle.
+     */
+    private final Map<PageRef, Entry> uncached = new HashMap<>();
+    private boolean cycle;
+  }
+
+  private final ServletContext servletContext;
+  private final FileMetrics metrics;
+  private final boolean enabled;
+  private final long ttlNanos;
+  private final boolean parallel;
+
+  private final ConcurrentMap<PageRef, Entry> directEntries = new ConcurrentHashMap<>();
+  private final ConcurrentMap<PageRef, Entry> recursiveEntries = new ConcurrentHashMap<>();
+
+  private HasFileCache(ServletContext servletContext) {
+    this.servletContext = servletContext;
+    this.metrics = FileMetrics.getInstance(servletContext);
+    this.enabled = InitParameters.getBoolean(servletContext, ENABLED_INIT_PARAM, true);
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(InitParameters.getLong(servletContext, TTL_INIT_PARAM, DEFAULT_TTL, 0));
+    this.parallel = InitParameters.getBoolean(servletContext, PARALLEL_INIT_PARAM, false);
+  }
+
+  /**
+   * Is the cache enabled.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Are sibling pages captured in parallel.
+   */
+  public boolean isParallel() {
+    return parallel;
+  }
+
+  /**
+   * Removes all cached answers.
+   */
+  public void clear() {
+    directEntries.clear();
+    recursiveEntries.clear();
+  }
+
+  /**
+   * Determines if the given page has any {@link File} that is not {@linkplain File#isHidden() hidden}, using cached
+   * answers when still valid.
+   *
+   * @see  com.semanticcms.file.servlet.FileUtils#hasFile(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page, boolean)
+   */
+  public boolean hasFile(
+      HttpServletRequest request,
+      HttpServletResponse response,
+      Page page,
+      boolean recursive
+  ) throws ServletException, IOException {
+    return getEntry(request, response, page.getPageRef(), page, recursive, new Traversal()).result;
+  }
+
+  /**
+   * Gets the set of entries already validated in the current request.
+   */
+  private static Set<Entry> getValidated(ServletRequest request) {
+    @SuppressWarnings("unchecked")
+    Set<Entry> validated = (Set<Entry>) request.getAttribute(VALIDATED_REQUEST_ATTRIBUTE);
+    if (validated == null) {
+      validated = ConcurrentHashMap.newKeySet();
+      request.setAttribute(VALIDATED_REQUEST_ATTRIBUTE, validated);
+    }
+    return validated;
+  }
+
+  /**
+   * Gets the last modified time of the source of the given page.
+   *
+   * @return  the last modified time or {@code -1} when not available locally
+   */
+  private long getPageLastModified(PageRef pageRef) throws IOException {
+    FileMetadata metadata = FileMetadataCache.getInstance(servletContext).getFileMetadata(pageRef);
+    return (metadata == null) ? -1 : metadata.getLastModified();
+  }
+
+  private boolean isValid(Entry entry, Set<Entry> validated) throws IOException {
+    if (validated.contains(entry)) {
+      return true;
+    }
+    if (entry.pageLastModified == -1) {
+      if (entry.expiresNanos - System.nanoTime() <= 0) {
+        return false;
+      }
+    } else if (getPageLastModified(entry.pageRef) != entry.pageLastModified) {
+      return false;
+    }
+    for (Entry child : entry.children) {
+      if (!isValid(child, validated)) {
+        return false;
+      }
+    }
+    validated.add(entry);
+    return true;
+  }
+
+  /**
+   * Captures, together, all child pages that do not have a valid recursive answer.
+   *
+   * @return  the captured pages, which may be empty
+   */
+  private Map<PageRef, Page> captureChildren(
+      HttpServletRequest request,
+      HttpServletResponse response,
+      Set<ChildRef> childRefs,
+      Set<Entry> validated,
+      Traversal traversal
+  ) throws ServletException, IOException {
+    Set<PageRef> toCapture = new LinkedHashSet<>();
+    for (ChildRef childRef : childRefs) {
+      PageRef childPageRef = childRef.getPageRef();
+      // Child not in missing book
+      if (
+          childPageRef.getBook() != null
+              && !traversal.inProgress.contains(childPageRef)
+              && !traversal.uncached.containsKey(childPageRef)
+      ) {
+        Entry entry = recursiveEntries.get(childPageRef);
+        if (entry == null || !isValid(entry, validated)) {
+          toCapture.add(childPageRef);
+        }
+      }
+    }
+    if (toCapture.size() < 2) {
+      // Nothing to parallelize
+      return Collections.emptyMap();
+    }
+    return HasFileSearch.capturePages(servletContext, request, response, toCapture);
+  }
+
+  /**
+   * Gets the entry for the given page, computing it when no valid entry is cached.
+   *
+   * @param  page  the page when already captured, or {@code null} to capture when needed
+   *
+   * @return  the entry or {@code null} when the page is already being traversed (a cycle)
+   */
+  private Entry getEntry(
+      HttpServletRequest request,
+      HttpServletResponse response,
+      PageRef pageRef,
+      Page page,
+      boolean recursive,
+      Traversal traversal
+  ) throws ServletException, IOException {
+    ConcurrentMap<PageRef, Entry> entries = recursive ? recursiveEntries : directEntries;
+    Set<Entry> validated = getValidated(request);
+    Entry entry = entries.get(pageRef);
+    if (entry != null && isValid(entry, validated)) {
+      return entry;
+    }
+    if (recursive) {
+      entry = traversal.uncached.get(pageRef);
+      if (entry != null) {
+        return entry;
+      }
+    }
+    if (!traversal.inProgress.add(pageRef)) {
+      traversal.cycle = true;
+      return null;
+    }
+    try {
+      // Read before capture so a concurrent modification invalidates the new entry
+      long pageLastModified = getPageLastModified(pageRef);
+      if (page == null) {
+        page = CapturePage.capturePage(servletContext, request, response, pageRef, CaptureLevel.META);
+      }
+      metrics.recordHasFilePageVisited();
+      boolean result = hasNonHiddenFile(page);
+      List<Entry> children = new ArrayList<>();
+      if (!result && recursive) {
+        Set<ChildRef> childRefs = page.getChildRefs();
+        Map<PageRef, Page> captured = parallel
+            ? captureChildren(request, response, childRefs, validated, traversal)
+            : Collections.emptyMap();
+        // Any child directly containing a file ends the search before grandchildren are captured
+        for (Map.Entry<PageRef, Page> e : captured.entrySet()) {
+          Page childPage = e.getValue();
+          if (hasNonHiddenFile(childPage)) {
+            Entry child = getEntry(request, response, e.getKey(), childPage, true, traversal);
+            if (child != null) {
+              children.add(child);
+              result = true;
+              break;
+            }
+          }
+        }
+        if (!result) {
+          for (ChildRef childRef : childRefs) {
+            PageRef childPageRef = childRef.getPageRef();
+            // Child not in missing book
+            if (childPageRef.getBook() != null) {
+              Entry child = getEntry(request, response, childPageRef, captured.get(childPageRef), true, traversal);
+              if (child != null) {
+                children.add(child);
+                if (child.result) {
+                  result = true;
+                  break;
+                }
+              }
+            }
+          }
+        }
+      }
+      entry = new Entry(
+          result,
+          pageRef,
+          pageLastModified,
+          (pageLastModified == -1) ? (System.nanoTime() + ttlNanos) : Long.MAX_VALUE,
+          children.toArray(new Entry[children.size()])
+      );
+      if (traversal.cycle) {
+        if (recursive) {
+          traversal.uncached.put(pageRef, entry);
+        }
+      } else {
+        entries.put(pageRef, entry);
+        validated.add(entry);
+      }
+      return entry;
+    } finally {
+      traversal.inProgress.remove(pageRef);
+    }
+  }
+}
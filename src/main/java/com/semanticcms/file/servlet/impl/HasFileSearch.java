@@ -0,0 +1,160 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.semanticcms.file.servlet.impl;
+
+import com.semanticcms.core.model.ChildRef;
+import com.semanticcms.core.model.Page;
+import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.servlet.CaptureLevel;
+import com.semanticcms.core.servlet.CapturePage;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Searches a tree of pages for any {@link com.semanticcms.file.model.File} that is not
+ * {@linkplain com.semanticcms.file.model.File#isHidden() hidden}, capturing the pages of each level of the tree in
+ * parallel.  Used by {@link com.semanticcms.file.servlet.FileUtils#hasFile(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, com.semanticcms.core.model.Page, boolean)}
+ * in parallel mode, both with and without {@link HasFileCache}.
+ *
+ * <p>Pages are captured in batches by
+ * {@link CapturePage#capturePages(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, java.util.Set, com.semanticcms.core.servlet.CaptureLevel)},
+ * which captures concurrently on the bounded executors of SemanticCMS when concurrent subrequests are enabled.  The
+ * first page found directly containing a file ends the search: the rest of its batch completes, but no further batches
+ * are captured.  The answers are the same as a sequential traversal.</p>
+ *
+ * @see  HasFileCache#PARALLEL_INIT_PARAM
+ */
+public final class HasFileSearch {
+
+  /** Make no instances. */
+  private HasFileSearch() {
+    throw new AssertionError();
+  }
+
+  /**
+   * The number of pages captured together, enough to keep every processor busy while limiting the pages captured
+   * after the answer is already known.
+   */
+  private static final int BATCH_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+  /**
+   * Determines if the given page has any {@link com.semanticcms.file.model.File} that is not
+   * {@linkplain com.semanticcms.file.model.File#isHidden() hidden}, searching one level of the tree at a time.
+   */
+  public static boolean hasFile(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      Page page,
+      boolean recursive
+  ) throws ServletException, IOException {
+    FileMetrics metrics = FileMetrics.getInstance(servletContext);
+    metrics.recordHasFilePageVisited();
+    if (HasFileCache.hasNonHiddenFile(page)) {
+      return true;
+    }
+    if (!recursive) {
+      return false;
+    }
+    Set<PageRef> visited = new HashSet<>();
+    visited.add(page.getPageRef());
+    Set<PageRef> level = new LinkedHashSet<>();
+    addChildren(page, visited, level);
+    while (!level.isEmpty()) {
+      Map<PageRef, Page> captured = capturePages(servletContext, request, response, level);
+      Set<PageRef> nextLevel = new LinkedHashSet<>();
+      for (Page childPage : captured.values()) {
+        metrics.recordHasFilePageVisited();
+        if (HasFileCache.hasNonHiddenFile(childPage)) {
+          return true;
+        }
+        addChildren(childPage, visited, nextLevel);
+      }
+      level = nextLevel;
+    }
+    return false;
+  }
+
+  /**
+   * Adds the children of the given page that have not yet been visited.
+   */
+  private static void addChildren(Page page, Set<PageRef> visited, Set<PageRef> level) {
+    for (ChildRef childRef : page.getChildRefs()) {
+      PageRef childPageRef = childRef.getPageRef();
+      // Child not in missing book
+      if (childPageRef.getBook() != null && visited.add(childPageRef)) {
+        level.add(childPageRef);
+      }
+    }
+  }
+
+  /**
+   * Captures the given pages in batches, stopping after the first batch that has a page directly containing a
+   * {@link com.semanticcms.file.model.File} that is not {@linkplain com.semanticcms.file.model.File#isHidden() hidden}.
+   *
+   * @return  the captured pages, in the order given, which are all of the pages unless a file was found
+   */
+  static Map<PageRef, Page> capturePages(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      Set<PageRef> pageRefs
+  ) throws ServletException, IOException {
+    if (pageRefs.size() <= BATCH_SIZE) {
+      return CapturePage.capturePages(servletContext, request, response, pageRefs, CaptureLevel.META);
+    }
+    Map<PageRef, Page> captured = new LinkedHashMap<>();
+    Iterator<PageRef> iter = pageRefs.iterator();
+    while (iter.hasNext()) {
+      Set<PageRef> batch = new LinkedHashSet<>();
+      while (batch.size() < BATCH_SIZE && iter.hasNext()) {
+        batch.add(iter.next());
+      }
+      Map<PageRef, Page> batchCaptured = CapturePage.capturePages(servletContext, request, response, batch,
+          CaptureLevel.META);
+      boolean found = false;
+      for (Map.Entry<PageRef, Page> entry : batchCaptured.entrySet()) {
+        captured.put(entry.getKey(), entry.getValue());
+        if (!found && HasFileCache.hasNonHiddenFile(entry.getValue())) {
+          found = true;
+        }
+      }
+      if (found) {
+        // The answer is known, do not capture the remaining batches
+        break;
+      }
+    }
+    return captured;
+  }
+}
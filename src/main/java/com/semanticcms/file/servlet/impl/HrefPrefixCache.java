@@ -0,0 +1,138 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import com.aoapps.net.URIEncoder;
+import com.semanticcms.core.model.PageRef;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.servlet.ServletContext;
+
+/**
+ * An application-scope cache of the encoded, context-relative URL of each {@link PageRef}, so file links only append
+ * their query string on each render instead of concatenating and encoding the full URL.
+ *
+ * <p>Since {@link URIEncoder#encodeURI(java.lang.String)} encodes each character independently, and the appended
+ * parameter names and values contain only unreserved ASCII characters, the resulting URLs are identical to encoding
+ * the full URL.</p>
+ *
+ * <p>The cache is cleared when full, which only happens when more distinct files are linked than its maximum size.</p>
+ *
+ * <p>Configured by context init parameters:</p>
+ * <ul>
+ *   <li>{@link #MAX_SIZE_INIT_PARAM} - The maximum number of entries (default {@value #DEFAULT_MAX_SIZE})</li>
+ * </ul>
+ */
+public final class HrefPrefixCache {
+
+  private static final String APPLICATION_ATTRIBUTE = HrefPrefixCache.class.getName();
+
+  /**
+   * The context init parameter for the maximum number of entries.
+   */
+  public static final String MAX_SIZE_INIT_PARAM = HrefPrefixCache.class.getName() + ".maxSize";
+
+  /**
+   * The default maximum number of entries.
+   */
+  public static final int DEFAULT_MAX_SIZE = 100000;
+
+  /**
+   * Gets the cache for the given servlet context.
+   */
+  public static HrefPrefixCache getInstance(ServletContext servletContext) {
+    HrefPrefixCache cache = (HrefPrefixCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+    if (cache == null) {
+      synchronized (servletContext) {
+        cache = (HrefPrefixCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+        if (cache == null) {
+          cache = new HrefPrefixCache(servletContext);
+          servletContext.setAttribute(APPLICATION_ATTRIBUTE, cache);
+        }
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * The builder reused by each thread to append the query string.
+   */
+  private static final ThreadLocal<StringBuilder> builders = ThreadLocal.withInitial(StringBuilder::new);
+
+  /**
+   * Builders that grow beyond this length are not kept.
+   */
+  private static final int MAX_BUILDER_CAPACITY = 1024;
+
+  /**
+   * Appends a single parameter to an already encoded URL.
+   *
+   * @param  prefix  the encoded URL, without any query string
+   * @param  name    the parameter name, containing only unreserved characters
+   * @param  value   the parameter value, containing only unreserved characters
+   */
+  public static String appendParameter(String prefix, String name, String value) {
+    StringBuilder builder = builders.get();
+    builder.setLength(0);
+    String href = builder.append(prefix).append('?').append(name).append('=').append(value).toString();
+    if (builder.capacity() > MAX_BUILDER_CAPACITY) {
+      builders.remove();
+    }
+    return href;
+  }
+
+  private static final class Entry {
+    private final String contextPath;
+    private final String prefix;
+
+    private Entry(String contextPath, String prefix) {
+      this.contextPath = contextPath;
+      this.prefix = prefix;
+    }
+  }
+
+  private final int maxSize;
+
+  private final ConcurrentMap<PageRef, Entry> entries = new ConcurrentHashMap<>();
+
+  private HrefPrefixCache(ServletContext servletContext) {
+    this.maxSize = InitParameters.getInt(servletContext, MAX_SIZE_INIT_PARAM, DEFAULT_MAX_SIZE, 1);
+  }
+
+  /**
+   * Gets the encoded URL of the given page, the same as
+   * {@link URIEncoder#encodeURI(java.lang.String) URIEncoder.encodeURI}{@code (contextPath + pageRef.getServletPath())}.
+   */
+  public String getPrefix(String contextPath, PageRef pageRef) {
+    Entry entry = entries.get(pageRef);
+    if (entry == null || !entry.contextPath.equals(contextPath)) {
+      entry = new Entry(contextPath, URIEncoder.encodeURI(contextPath + pageRef.getServletPath()));
+      if (entries.size() >= maxSize) {
+        entries.clear();
+      }
+      entries.put(pageRef, entry);
+    }
+    return entry.prefix;
+  }
+}
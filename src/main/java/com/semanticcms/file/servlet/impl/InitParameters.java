@@ -0,0 +1,140 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.semanticcms.file.servlet.impl;
+
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+
+/**
+ * Reads the context init parameters of the application-scope caches.  An invalid value is logged and the default used
+ * instead, so a misconfiguration never prevents a cache from being created.
+ */
+final class InitParameters {
+
+  private static final Logger logger = Logger.getLogger(InitParameters.class.getName());
+
+  /** Make no instances. */
+  private InitParameters() {
+    throw new AssertionError();
+  }
+
+  /**
+   * Gets the trimmed value of the given context init parameter.
+   *
+   * @return  the value or {@code null} when not set or empty
+   */
+  private static String getValue(ServletContext servletContext, String name) {
+    String value = servletContext.getInitParameter(name);
+    if (value != null) {
+      value = value.trim();
+      if (value.isEmpty()) {
+        value = null;
+      }
+    }
+    return value;
+  }
+
+  private static void invalid(String name, String value, Object defaultValue) {
+    logger.warning("Invalid context init parameter, using default " + defaultValue + ": " + name + "=" + value);
+  }
+
+  /**
+   * Gets a boolean context init parameter, either {@code true} or {@code false}, case-insensitive.
+   */
+  static boolean getBoolean(ServletContext servletContext, String name, boolean defaultValue) {
+    String value = getValue(servletContext, name);
+    if (value == null) {
+      return defaultValue;
+    }
+    if ("true".equalsIgnoreCase(value)) {
+      return true;
+    }
+    if ("false".equalsIgnoreCase(value)) {
+      return false;
+    }
+    invalid(name, value, defaultValue);
+    return defaultValue;
+  }
+
+  /**
+   * Gets an integer context init parameter of at least the given minimum.
+   */
+  static int getInt(ServletContext servletContext, String name, int defaultValue, int minValue) {
+    String value = getValue(servletContext, name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      int i = Integer.parseInt(value);
+      if (i >= minValue) {
+        return i;
+      }
+    } catch (NumberFormatException e) {
+      // Logged below
+    }
+    invalid(name, value, defaultValue);
+    return defaultValue;
+  }
+
+  /**
+   * Gets a long context init parameter of at least the given minimum.
+   */
+  static long getLong(ServletContext servletContext, String name, long defaultValue, long minValue) {
+    String value = getValue(servletContext, name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      long l = Long.parseLong(value);
+      if (l >= minValue) {
+        return l;
+      }
+    } catch (NumberFormatException e) {
+      // Logged below
+    }
+    invalid(name, value, defaultValue);
+    return defaultValue;
+  }
+
+  /**
+   * Gets a finite double context init parameter of at least the given minimum.
+   */
+  static double getDouble(ServletContext servletContext, String name, double defaultValue, double minValue) {
+    String value = getValue(servletContext, name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      double d = Double.parseDouble(value);
+      if (Double.isFinite(d) && d >= minValue) {
+        return d;
+      }
+    } catch (NumberFormatException e) {
+      // Logged below
+    }
+    invalid(name, value, defaultValue);
+    return defaultValue;
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import com.aoapps.encoding.Doctype;
+import com.aoapps.encoding.Serialization;
+import com.aoapps.html.servlet.DoctypeEE;
+import com.aoapps.html.servlet.SerializationEE;
+import com.semanticcms.core.model.PageRef;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * An application-scope cache of the finished HTML of file elements without a body, so repeated renders skip building
+ * the link, encoding its URL, and formatting its size.
+ *
+ * <p>Fragments are keyed by every input to the HTML: the reference, element id, link class, the length and last
+ * modified time of the file, whether opening files is allowed, whether exporting, whether automatic last modified is
+ * disabled, the serialization and doctype of the document, and the context path.  URLs are only cached when the
+ * response leaves them unchanged, checked by {@link HttpServletResponse#encodeURL(java.lang.String)} on every request,
+ * so no key is provided and the cache is bypassed when URLs may be rewritten, such as with a session id or by a
+ * filter.</p>
+ *
+ * <p>The cache is cleared when full, which only happens when more distinct links are rendered than its maximum size.</p>
+ *
+ * <p>Configured by context init parameters:</p>
+ * <ul>
+ *   <li>{@link #MAX_SIZE_INIT_PARAM} - The maximum number of entries (default {@value #DEFAULT_MAX_SIZE})</li>
+ * </ul>
+ */
+public final class LinkFragmentCache {
+
+  private static final String APPLICATION_ATTRIBUTE = LinkFragmentCache.class.getName();
+
+  /**
+   * The context init parameter for the maximum number of entries.
+   */
+  public static final String MAX_SIZE_INIT_PARAM = LinkFragmentCache.class.getName() + ".maxSize";
+
+  /**
+   * The default maximum number of entries.
+   */
+  public static final int DEFAULT_MAX_SIZE = 100000;
+
+  /**
+   * Gets the cache for the given servlet context.
+   */
+  public static LinkFragmentCache getInstance(ServletContext servletContext) {
+    LinkFragmentCache cache = (LinkFragmentCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+    if (cache == null) {
+      synchronized (servletContext) {
+        cache = (LinkFragmentCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+        if (cache == null) {
+          cache = new LinkFragmentCache(servletContext);
+          servletContext.setAttribute(APPLICATION_ATTRIBUTE, cache);
+        }
+      }
+    }
+    return cache;
+  }
+
+  private static final int OPEN_FILE_ALLOWED = 1;
+  private static final int EXPORTING = 2;
+  private static final int LAST_MODIFIED_DISABLED = 4;
+
+  /**
+   * The inputs to one fragment.
+   */
+  public static final class Key {
+    private final PageRef pageRef;
+    private final String refId;
+    private final String linkCssClass;
+    private final long length;
+    private final long lastModified;
+    private final int flags;
+    private final Serialization serialization;
+    private final Doctype doctype;
+    private final String contextPath;
+    private final int hash;
+
+    private Key(
+        PageRef pageRef,
+        String refId,
+        String linkCssClass,
+        long length,
+        long lastModified,
+        int flags,
+        Serialization serialization,
+        Doctype doctype,
+        String contextPath
+    ) {
+      this.pageRef = pageRef;
+      this.refId = refId;
+      this.linkCssClass = linkCssClass;
+      this.length = length;
+      this.lastModified = lastModified;
+      this.flags = flags;
+      this.serialization = serialization;
+      this.doctype = doctype;
+      this.contextPath = contextPath;
+      int h = pageRef.hashCode();
+      h = h * 31 + Objects.hashCode(refId);
+      h = h * 31 + Objects.hashCode(linkCssClass);
+      h = h * 31 + Long.hashCode(length);
+      h = h * 31 + Long.hashCode(lastModified);
+      h = h * 31 + flags;
+      this.hash = h;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return hash == other.hash
+          && length == other.length
+          && lastModified == other.lastModified
+          && flags == other.flags
+          && serialization == other.serialization
+          && doctype == other.doctype
+          && pageRef.equals(other.pageRef)
+          && Objects.equals(refId, other.refId)
+          && Objects.equals(linkCssClass, other.linkCssClass)
+          && contextPath.equals(other.contextPath);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  private final int maxSize;
+
+  private final ConcurrentMap<Key, String> fragments = new ConcurrentHashMap<>();
+
+  private LinkFragmentCache(ServletContext servletContext) {
+    this.maxSize = InitParameters.getInt(servletContext, MAX_SIZE_INIT_PARAM, DEFAULT_MAX_SIZE, 1);
+  }
+
+  /**
+   * May the current response rewrite URLs, with a session id or otherwise.
+   */
+  private static boolean isUrlRewriting(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      PageRef pageRef
+  ) {
+    if (request.isRequestedSessionIdFromURL()) {
+      return true;
+    }
+    String prefix = HrefPrefixCache.getInstance(servletContext).getPrefix(request.getContextPath(), pageRef);
+    return !response.encodeURL(prefix).equals(prefix);
+  }
+
+  /**
+   * Gets the key for a fragment.
+   *
+   * @param  length        the length of the file or {@code -1} when not available
+   * @param  lastModified  the last modified time of the file or {@code -1} when not available
+   *
+   * @return  the key or {@code null} when the fragment must not be cached
+   */
+  public Key getKey(
+      ServletContext servletContext,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      PageRef pageRef,
+      String refId,
+      String linkCssClass,
+      long length,
+      long lastModified,
+      boolean isOpenFileAllowed,
+      boolean isExporting,
+      boolean isLastModifiedDisabled
+  ) {
+    if (isUrlRewriting(servletContext, request, response, pageRef)) {
+      return null;
+    }
+    return new Key(
+        pageRef,
+        refId,
+        linkCssClass,
+        length,
+        lastModified,
+        (isOpenFileAllowed ? OPEN_FILE_ALLOWED : 0)
+            | (isExporting ? EXPORTING : 0)
+            | (isLastModifiedDisabled ? LAST_MODIFIED_DISABLED : 0),
+        SerializationEE.get(servletContext, request),
+        DoctypeEE.get(servletContext, request),
+        request.getContextPath()
+    );
+  }
+
+  /**
+   * Gets the cached fragment.
+   *
+   * @return  the fragment or {@code null} when not cached
+   */
+  public String get(Key key) {
+    return fragments.get(key);
+  }
+
+  /**
+   * Caches a fragment, which must not be provisional.
+   */
+  public void put(Key key, String fragment) {
+    if (fragments.size() >= maxSize) {
+      fragments.clear();
+    }
+    fragments.put(key, fragment);
+  }
+}
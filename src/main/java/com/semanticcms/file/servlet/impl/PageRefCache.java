@@ -0,0 +1,194 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import com.semanticcms.core.model.Page;
+import com.semanticcms.core.model.PageRef;
+import com.semanticcms.core.servlet.CurrentPage;
+import com.semanticcms.core.servlet.PageRefResolver;
+import com.semanticcms.core.servlet.SemanticCMS;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * An application-scope cache of {@link PageRefResolver#getPageRef(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, java.lang.String, java.lang.String)},
+ * keyed by the current page, book, and path, so file elements are not resolved again on every capture.
+ *
+ * <p>Failures, such as references to missing books, are also cached.  Later lookups throw a new exception, with the
+ * cached failure as its cause, without another lookup.</p>
+ *
+ * <p>The cache is cleared when the books are reloaded, detected by a new map from {@link SemanticCMS#getBooks()}, and
+ * when full, which only happens when more distinct references are resolved than its maximum size.</p>
+ *
+ * <p>Configured by context init parameters:</p>
+ * <ul>
+ *   <li>{@link #MAX_SIZE_INIT_PARAM} - The maximum number of entries (default {@value #DEFAULT_MAX_SIZE})</li>
+ * </ul>
+ */
+public final class PageRefCache {
+
+  private static final String APPLICATION_ATTRIBUTE = PageRefCache.class.getName();
+
+  /**
+   * The context init parameter for the maximum number of entries.
+   */
+  public static final String MAX_SIZE_INIT_PARAM = PageRefCache.class.getName() + ".maxSize";
+
+  /**
+   * The default maximum number of entries.
+   */
+  public static final int DEFAULT_MAX_SIZE = 100000;
+
+  /**
+   * Gets the cache for the given servlet context.
+   */
+  public static PageRefCache getInstance(ServletContext servletContext) {
+    PageRefCache cache = (PageRefCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+    if (cache == null) {
+      synchronized (servletContext) {
+        cache = (PageRefCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+        if (cache == null) {
+          cache = new PageRefCache(servletContext);
+          servletContext.setAttribute(APPLICATION_ATTRIBUTE, cache);
+        }
+      }
+    }
+    return cache;
+  }
+
+  private static final class Key {
+    /**
+     * The current page, only when the path is resolved relative to it.
+     */
+    private final PageRef currentPageRef;
+    private final String book;
+    private final String path;
+    private final int hash;
+
+    private Key(PageRef currentPageRef, String book, String path) {
+      this.currentPageRef = currentPageRef;
+      this.book = book;
+      this.path = path;
+      this.hash = Objects.hash(currentPageRef, book, path);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return hash == other.hash
+          && Objects.equals(currentPageRef, other.currentPageRef)
+          && Objects.equals(book, other.book)
+          && Objects.equals(path, other.path);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  /**
+   * A resolved reference or the failure.
+   */
+  private static final class Result {
+    private final PageRef pageRef;
+    private final ServletException failure;
+
+    private Result(PageRef pageRef, ServletException failure) {
+      this.pageRef = pageRef;
+      this.failure = failure;
+    }
+  }
+
+  private final ServletContext servletContext;
+  private final int maxSize;
+
+  private final ConcurrentMap<Key, Result> results = new ConcurrentHashMap<>();
+
+  /**
+   * The books the cached results were resolved against.
+   */
+  private volatile Map<?, ?> books;
+
+  private PageRefCache(ServletContext servletContext) {
+    this.servletContext = servletContext;
+    this.maxSize = InitParameters.getInt(servletContext, MAX_SIZE_INIT_PARAM, DEFAULT_MAX_SIZE, 1);
+  }
+
+  /**
+   * Resolves the same as {@link PageRefResolver#getPageRef(javax.servlet.ServletContext, javax.servlet.http.HttpServletRequest, java.lang.String, java.lang.String)},
+   * using the cached result when available.
+   */
+  public PageRef getPageRef(HttpServletRequest request, String book, String path) throws ServletException, IOException {
+    PageRef currentPageRef;
+    if (book == null) {
+      Page currentPage = CurrentPage.getCurrentPage(request);
+      if (currentPage == null) {
+        // Not cacheable, let the resolver report the problem
+        return PageRefResolver.getPageRef(servletContext, request, book, path);
+      }
+      currentPageRef = currentPage.getPageRef();
+    } else {
+      currentPageRef = null;
+    }
+    Map<?, ?> currentBooks = SemanticCMS.getInstance(servletContext).getBooks();
+    if (currentBooks != books) {
+      results.clear();
+      books = currentBooks;
+    }
+    Key key = new Key(currentPageRef, book, path);
+    Result result = results.get(key);
+    if (result == null) {
+      try {
+        result = new Result(PageRefResolver.getPageRef(servletContext, request, book, path), null);
+      } catch (ServletException e) {
+        result = new Result(null, e);
+        cache(key, result);
+        throw e;
+      }
+      cache(key, result);
+    }
+    if (result.failure != null) {
+      // Thrown from here, with the type and stack trace of the original failure as the cause
+      throw new ServletException(result.failure.getMessage(), result.failure);
+    }
+    return result.pageRef;
+  }
+
+  private void cache(Key key, Result result) {
+    if (results.size() >= maxSize) {
+      results.clear();
+    }
+    results.put(key, result);
+  }
+}
@@ -0,0 +1,517 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * An application-scope store of precompressed variants of compressible resource files.  Each variant is built once,
+ * in the background, and stored in a local cache directory keyed by the length and last modified time of the source.
+ * Variants of previous versions of the source are deleted shortly after a new variant is built.
+ *
+ * <p>Lookups are remembered in memory per source version, including when no variant exists, so only the first request
+ * for each version looks on disk.  The memory is cleared when full.</p>
+ *
+ * <p>When compression does not reduce the size by enough, a marker is stored instead and the file is served
+ * uncompressed.</p>
+ *
+ * <p>Configured by context init parameters:</p>
+ * <ul>
+ *   <li>{@link #ENABLED_INIT_PARAM} - When {@code true}, enables precompressed variants (default {@code false})</li>
+ *   <li>{@link #DIRECTORY_INIT_PARAM} - The directory holding the variants (default a subdirectory of
+ *       {@link ServletContext#TEMPDIR})</li>
+ *   <li>{@link #MIN_LENGTH_INIT_PARAM} - The minimum length of a file to compress (default {@value #DEFAULT_MIN_LENGTH})</li>
+ *   <li>{@link #MAX_LENGTH_INIT_PARAM} - The maximum length of a file to compress (default {@value #DEFAULT_MAX_LENGTH})</li>
+ *   <li>{@link #MAX_RATIO_INIT_PARAM} - The maximum compressed to original length ratio for a variant to be used
+ *       (default {@value #DEFAULT_MAX_RATIO})</li>
+ *   <li>{@link #MAX_SIZE_INIT_PARAM} - The maximum number of variants remembered in memory
+ *       (default {@value #DEFAULT_MAX_SIZE})</li>
+ * </ul>
+ */
+public final class PrecompressedCache {
+
+  private static final Logger logger = Logger.getLogger(PrecompressedCache.class.getName());
+
+  private static final String APPLICATION_ATTRIBUTE = PrecompressedCache.class.getName();
+
+  /**
+   * The context init parameter to enable precompressed variants.
+   */
+  public static final String ENABLED_INIT_PARAM = PrecompressedCache.class.getName() + ".enabled";
+
+  /**
+   * The context init parameter for the directory holding the variants.
+   */
+  public static final String DIRECTORY_INIT_PARAM = PrecompressedCache.class.getName() + ".directory";
+
+  /**
+   * The context init parameter for the minimum length of a file to compress.
+   */
+  public static final String MIN_LENGTH_INIT_PARAM = PrecompressedCache.class.getName() + ".minLength";
+
+  /**
+   * The default minimum length of a file to compress.
+   */
+  public static final long DEFAULT_MIN_LENGTH = 1024;
+
+  /**
+   * The context init parameter for the maximum length of a file to compress.
+   */
+  public static final String MAX_LENGTH_INIT_PARAM = PrecompressedCache.class.getName() + ".maxLength";
+
+  /**
+   * The default maximum length of a file to compress.
+   */
+  public static final long DEFAULT_MAX_LENGTH = 256L * 1024 * 1024;
+
+  /**
+   * The context init parameter for the maximum compressed to original length ratio.
+   */
+  public static final String MAX_RATIO_INIT_PARAM = PrecompressedCache.class.getName() + ".maxRatio";
+
+  /**
+   * The default maximum compressed to original length ratio.
+   */
+  public static final double DEFAULT_MAX_RATIO = 0.9;
+
+  /**
+   * The context init parameter for the maximum number of variants remembered in memory.
+   */
+  public static final String MAX_SIZE_INIT_PARAM = PrecompressedCache.class.getName() + ".maxSize";
+
+  /**
+   * The default maximum number of variants remembered in memory.
+   */
+  public static final int DEFAULT_MAX_SIZE = 100000;
+
+  /**
+   * The content types, other than <code>text/*</code>, that are compressed.
+   */
+  private static final Set<String> COMPRESSIBLE_CONTENT_TYPES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+      "application/javascript",
+      "application/json",
+      "application/sql",
+      "application/x-sh",
+      "application/xhtml+xml",
+      "application/xml",
+      "image/svg+xml"
+  )));
+
+  /**
+   * The filename extensions that are compressed regardless of content type.
+   */
+  private static final Set<String> COMPRESSIBLE_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+      "csv",
+      "log",
+      "sql",
+      "svg",
+      "txt"
+  )));
+
+  private static final String SKIP_SUFFIX = ".skip";
+
+  /**
+   * The supported content encodings.
+   */
+  public enum Encoding {
+    GZIP("gzip", ".gz") {
+      @Override
+      OutputStream compress(OutputStream out) throws IOException {
+        return new GZIPOutputStream(out, BUFFER_SIZE);
+      }
+    },
+    DEFLATE("deflate", ".zz") {
+      @Override
+      OutputStream compress(OutputStream out) throws IOException {
+        return new DeflaterOutputStream(out);
+      }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String contentEncoding;
+    private final String suffix;
+
+    private Encoding(String contentEncoding, String suffix) {
+      this.contentEncoding = contentEncoding;
+      this.suffix = suffix;
+    }
+
+    @Override
+    public String toString() {
+      return contentEncoding;
+    }
+
+    /**
+     * Gets the value for the <code>Content-Encoding</code> header.
+     */
+    public String getContentEncoding() {
+      return contentEncoding;
+    }
+
+    abstract OutputStream compress(OutputStream out) throws IOException;
+  }
+
+  /**
+   * Shuts down the background compression thread on application shutdown.
+   */
+  @WebListener("Shuts down the precompressed variant background compression thread on application shutdown.")
+  public static class Initializer implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+      // Created on start, so any invalid context init parameters are logged on start
+      getInstance(event.getServletContext());
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+      ServletContext servletContext = event.getServletContext();
+      PrecompressedCache cache = (PrecompressedCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+      if (cache != null) {
+        servletContext.removeAttribute(APPLICATION_ATTRIBUTE);
+        cache.close();
+      }
+    }
+  }
+
+  /**
+   * Gets the cache for the given servlet context.
+   */
+  public static PrecompressedCache getInstance(ServletContext servletContext) {
+    PrecompressedCache cache = (PrecompressedCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+    if (cache == null) {
+      synchronized (servletContext) {
+        cache = (PrecompressedCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+        if (cache == null) {
+          cache = new PrecompressedCache(servletContext);
+          servletContext.setAttribute(APPLICATION_ATTRIBUTE, cache);
+        }
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Marks a variant that does not exist or was not worth compressing.
+   */
+  private static final File NO_VARIANT = new File("");
+
+  /**
+   * Marks a variant that is queued or being built.  Not {@linkplain File#equals(java.lang.Object) equal} to
+   * {@link #NO_VARIANT}, since it is replaced conditionally.
+   */
+  private static final File BUILDING = new File(".building");
+
+  /**
+   * The seconds a variant of a previous version is kept after a new variant is built, since it may have just been
+   * returned by {@link #getVariant(com.semanticcms.file.servlet.impl.FileMetadata, com.semanticcms.file.servlet.impl.PrecompressedCache.Encoding)}
+   * and not yet opened.
+   */
+  private static final long STALE_DELETE_DELAY = 60;
+
+  /**
+   * Identifies one variant of one version of a source file.
+   */
+  private static final class Key {
+    private final File source;
+    private final long length;
+    private final long lastModified;
+    private final Encoding encoding;
+    private final int hash;
+
+    private Key(File source, long length, long lastModified, Encoding encoding) {
+      this.source = source;
+      this.length = length;
+      this.lastModified = lastModified;
+      this.encoding = encoding;
+      this.hash = Objects.hash(source, length, lastModified, encoding);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return hash == other.hash
+          && length == other.length
+          && lastModified == other.lastModified
+          && encoding == other.encoding
+          && source.equals(other.source);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  private final ServletContext servletContext;
+  private final boolean enabled;
+  private final File directory;
+  private final long minLength;
+  private final long maxLength;
+  private final double maxRatio;
+  private final int maxSize;
+
+  /**
+   * The known variants.  Maps to {@link #NO_VARIANT} when compression was skipped or failed, and to {@link #BUILDING}
+   * while queued or being built, so repeated requests do not look for the variant on disk again.
+   */
+  private final ConcurrentMap<Key, File> variants = new ConcurrentHashMap<>();
+
+  private final ScheduledExecutorService executor;
+
+  private PrecompressedCache(ServletContext servletContext) {
+    this.servletContext = servletContext;
+    String directoryParam = servletContext.getInitParameter(DIRECTORY_INIT_PARAM);
+    if (directoryParam != null) {
+      this.directory = new File(directoryParam.trim());
+    } else {
+      File tempDir = (File) servletContext.getAttribute(ServletContext.TEMPDIR);
+      this.directory = (tempDir == null) ? null : new File(tempDir, "semanticcms-file-precompressed");
+    }
+    this.enabled = directory != null && InitParameters.getBoolean(servletContext, ENABLED_INIT_PARAM, false);
+    this.minLength = InitParameters.getLong(servletContext, MIN_LENGTH_INIT_PARAM, DEFAULT_MIN_LENGTH, 0);
+    this.maxLength = InitParameters.getLong(servletContext, MAX_LENGTH_INIT_PARAM, DEFAULT_MAX_LENGTH, 0);
+    this.maxRatio = InitParameters.getDouble(servletContext, MAX_RATIO_INIT_PARAM, DEFAULT_MAX_RATIO, 0.0);
+    this.maxSize = InitParameters.getInt(servletContext, MAX_SIZE_INIT_PARAM, DEFAULT_MAX_SIZE, 1);
+    if (enabled) {
+      this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, PrecompressedCache.class.getName() + ".compressor");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+      });
+    } else {
+      this.executor = null;
+    }
+  }
+
+  /**
+   * Is the given file eligible for compression.
+   */
+  public boolean isCompressible(FileMetadata metadata) {
+    if (!enabled || metadata.isDirectory()) {
+      return false;
+    }
+    long length = metadata.getLength();
+    if (length < minLength || length > maxLength) {
+      return false;
+    }
+    String name = metadata.getFile().getName();
+    int dot = name.lastIndexOf('.');
+    if (dot != -1 && COMPRESSIBLE_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT))) {
+      return true;
+    }
+    String contentType = servletContext.getMimeType(name);
+    if (contentType == null) {
+      return false;
+    }
+    int semicolon = contentType.indexOf(';');
+    if (semicolon != -1) {
+      contentType = contentType.substring(0, semicolon).trim();
+    }
+    contentType = contentType.toLowerCase(Locale.ROOT);
+    return contentType.startsWith("text/") || COMPRESSIBLE_CONTENT_TYPES.contains(contentType);
+  }
+
+  /**
+   * Gets the prefix shared by all variants of the given source, regardless of version.
+   */
+  private static String getSourcePrefix(File source) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(source.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+      StringBuilder prefix = new StringBuilder(33);
+      for (int i = 0; i < 16; i++) {
+        int b = hash[i] & 0xff;
+        prefix.append(Character.forDigit(b >>> 4, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return prefix.append('-').toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError("SHA-256 is required", e);
+    }
+  }
+
+  /**
+   * Gets the precompressed variant of the given file.  When the variant is not yet available, queues it to be built in
+   * the background and returns {@code null} immediately.
+   *
+   * @return  the variant file or {@code null} when not available or not worth compressing
+   */
+  public File getVariant(FileMetadata metadata, Encoding encoding) {
+    if (!isCompressible(metadata)) {
+      return null;
+    }
+    File source = metadata.getFile();
+    Key key = new Key(source, metadata.getLength(), metadata.getLastModified(), encoding);
+    File variant = variants.get(key);
+    if (variant == null) {
+      if (variants.size() >= maxSize) {
+        variants.clear();
+      }
+      if (variants.putIfAbsent(key, BUILDING) != null) {
+        // Looked for by another request
+        return null;
+      }
+      String sourcePrefix = getSourcePrefix(source);
+      String variantName = sourcePrefix
+          + Long.toHexString(metadata.getLength())
+          + '-' + Long.toHexString(metadata.getLastModified())
+          + encoding.suffix;
+      // Check for variant built by a previous run
+      File existing = new File(directory, variantName);
+      if (existing.isFile()) {
+        variant = existing;
+      } else if (new File(directory, variantName + SKIP_SUFFIX).exists()) {
+        variant = NO_VARIANT;
+      }
+      if (variant != null) {
+        variants.replace(key, BUILDING, variant);
+      } else {
+        try {
+          executor.execute(() -> build(metadata, key, sourcePrefix, variantName));
+        } catch (RejectedExecutionException e) {
+          // Shutting down
+          variants.remove(key, BUILDING);
+        }
+        return null;
+      }
+    }
+    return (variant == NO_VARIANT || variant == BUILDING) ? null : variant;
+  }
+
+  private void build(FileMetadata metadata, Key key, String sourcePrefix, String variantName) {
+    File source = metadata.getFile();
+    Encoding encoding = key.encoding;
+    // Not worth trying again until the source changes
+    File variant = NO_VARIANT;
+    try {
+      Files.createDirectories(directory.toPath());
+      Path tempFile = Files.createTempFile(directory.toPath(), variantName, ".tmp");
+      try {
+        try (
+            InputStream in = Files.newInputStream(source.toPath());
+            OutputStream out = encoding.compress(Files.newOutputStream(tempFile))
+        ) {
+          in.transferTo(out);
+        }
+        // Discard when modified during compression
+        FileMetadata after = FileMetadata.readFileMetadata(source);
+        if (
+            after == null
+                || after.getLength() != metadata.getLength()
+                || after.getLastModified() != metadata.getLastModified()
+        ) {
+          return;
+        }
+        evictStale(sourcePrefix, variantName, encoding);
+        if (Files.size(tempFile) > metadata.getLength() * maxRatio) {
+          Files.createFile(new File(directory, variantName + SKIP_SUFFIX).toPath());
+        } else {
+          File built = new File(directory, variantName);
+          Files.move(tempFile, built.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+          variant = built;
+        }
+      } finally {
+        Files.deleteIfExists(tempFile);
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Unable to build " + encoding + " variant: " + source, e);
+    } finally {
+      variants.replace(key, BUILDING, variant);
+    }
+  }
+
+  /**
+   * Schedules the deletion of the variants of previous versions of the source for the given encoding.  They are
+   * deleted after a delay, since a request may have been given one just before the new variant was built.
+   */
+  private void evictStale(String sourcePrefix, String variantName, Encoding encoding) throws IOException {
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath(), sourcePrefix + "*")) {
+      for (Path stale : stream) {
+        String name = stale.getFileName().toString();
+        if (
+            !name.startsWith(variantName)
+                && (name.endsWith(encoding.suffix) || name.endsWith(encoding.suffix + SKIP_SUFFIX))
+        ) {
+          try {
+            executor.schedule(
+                () -> {
+                  File staleFile = stale.toFile();
+                  variants.values().removeIf(staleFile::equals);
+                  try {
+                    Files.deleteIfExists(stale);
+                  } catch (IOException e) {
+                    logger.log(Level.WARNING, "Unable to delete stale variant: " + stale, e);
+                  }
+                },
+                STALE_DELETE_DELAY,
+                TimeUnit.SECONDS
+            );
+          } catch (RejectedExecutionException e) {
+            // Shutting down, deleted after the next build instead
+          }
+        }
+      }
+    }
+  }
+
+  private void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,489 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * An application-scope store of thumbnails of image resource files.  Each thumbnail is generated once, with
+ * {@link ImageIO} on a bounded background pool, and stored in a local cache directory keyed by the length and last
+ * modified time of the source.  Thumbnails of previous versions of the source are deleted when a new thumbnail is
+ * generated.
+ *
+ * <p>Rendering never waits for decoding: until a thumbnail is available, {@link #getThumbnail(FileMetadata)} queues it
+ * and returns {@code null}, and a placeholder is shown instead.  When the queue is full, the request is dropped and
+ * queued again on a later render.</p>
+ *
+ * <p>When an image cannot be decoded, a marker is stored instead and no thumbnail is shown.</p>
+ *
+ * <p>Configured by context init parameters:</p>
+ * <ul>
+ *   <li>{@link #ENABLED_INIT_PARAM} - When {@code true}, enables thumbnails (default {@code false})</li>
+ *   <li>{@link #DIRECTORY_INIT_PARAM} - The directory holding the thumbnails (default a subdirectory of
+ *       {@link ServletContext#TEMPDIR})</li>
+ *   <li>{@link #SIZE_INIT_PARAM} - The maximum width and height of a thumbnail (default {@value #DEFAULT_SIZE})</li>
+ *   <li>{@link #MAX_LENGTH_INIT_PARAM} - The maximum length of an image to decode (default {@value #DEFAULT_MAX_LENGTH})</li>
+ *   <li>{@link #THREADS_INIT_PARAM} - The number of background threads (default {@value #DEFAULT_THREADS})</li>
+ *   <li>{@link #MAX_QUEUE_INIT_PARAM} - The maximum number of thumbnails waiting to be generated
+ *       (default {@value #DEFAULT_MAX_QUEUE})</li>
+ * </ul>
+ */
+public final class ThumbnailCache {
+
+  private static final Logger logger = Logger.getLogger(ThumbnailCache.class.getName());
+
+  private static final String APPLICATION_ATTRIBUTE = ThumbnailCache.class.getName();
+
+  /**
+   * The context init parameter to enable thumbnails.
+   */
+  public static final String ENABLED_INIT_PARAM = ThumbnailCache.class.getName() + ".enabled";
+
+  /**
+   * The context init parameter for the directory holding the thumbnails.
+   */
+  public static final String DIRECTORY_INIT_PARAM = ThumbnailCache.class.getName() + ".directory";
+
+  /**
+   * The context init parameter for the maximum width and height of a thumbnail.
+   */
+  public static final String SIZE_INIT_PARAM = ThumbnailCache.class.getName() + ".size";
+
+  /**
+   * The default maximum width and height of a thumbnail.
+   */
+  public static final int DEFAULT_SIZE = 128;
+
+  /**
+   * The context init parameter for the maximum length of an image to decode.
+   */
+  public static final String MAX_LENGTH_INIT_PARAM = ThumbnailCache.class.getName() + ".maxLength";
+
+  /**
+   * The default maximum length of an image to decode.
+   */
+  public static final long DEFAULT_MAX_LENGTH = 64L * 1024 * 1024;
+
+  /**
+   * The context init parameter for the number of background threads.
+   */
+  public static final String THREADS_INIT_PARAM = ThumbnailCache.class.getName() + ".threads";
+
+  /**
+   * The default number of background threads.
+   */
+  public static final int DEFAULT_THREADS = 1;
+
+  /**
+   * The context init parameter for the maximum number of thumbnails waiting to be generated.
+   */
+  public static final String MAX_QUEUE_INIT_PARAM = ThumbnailCache.class.getName() + ".maxQueue";
+
+  /**
+   * The default maximum number of thumbnails waiting to be generated.
+   */
+  public static final int DEFAULT_MAX_QUEUE = 100;
+
+  /**
+   * The URL parameter used to request the thumbnail of a file, with a value of {@link #getVersion(FileMetadata)}.
+   */
+  public static final String THUMBNAIL_PARAMETER_NAME = "thumbnail";
+
+  /**
+   * The content type of all thumbnails.
+   */
+  public static final String CONTENT_TYPE = "image/png";
+
+  private static final String FORMAT = "png";
+
+  private static final String SUFFIX = ".png";
+
+  private static final String SKIP_SUFFIX = ".skip";
+
+  /**
+   * Shuts down the background threads on application shutdown.
+   */
+  @WebListener("Shuts down the thumbnail background threads on application shutdown.")
+  public static class Initializer implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+      // Created on start, so any invalid context init parameters are logged on start
+      getInstance(event.getServletContext());
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+      ServletContext servletContext = event.getServletContext();
+      ThumbnailCache cache = (ThumbnailCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+      if (cache != null) {
+        servletContext.removeAttribute(APPLICATION_ATTRIBUTE);
+        cache.close();
+      }
+    }
+  }
+
+  /**
+   * Gets the cache for the given servlet context.
+   */
+  public static ThumbnailCache getInstance(ServletContext servletContext) {
+    ThumbnailCache cache = (ThumbnailCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+    if (cache == null) {
+      synchronized (servletContext) {
+        cache = (ThumbnailCache) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+        if (cache == null) {
+          cache = new ThumbnailCache(servletContext);
+          servletContext.setAttribute(APPLICATION_ATTRIBUTE, cache);
+        }
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Marks a thumbnail that could not be generated.
+   */
+  private static final File NO_THUMBNAIL = new File("");
+
+  private final ServletContext servletContext;
+  private final boolean enabled;
+  private final File directory;
+  private final int size;
+  private final long maxLength;
+
+  /**
+   * Whether {@link ImageIO} can decode each content type.
+   */
+  private final ConcurrentMap<String, Boolean> readableContentTypes = new ConcurrentHashMap<>();
+
+  /**
+   * The known thumbnails, keyed by thumbnail filename.  Maps to {@link #NO_THUMBNAIL} when generation failed.
+   */
+  private final ConcurrentMap<String, File> thumbnails = new ConcurrentHashMap<>();
+
+  /**
+   * The thumbnails currently queued or being generated.
+   */
+  private final ConcurrentMap<String, Boolean> pending = new ConcurrentHashMap<>();
+
+  private final ThreadPoolExecutor executor;
+
+  private ThumbnailCache(ServletContext servletContext) {
+    this.servletContext = servletContext;
+    String directoryParam = servletContext.getInitParameter(DIRECTORY_INIT_PARAM);
+    if (directoryParam != null) {
+      this.directory = new File(directoryParam.trim());
+    } else {
+      File tempDir = (File) servletContext.getAttribute(ServletContext.TEMPDIR);
+      this.directory = (tempDir == null) ? null : new File(tempDir, "semanticcms-file-thumbnails");
+    }
+    this.enabled = directory != null && InitParameters.getBoolean(servletContext, ENABLED_INIT_PARAM, false);
+    this.size = InitParameters.getInt(servletContext, SIZE_INIT_PARAM, DEFAULT_SIZE, 1);
+    this.maxLength = InitParameters.getLong(servletContext, MAX_LENGTH_INIT_PARAM, DEFAULT_MAX_LENGTH, 0);
+    if (enabled) {
+      int threads = InitParameters.getInt(servletContext, THREADS_INIT_PARAM, DEFAULT_THREADS, 1);
+      int maxQueue = InitParameters.getInt(servletContext, MAX_QUEUE_INIT_PARAM, DEFAULT_MAX_QUEUE, 1);
+      AtomicInteger threadNum = new AtomicInteger();
+      this.executor = new ThreadPoolExecutor(
+          threads,
+          threads,
+          60,
+          TimeUnit.SECONDS,
+          new ArrayBlockingQueue<>(maxQueue),
+          r -> {
+            Thread thread = new Thread(r, ThumbnailCache.class.getName() + ".generator-" + threadNum.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+          }
+      );
+      this.executor.allowCoreThreadTimeOut(true);
+    } else {
+      this.executor = null;
+    }
+  }
+
+  /**
+   * Are thumbnails enabled.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Gets the maximum width and height of a thumbnail.
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Is a thumbnail shown for the given file.
+   */
+  public boolean isThumbnailable(FileMetadata metadata) {
+    if (!enabled || metadata.isDirectory()) {
+      return false;
+    }
+    long length = metadata.getLength();
+    if (length <= 0 || length > maxLength) {
+      return false;
+    }
+    String contentType = servletContext.getMimeType(metadata.getFile().getName());
+    if (contentType == null) {
+      return false;
+    }
+    int semicolon = contentType.indexOf(';');
+    if (semicolon != -1) {
+      contentType = contentType.substring(0, semicolon).trim();
+    }
+    contentType = contentType.toLowerCase(Locale.ROOT);
+    if (!contentType.startsWith("image/")) {
+      return false;
+    }
+    return readableContentTypes.computeIfAbsent(
+        contentType,
+        type -> ImageIO.getImageReadersByMIMEType(type).hasNext()
+    );
+  }
+
+  /**
+   * Gets the version of the given file, used to version the thumbnail URL.
+   */
+  public static String getVersion(FileMetadata metadata) {
+    return Long.toHexString(metadata.getLength()) + '-' + Long.toHexString(metadata.getLastModified());
+  }
+
+  /**
+   * Gets the prefix shared by all thumbnails of the given source, regardless of version.
+   */
+  private static String getSourcePrefix(File source) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(source.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+      StringBuilder prefix = new StringBuilder(33);
+      for (int i = 0; i < 16; i++) {
+        int b = hash[i] & 0xff;
+        prefix.append(Character.forDigit(b >>> 4, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return prefix.append('-').toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError("SHA-256 is required", e);
+    }
+  }
+
+  /**
+   * Gets the thumbnail of the given file.  When the thumbnail is not yet available, queues it to be generated in the
+   * background and returns {@code null} immediately.
+   *
+   * @return  the thumbnail file or {@code null} when not available or not able to be generated
+   */
+  public File getThumbnail(FileMetadata metadata) {
+    if (!isThumbnailable(metadata)) {
+      return null;
+    }
+    String sourcePrefix = getSourcePrefix(metadata.getFile());
+    String thumbnailName = sourcePrefix + getVersion(metadata) + '-' + Integer.toHexString(size) + SUFFIX;
+    File thumbnail = thumbnails.get(thumbnailName);
+    if (thumbnail == null) {
+      // Check for thumbnail generated by a previous run
+      File existing = new File(directory, thumbnailName);
+      if (existing.isFile()) {
+        thumbnail = existing;
+      } else if (new File(directory, thumbnailName + SKIP_SUFFIX).exists()) {
+        thumbnail = NO_THUMBNAIL;
+      }
+      if (thumbnail != null) {
+        thumbnails.put(thumbnailName, thumbnail);
+      }
+    }
+    if (thumbnail == null) {
+      if (pending.putIfAbsent(thumbnailName, Boolean.TRUE) == null) {
+        try {
+          executor.execute(() -> {
+            try {
+              generate(metadata, sourcePrefix, thumbnailName);
+            } finally {
+              pending.remove(thumbnailName);
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          // Queue full or shutting down, queued again on a later request
+          pending.remove(thumbnailName);
+        }
+      }
+      return null;
+    }
+    return thumbnail == NO_THUMBNAIL ? null : thumbnail;
+  }
+
+  /**
+   * Has the given file been modified since its metadata was read.
+   */
+  private static boolean isModified(FileMetadata metadata) throws IOException {
+    FileMetadata after = FileMetadata.readFileMetadata(metadata.getFile());
+    return after == null
+        || after.getLength() != metadata.getLength()
+        || after.getLastModified() != metadata.getLastModified();
+  }
+
+  private void generate(FileMetadata metadata, String sourcePrefix, String thumbnailName) {
+    File source = metadata.getFile();
+    try {
+      BufferedImage image = read(source);
+      // Discard when modified during decoding
+      if (isModified(metadata)) {
+        return;
+      }
+      Files.createDirectories(directory.toPath());
+      evictStale(sourcePrefix);
+      if (image == null) {
+        Files.createFile(new File(directory, thumbnailName + SKIP_SUFFIX).toPath());
+        thumbnails.put(thumbnailName, NO_THUMBNAIL);
+        return;
+      }
+      Path tempFile = Files.createTempFile(directory.toPath(), thumbnailName, ".tmp");
+      try {
+        if (!ImageIO.write(scale(image), FORMAT, tempFile.toFile())) {
+          throw new IOException("No writer for " + FORMAT);
+        }
+        File thumbnail = new File(directory, thumbnailName);
+        Files.move(tempFile, thumbnail.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        thumbnails.put(thumbnailName, thumbnail);
+      } finally {
+        Files.deleteIfExists(tempFile);
+      }
+    } catch (IOException | RuntimeException e) {
+      logger.log(Level.WARNING, "Unable to generate thumbnail: " + source, e);
+    }
+  }
+
+  /**
+   * Decodes the image, subsampled while reading so large images are never fully decoded in memory.
+   *
+   * @return  the image or {@code null} when not able to be decoded
+   */
+  private BufferedImage read(File source) throws IOException {
+    try (ImageInputStream in = ImageIO.createImageInputStream(source)) {
+      if (in == null) {
+        return null;
+      }
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+      if (!readers.hasNext()) {
+        return null;
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(in, true, true);
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        // Keep at least twice the thumbnail size for smooth scaling
+        int subsampling = Math.max(1, Math.max(width, height) / (size * 2));
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        return reader.read(0, param);
+      } catch (IOException e) {
+        // Corrupt or unsupported image
+        logger.log(Level.FINE, "Unable to decode image: " + source, e);
+        return null;
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  /**
+   * Scales the image to fit within the thumbnail size, preserving aspect ratio and transparency.
+   */
+  private BufferedImage scale(BufferedImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    double ratio = Math.min(1.0, (double) size / Math.max(width, height));
+    int scaledWidth = Math.max(1, (int) Math.round(width * ratio));
+    int scaledHeight = Math.max(1, (int) Math.round(height * ratio));
+    BufferedImage scaled = new BufferedImage(
+        scaledWidth,
+        scaledHeight,
+        image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB
+    );
+    Graphics2D g = scaled.createGraphics();
+    try {
+      g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+      g.drawImage(image, 0, 0, scaledWidth, scaledHeight, null);
+    } finally {
+      g.dispose();
+    }
+    return scaled;
+  }
+
+  /**
+   * Deletes the thumbnails of previous versions of the source.
+   */
+  private void evictStale(String sourcePrefix) throws IOException {
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath(), sourcePrefix + "*")) {
+      for (Path stale : stream) {
+        String name = stale.getFileName().toString();
+        if (name.endsWith(SUFFIX) || name.endsWith(SUFFIX + SKIP_SUFFIX)) {
+          thumbnails.remove(name.endsWith(SKIP_SUFFIX) ? name.substring(0, name.length() - SKIP_SUFFIX.length()) : name);
+          Files.deleteIfExists(stale);
+        }
+      }
+    }
+  }
+
+  private void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,431 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet.impl;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Admission control for large file transfers, so many concurrent downloads cannot take every container thread and
+ * starve page rendering.
+ *
+ * <p>Transfers of at least {@link #THRESHOLD_INIT_PARAM} bytes require a permit, of which at most
+ * {@link #MAX_ACTIVE_INIT_PARAM} are held at once.  Smaller transfers are never queued.  Waiting transfers are queued
+ * per client address and granted round-robin across clients, so one client opening many downloads does not delay
+ * others.  When the queue is full, or a transfer waits longer than {@link #MAX_WAIT_INIT_PARAM}, the request is
+ * rejected with <code>503 Service Unavailable</code> and <code>Retry-After</code>.</p>
+ *
+ * <p>When the request supports asynchronous processing, waiting does not hold a container thread: the request is
+ * suspended and dispatched again once granted, with the permit in a request attribute.  Otherwise, the container
+ * thread blocks while waiting.</p>
+ *
+ * <p>Configured by context init parameters:</p>
+ * <ul>
+ *   <li>{@link #ENABLED_INIT_PARAM} - When {@code true}, enables admission control (default {@code false})</li>
+ *   <li>{@link #THRESHOLD_INIT_PARAM} - The minimum size, in bytes, of transfers requiring a permit
+ *       (default {@value #DEFAULT_THRESHOLD})</li>
+ *   <li>{@link #MAX_ACTIVE_INIT_PARAM} - The maximum number of concurrent large transfers (default {@value #DEFAULT_MAX_ACTIVE})</li>
+ *   <li>{@link #MAX_QUEUE_INIT_PARAM} - The maximum number of waiting transfers (default {@value #DEFAULT_MAX_QUEUE})</li>
+ *   <li>{@link #MAX_WAIT_INIT_PARAM} - The maximum time to wait, in milliseconds (default {@value #DEFAULT_MAX_WAIT})</li>
+ *   <li>{@link #RETRY_AFTER_INIT_PARAM} - The <code>Retry-After</code> sent when rejected, in seconds
+ *       (default {@value #DEFAULT_RETRY_AFTER})</li>
+ * </ul>
+ */
+public final class TransferAdmission {
+
+  private static final Logger logger = Logger.getLogger(TransferAdmission.class.getName());
+
+  private static final String APPLICATION_ATTRIBUTE = TransferAdmission.class.getName();
+
+  /**
+   * The request attribute holding the permit granted to a request dispatched again after waiting.
+   */
+  public static final String PERMIT_REQUEST_ATTRIBUTE = TransferAdmission.class.getName() + ".permit";
+
+  /**
+   * The context init parameter to enable or disable admission control.
+   */
+  public static final String ENABLED_INIT_PARAM = TransferAdmission.class.getName() + ".enabled";
+
+  /**
+   * The context init parameter for the minimum size, in bytes, of transfers requiring a permit.
+   */
+  public static final String THRESHOLD_INIT_PARAM = TransferAdmission.class.getName() + ".threshold";
+
+  /**
+   * The default minimum size, in bytes, of transfers requiring a permit.
+   */
+  public static final long DEFAULT_THRESHOLD = 16L * 1024 * 1024;
+
+  /**
+   * The context init parameter for the maximum number of concurrent large transfers.
+   */
+  public static final String MAX_ACTIVE_INIT_PARAM = TransferAdmission.class.getName() + ".maxActive";
+
+  /**
+   * The default maximum number of concurrent large transfers.
+   */
+  public static final int DEFAULT_MAX_ACTIVE = 4;
+
+  /**
+   * The context init parameter for the maximum number of waiting transfers.
+   */
+  public static final String MAX_QUEUE_INIT_PARAM = TransferAdmission.class.getName() + ".maxQueue";
+
+  /**
+   * The default maximum number of waiting transfers.
+   */
+  public static final int DEFAULT_MAX_QUEUE = 100;
+
+  /**
+   * The context init parameter for the maximum time to wait, in milliseconds.
+   */
+  public static final String MAX_WAIT_INIT_PARAM = TransferAdmission.class.getName() + ".maxWait";
+
+  /**
+   * The default maximum time to wait, in milliseconds.
+   */
+  public static final long DEFAULT_MAX_WAIT = 60000;
+
+  /**
+   * The context init parameter for the <code>Retry-After</code> sent when rejected, in seconds.
+   */
+  public static final String RETRY_AFTER_INIT_PARAM = TransferAdmission.class.getName() + ".retryAfter";
+
+  /**
+   * The default <code>Retry-After</code> sent when rejected, in seconds.
+   */
+  public static final int DEFAULT_RETRY_AFTER = 30;
+
+  /**
+   * Gets the admission control for the given servlet context.
+   */
+  public static TransferAdmission getInstance(ServletContext servletContext) {
+    TransferAdmission admission = (TransferAdmission) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+    if (admission == null) {
+      synchronized (servletContext) {
+        admission = (TransferAdmission) servletContext.getAttribute(APPLICATION_ATTRIBUTE);
+        if (admission == null) {
+          admission = new TransferAdmission(servletContext);
+          servletContext.setAttribute(APPLICATION_ATTRIBUTE, admission);
+        }
+      }
+    }
+    return admission;
+  }
+
+  /**
+   * Permission for one large transfer, which must be {@linkplain #release() released} when the transfer ends.
+   */
+  public final class Permit {
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Permit() {
+      // Created by admit only
+    }
+
+    /**
+     * Releases the permit, granting it to the next waiting transfer.  Only the first call has any effect.
+     */
+    public void release() {
+      if (released.compareAndSet(false, true)) {
+        releasePermit();
+      }
+    }
+  }
+
+  private enum State {
+    QUEUED,
+    GRANTED,
+    CANCELLED
+  }
+
+  /**
+   * One waiting transfer.
+   */
+  private static final class Waiter {
+    private final String client;
+    private final long startNanos;
+    /**
+     * The suspended request, or {@code null} when the thread blocks.
+     */
+    private final AsyncContext asyncContext;
+    private State state = State.QUEUED;
+    private Permit permit;
+
+    private Waiter(String client, long startNanos, AsyncContext asyncContext) {
+      this.client = client;
+      this.startNanos = startNanos;
+      this.asyncContext = asyncContext;
+    }
+  }
+
+  private final FileMetrics metrics;
+  private final boolean enabled;
+  private final long threshold;
+  private final int maxActive;
+  private final int maxQueue;
+  private final long maxWait;
+  private final int retryAfter;
+
+  private final Object lock = new Object();
+  private int active;
+  private int queued;
+
+  /**
+   * The waiting transfers by client, in the order clients are next served.
+   */
+  private final Map<String, ArrayDeque<Waiter>> queues = new LinkedHashMap<>();
+
+  private TransferAdmission(ServletContext servletContext) {
+    this.metrics = FileMetrics.getInstance(servletContext);
+    this.enabled = InitParameters.getBoolean(servletContext, ENABLED_INIT_PARAM, false);
+    this.threshold = InitParameters.getLong(servletContext, THRESHOLD_INIT_PARAM, DEFAULT_THRESHOLD, 0);
+    this.maxActive = InitParameters.getInt(servletContext, MAX_ACTIVE_INIT_PARAM, DEFAULT_MAX_ACTIVE, 1);
+    this.maxQueue = InitParameters.getInt(servletContext, MAX_QUEUE_INIT_PARAM, DEFAULT_MAX_QUEUE, 0);
+    this.maxWait = InitParameters.getLong(servletContext, MAX_WAIT_INIT_PARAM, DEFAULT_MAX_WAIT, 1);
+    this.retryAfter = InitParameters.getInt(servletContext, RETRY_AFTER_INIT_PARAM, DEFAULT_RETRY_AFTER, 0);
+  }
+
+  /**
+   * Is admission control enabled.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Does a transfer of the given number of bytes require a permit.
+   */
+  public boolean requiresPermit(long bytes) {
+    return enabled && bytes >= threshold;
+  }
+
+  /**
+   * Gets the number of large transfers in progress.
+   */
+  public int getActive() {
+    synchronized (lock) {
+      return active;
+    }
+  }
+
+  /**
+   * Gets the number of large transfers waiting.
+   */
+  public int getQueued() {
+    synchronized (lock) {
+      return queued;
+    }
+  }
+
+  /**
+   * Admits a large transfer, waiting when all permits are held.
+   *
+   * @return  the permit, or {@code null} when the request has been suspended to wait asynchronously or has been
+   *          rejected.  In either case, the caller must return without further handling of the response.
+   */
+  public Permit admit(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String client = request.getRemoteAddr();
+    long startNanos = metrics.start();
+    Waiter waiter;
+    synchronized (lock) {
+      if (active < maxActive && queued == 0) {
+        active++;
+        return new Permit();
+      }
+      if (queued >= maxQueue) {
+        waiter = null;
+      } else {
+        if (request.isAsyncSupported()) {
+          AsyncContext asyncContext = request.startAsync(request, response);
+          asyncContext.setTimeout(maxWait);
+          waiter = new Waiter(client, startNanos, asyncContext);
+          asyncContext.addListener(new TimeoutListener(waiter));
+        } else {
+          waiter = new Waiter(client, startNanos, null);
+        }
+        queues.computeIfAbsent(client, c -> new ArrayDeque<>()).add(waiter);
+        queued++;
+      }
+    }
+    if (waiter == null) {
+      reject(response);
+      return null;
+    }
+    if (waiter.asyncContext != null) {
+      // Dispatched again when granted
+      return null;
+    }
+    // Block this thread
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWait);
+    synchronized (lock) {
+      try {
+        while (waiter.state == State.QUEUED) {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            break;
+          }
+          TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+        }
+      } catch (InterruptedException e) {
+        // Restore the interrupted status
+        Thread.currentThread().interrupt();
+      }
+      if (waiter.state == State.GRANTED) {
+        return waiter.permit;
+      }
+      removeWaiter(waiter);
+    }
+    reject(response);
+    return null;
+  }
+
+  /**
+   * Rejects a suspended request that waited too long.
+   */
+  private final class TimeoutListener implements AsyncListener {
+    private final Waiter waiter;
+
+    private TimeoutListener(Waiter waiter) {
+      this.waiter = waiter;
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) throws IOException {
+      if (cancel(waiter)) {
+        reject((HttpServletResponse) event.getSuppliedResponse());
+        waiter.asyncContext.complete();
+      }
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+      cancel(waiter);
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      // Nothing to clean-up
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+      // Nothing to do
+    }
+  }
+
+  /**
+   * Cancels a waiting transfer.
+   *
+   * @return  {@code true} when cancelled, or {@code false} when already granted
+   */
+  private boolean cancel(Waiter waiter) {
+    synchronized (lock) {
+      if (waiter.state == State.QUEUED) {
+        removeWaiter(waiter);
+        return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Removes a waiter from the queues.  Must hold the lock.
+   */
+  private void removeWaiter(Waiter waiter) {
+    assert Thread.holdsLock(lock);
+    waiter.state = State.CANCELLED;
+    ArrayDeque<Waiter> queue = queues.get(waiter.client);
+    if (queue != null && queue.remove(waiter)) {
+      queued--;
+      if (queue.isEmpty()) {
+        queues.remove(waiter.client);
+      }
+    }
+  }
+
+  private void reject(HttpServletResponse response) throws IOException {
+    metrics.recordTransferRejected();
+    if (!response.isCommitted()) {
+      response.reset();
+      response.setHeader("Retry-After", Integer.toString(retryAfter));
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+  }
+
+  /**
+   * Grants the permit to the next client in turn, or returns it to the pool when none waiting.
+   */
+  private void releasePermit() {
+    Waiter next = null;
+    synchronized (lock) {
+      Iterator<Map.Entry<String, ArrayDeque<Waiter>>> iter = queues.entrySet().iterator();
+      if (iter.hasNext()) {
+        Map.Entry<String, ArrayDeque<Waiter>> entry = iter.next();
+        ArrayDeque<Waiter> queue = entry.getValue();
+        next = queue.remove();
+        queued--;
+        // Move the client to the end, for round-robin between clients
+        iter.remove();
+        if (!queue.isEmpty()) {
+          queues.put(entry.getKey(), queue);
+        }
+        next.state = State.GRANTED;
+        next.permit = new Permit();
+        if (next.asyncContext == null) {
+          lock.notifyAll();
+        }
+      } else {
+        active--;
+      }
+    }
+    if (next != null) {
+      metrics.recordTransferWaitTime(next.startNanos);
+      if (next.asyncContext != null) {
+        try {
+          next.asyncContext.getRequest().setAttribute(PERMIT_REQUEST_ATTRIBUTE, next.permit);
+          next.asyncContext.dispatch();
+        } catch (IllegalStateException e) {
+          // Request no longer usable, pass the permit along
+          logger.log(Level.FINE, null, e);
+          next.permit.release();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * semanticcms-file-servlet - Files nested within SemanticCMS pages and elements in a Servlet environment.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of semanticcms-file-servlet.
+ *
+ * semanticcms-file-servlet is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * semanticcms-file-servlet is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with semanticcms-file-servlet.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.semanticcms.file.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link FileUtils#isOpenFileAllowed(javax.servlet.ServletContext, javax.servlet.ServletRequest)} under
+ * concurrency.  The method handle is replaced by {@link #isAllowed(javax.servlet.ServletContext, javax.servlet.ServletRequest)},
+ * which counts its calls.
+ */
+public class FileUtilsTest {
+
+  private static final LongAdder calls = new LongAdder();
+
+  /**
+   * Replaces {@code OpenFile.isAllowed}, counting its calls.
+   */
+  public static boolean isAllowed(ServletContext servletContext, ServletRequest request) {
+    calls.increment();
+    return true;
+  }
+
+  /**
+   * Creates a stub with attributes held in the given map, where all other methods return {@code null}.
+   */
+  private static <T> T newStub(Class<T> iface, Map<String, Object> attributes) {
+    return iface.cast(Proxy.newProxyInstance(
+        FileUtilsTest.class.getClassLoader(),
+        new Class<?>[] {iface},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getAttribute":
+              return attributes.get((String) args[0]);
+            case "setAttribute":
+              if (args[1] == null) {
+                attributes.remove((String) args[0]);
+              } else {
+                attributes.put((String) args[0], args[1]);
+              }
+              return null;
+            case "removeAttribute":
+              attributes.remove((String) args[0]);
+              return null;
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "equals":
+              return proxy == args[0];
+            case "toString":
+              return iface.getSimpleName() + " stub";
+            default:
+              return null;
+          }
+        }
+    ));
+  }
+
+  private ServletContext servletContext;
+
+  @Before
+  public void setUp() throws ReflectiveOperationException {
+    servletContext = newStub(ServletContext.class, new ConcurrentHashMap<>());
+    servletContext.setAttribute(
+        FileUtils.IS_OPEN_FILE_ALLOWED_HANDLE_APPLICATION_ATTRIBUTE,
+        MethodHandles.lookup().findStatic(
+            FileUtilsTest.class,
+            "isAllowed",
+            MethodType.methodType(boolean.class, ServletContext.class, ServletRequest.class)
+        )
+    );
+    calls.reset();
+  }
+
+  private ServletRequest newRequest() {
+    return newStub(ServletRequest.class, new HashMap<>());
+  }
+
+  @Test
+  public void testRememberedPerRequest() throws ServletException {
+    ServletRequest request = newRequest();
+    for (int i = 0; i < 100; i++) {
+      assertTrue(FileUtils.isOpenFileAllowed(servletContext, request));
+    }
+    assertEquals(1, calls.sum());
+  }
+
+  @Test
+  public void testResolvedHandleUsedByAllThreads() throws Exception {
+    int threads = 8;
+    int requestsPerThread = 1000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          for (int i = 0; i < requestsPerThread; i++) {
+            ServletRequest request = newRequest();
+            assertTrue(FileUtils.isOpenFileAllowed(servletContext, request));
+            assertTrue(FileUtils.isOpenFileAllowed(servletContext, request));
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals((long) threads * requestsPerThread, calls.sum());
+  }
+
+  /**
+   * Holds the monitors a lock-based implementation would use, and checks that another thread is not blocked.
+   */
+  @Test(timeout = 10000)
+  public void testNotBlockedByMonitors() throws Exception {
+    // First call creates the per-context singletons, which is synchronized
+    FileUtils.isOpenFileAllowed(servletContext, newRequest());
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      synchronized (FileUtils.class) {
+        synchronized (servletContext) {
+          Future<Boolean> future = executor.submit(() -> FileUtils.isOpenFileAllowed(servletContext, newRequest()));
+          assertTrue(future.get(5, TimeUnit.SECONDS));
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}